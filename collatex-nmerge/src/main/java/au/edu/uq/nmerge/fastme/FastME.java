@@ -20,7 +20,10 @@
  */
 package au.edu.uq.nmerge.fastme;
 
-import java.util.StringTokenizer;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -35,61 +38,37 @@ import java.util.StringTokenizer;
  */
 public class FastME {
   double[][] D;
-  double[][] A;
-  int numSpecies;
-  set species;
-  balance btype, ntype, wtype;
+  averages A;
+  balance btype;
   public tree T;
+  private final ExecutorService executor;
+  private final int parallelism;
 
   public FastME() {
-    btype = balance.OLS;
-    wtype = balance.OLS;
-    ntype = balance.BAL;
+    this(MoreExecutors.sameThreadExecutor());
   }
 
   /**
-   * Set the type of balancing ot use
-   *
-   * @param btype either OLS or BAL
+   * @param executor runs the edge tests during refinement
    */
-  void setBalance(balance btype) {
-    this.btype = btype;
+  public FastME(ExecutorService executor) {
+    this(executor, Runtime.getRuntime().availableProcessors());
   }
 
-  /**
-   * Parse a single row of diff data
-   *
-   * @param index the index of the rotree w to parse
-   * @param size  the size of the row
-   * @param row   the row data as a string
-   */
-  void parseRow(int index, int size, String row) {
-    StringTokenizer st = new StringTokenizer(row, " ");
-    node v = new node(st.nextToken(), null, -1);
-    v.index2 = index;
-    if (species == null) {
-      species = new set(v);
-    } else {
-      species.addToSet(v);
-    }
-    for (int j = 0; j < size; j++) {
-      String token = st.nextToken();
-      D[index][j] = Double.parseDouble(token);
-    }
+  FastME(ExecutorService executor, int parallelism) {
+    this.executor = executor;
+    this.parallelism = parallelism;
+    btype = balance.OLS;
   }
 
   /**
-   * Create the A matrix
+   * Set the type of balancing ot use
    *
-   * @param d the size of the A matrix
+   * @param btype either OLS or BAL
    */
-  void initDoubleMatrix(int d) {
-    A = new double[d][d];
-    for (int i = 0; i < d; i++) {
-      for (int j = 0; j < d; j++) {
-        A[i][j] = 0.0;
-      }
-    }
+  void setBalance(balance btype) {
+    Preconditions.checkArgument(btype != balance.NONE);
+    this.btype = btype;
   }
 
   /**
@@ -99,81 +78,27 @@ public class FastME {
    * @param taxa   the short names of the versions
    */
   public void buildTree(double[][] matrix, String[] taxa) {
-    set slooper;
-    numSpecies = matrix.length;
+    Preconditions.checkArgument(taxa.length > 1 && matrix.length == taxa.length);
     D = matrix;
+    A = new averages(2 * taxa.length - 2);
+    T = new tree(taxa);
     for (int i = 0; i < taxa.length; i++) {
-      node v = new node(taxa[i], null, -1);
-      v.index2 = i;
-      if (species == null) {
-        species = new set(v);
+      if (btype == balance.OLS) {
+        T.GMEaddSpecies(i, D, A);
       } else {
-        species.addToSet(v);
+        T.BMEaddSpecies(i, D, A);
       }
     }
-    initDoubleMatrix(2 * numSpecies - 2);
-    T = new tree();
-    switch (btype) {
-      case OLS:
-        for (slooper = species; slooper != null; slooper = slooper.next) {
-          T.GMEaddSpecies(slooper.node, D, A);
-        }
-        break;
-      case BAL:
-        for (slooper = species; slooper != null; slooper = slooper.next) {
-          T.BMEaddSpecies(slooper.node, D, A);
-        }
-        break;
-    }
   }
 
   /**
-   * I think this routine refines the rough tree produced by
-   * buildTree
+   * Refine the rough tree produced by buildTree by balanced nearest
+   * neighbour interchanges and assign the balanced edge weights
    */
-  public void refineTree() throws Exception {
-    int nniCount = 0;
-    switch (ntype) {
-      case OLS:
-        if (btype != balance.OLS) {
-          T.assignAllSizeFields();
-        }
-        T.makeOLSAveragesTable(D, A);
-        nniCount = T.NNI(A, nniCount);
-        T.assignOLSWeights(A);
-        break;
-      case BAL:
-        if (btype != balance.BAL) {
-          T.makeBMEAveragesTable(D, A);
-        }
-        nniCount = T.bNNI(A, nniCount);
-        T.assignBMEWeights(A);
-        break;
-      case NONE:
-        switch (wtype) {
-          case OLS:    // default
-            if (balance.OLS != btype) {
-              T.assignAllSizeFields();
-            }
-            T.makeOLSAveragesTable(D, A);
-            T.assignOLSWeights(A);
-            break;
-          case BAL:
-            if (balance.BAL != btype) {
-              T.makeBMEAveragesTable(D, A);
-            }
-            T.assignBMEWeights(A);
-            break;
-          default:
-            throw new Exception(
-                    "Error in program: variable 'btype' has illegal value "
-                            + btype);
-        }
-        break;
-      default:
-        throw new Exception(
-                "Error in program: variable 'ntype' has illegal value "
-                        + ntype);
+  public void refineTree() throws InterruptedException {
+    if (btype != balance.BAL) {
+      T.makeBMEAveragesTable(D, A);
     }
+    T.bNNI(A, 0, executor, parallelism);
   }
 }
@@ -0,0 +1,148 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.fastme;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * The average distances between the subtrees of a tree, indexed by
+ * the vertices heading them. Averages are symmetric, so only the lower
+ * triangle of the table is kept, packed row by row into one array.
+ * The exception is the vertex being inserted: its averages to the
+ * subtrees below each edge and to the rest of the tree above it differ
+ * until it has been placed, so they are kept in two rows of their own.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+class averages {
+  private final double[] table;
+  /**
+   * averages from the vertex being inserted to the tree above each edge
+   */
+  private final double[] up;
+  /**
+   * averages from the subtree below each edge to the vertex being inserted
+   */
+  private final double[] down;
+  /**
+   * the vertex being inserted or -1
+   */
+  private int inserted = -1;
+
+  /**
+   * Create a table of averages
+   *
+   * @param size the number of vertices
+   */
+  averages(int size) {
+    Preconditions.checkArgument(size < 65536, "%s vertices exceed the table size", size);
+    this.table = new double[offset(size, 0)];
+    this.up = new double[size];
+    this.down = new double[size];
+  }
+
+  /**
+   * Get an average
+   *
+   * @param i the vertex heading the first subtree
+   * @param j the vertex heading the second subtree
+   * @return the average distance between them
+   */
+  double get(int i, int j) {
+    if (i == inserted && j != inserted) {
+      return up[j];
+    }
+    if (j == inserted && i != inserted) {
+      return down[i];
+    }
+    return table[offset(i, j)];
+  }
+
+  /**
+   * Set an average
+   *
+   * @param i     the vertex heading the first subtree
+   * @param j     the vertex heading the second subtree
+   * @param value the average distance between them
+   */
+  void set(int i, int j, double value) {
+    if (i == inserted && j != inserted) {
+      up[j] = value;
+    } else if (j == inserted && i != inserted) {
+      down[i] = value;
+    } else {
+      table[offset(i, j)] = value;
+    }
+  }
+
+  /**
+   * Set an average in both directions
+   *
+   * @param i     the vertex heading the first subtree
+   * @param j     the vertex heading the second subtree
+   * @param value the average distance between them
+   */
+  void setSymmetric(int i, int j, double value) {
+    set(i, j, value);
+    if (i == inserted || j == inserted) {
+      set(j, i, value);
+    }
+  }
+
+  /**
+   * Start inserting a vertex
+   *
+   * @param v the vertex's index
+   */
+  void insert(int v) {
+    Arrays.fill(up, 0.0);
+    Arrays.fill(down, 0.0);
+    inserted = v;
+  }
+
+  /**
+   * Finish inserting a vertex, keeping its averages to its ancestors
+   * as seen from below and all others as seen from above
+   *
+   * @param ancestors flags the vertices on the path to the root
+   * @param size      the number of vertices in the tree
+   */
+  void placed(boolean[] ancestors, int size) {
+    final int v = inserted;
+    inserted = -1;
+    for (int x = 0; x < size; x++) {
+      if (x != v) {
+        table[offset(v, x)] = (ancestors[x] ? up[x] : down[x]);
+      }
+    }
+  }
+
+  /**
+   * @return the offset of an average in the packed lower triangle;
+   *         the product of a row index below 65536 and its successor
+   *         fits 32 bits unsigned
+   */
+  private static int offset(int i, int j) {
+    return (i >= j ? ((i * (i + 1)) >>> 1) + j : ((j * (j + 1)) >>> 1) + i);
+  }
+}
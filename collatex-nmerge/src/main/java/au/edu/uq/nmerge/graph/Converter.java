@@ -23,12 +23,13 @@ package au.edu.uq.nmerge.graph;
 import au.edu.uq.nmerge.exception.MVDException;
 import au.edu.uq.nmerge.mvd.Match;
 import au.edu.uq.nmerge.mvd.Witness;
+import au.edu.uq.nmerge.mvd.WitnessNumbering;
+import au.edu.uq.nmerge.mvd.WitnessSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import java.util.*;
 
-import static java.util.Collections.disjoint;
+import static au.edu.uq.nmerge.mvd.WitnessSet.disjoint;
 
 /**
  * The purpose of this class is to serialise and deserialise
@@ -38,10 +39,18 @@ import static java.util.Collections.disjoint;
  * @author Desmond Schmidt 12/7/08
  */
 public class Converter<T> {
+  /**
+   * allocates the ids of the nodes of the graphs built
+   */
+  private final IdGenerator ids;
+  /**
+   * numbers the versions of the graphs built
+   */
+  private final WitnessNumbering numbering;
   /**
    * debug
    */
-  static int numParents;
+  int numParents;
   /**
    * incomplete nodes during build
    */
@@ -54,10 +63,6 @@ public class Converter<T> {
    * used to optimise the size of the pairs list vector
    */
   int origSize;
-  /**
-   * all versions contained in the graph
-   */
-  Set<Witness> allVersions;
   /**
    * current number of arcs
    */
@@ -79,6 +84,17 @@ public class Converter<T> {
    */
   HashMap<VariantGraphArc<T>, Match<T>> orphans;
 
+  /**
+   * Create a converter
+   *
+   * @param ids       allocates the ids of the nodes of the graphs built
+   * @param numbering numbers the versions of the graphs built
+   */
+  public Converter(IdGenerator ids, WitnessNumbering numbering) {
+    this.ids = ids;
+    this.numbering = numbering;
+  }
+
   /**
    * Create a Graph
    *
@@ -89,8 +105,7 @@ public class Converter<T> {
           throws Exception {
     unattached = new UnattachedSet<T>();
     incomplete = new HashSet<VariantGraphNode<T>>();
-    allVersions = Sets.newHashSet(versions);
-    graph = new VariantGraph<T>();
+    graph = new VariantGraph<T>(ids, numbering);
     origSize = matches.size();
     if (matches.size() > 0) {
       deserialise(matches);
@@ -109,7 +124,7 @@ public class Converter<T> {
    */
   private VariantGraphNode<T> createNode() {
     nNodes++;
-    return new VariantGraphNode<T>();
+    return new VariantGraphNode<T>(ids, numbering);
   }
 
   /**
@@ -169,18 +184,20 @@ public class Converter<T> {
   }
 
   /**
-   * Regenerate the list of pairs by writing out the Graph
+   * Regenerate the list of pairs by writing out the Graph. The graph
+   * may have been updated since it was created, and may be updated
+   * and serialised again afterwards.
    *
    * @return a list of pairs with hints where needed
    */
   public Vector<Match<T>> serialise() throws MVDException {
-    Match.pairId = 1;
     if (origSize < 15) {
       origSize = 15;
     }
     numParents = 0;
     Vector<Match<T>> matches = new Vector<Match<T>>(origSize);
-    printAcross(matches, graph.start, allVersions);
+    printAcross(matches, graph.start, new WitnessSet(graph.constraint));
+    graph.clearPrinted();
     if (parents.size() != 0) {
       throw new MVDException("Mismatched parent arc");
     }
@@ -274,7 +291,7 @@ public class Converter<T> {
    * @deprecated Still needed?
    */
   private Set<Witness> cloneVersions(Set<Witness> versions) {
-    return Sets.newHashSet(versions);
+    return new WitnessSet(versions);
   }
 
   /**
@@ -0,0 +1,55 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.graph;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocates the ids of the nodes of a variant graph and of the
+ * transpositions found when comparing its versions. Every collation
+ * owns one, so that collations can be updated on different threads;
+ * allocation itself is thread-safe, as the MUM searches of one update
+ * may run concurrently.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class IdGenerator {
+  private final AtomicInteger nodeId = new AtomicInteger(1);
+  private final AtomicInteger transposeId = new AtomicInteger(Integer.MAX_VALUE);
+
+  /**
+   * Get an id for a new node
+   *
+   * @return the id, ascending from 1
+   */
+  public int nextNodeId() {
+    return nodeId.getAndIncrement();
+  }
+
+  /**
+   * Get an id for a transposition
+   *
+   * @return the id, descending from Integer.MAX_VALUE
+   */
+  public int nextTransposeId() {
+    return transposeId.getAndDecrement();
+  }
+}
@@ -21,22 +21,22 @@
 package au.edu.uq.nmerge.graph;
 
 import au.edu.uq.nmerge.Errors;
-import au.edu.uq.nmerge.graph.suffixtree.SuffixTree;
-import au.edu.uq.nmerge.graph.suffixtree.SuffixTreePosition;
+import au.edu.uq.nmerge.graph.suffixarray.SuffixArray;
+import au.edu.uq.nmerge.graph.suffixarray.SuffixArrayPosition;
 import au.edu.uq.nmerge.mvd.Witness;
-import com.google.common.collect.Sets;
+import au.edu.uq.nmerge.mvd.WitnessSet;
 
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
 
-import static java.util.Collections.disjoint;
+import static au.edu.uq.nmerge.mvd.WitnessSet.disjoint;
 
 /**
  * A MatchThread examines a run of characters, starting at some
- * position, in a single arc. It could be a Thread, but in this
- * implementation it is not because it is probably faster this
- * way (no blocking required).
+ * position, in a single arc. It is not a Thread itself: during
+ * direct MUM search batches of them are run on an executor, each
+ * batch updating its own copy of the MUM (no blocking required).
  *
  * @author Desmond Schmidt 3/11/08 modified to use MUMs 14/1/09
  *         modified for new path specification 21/1/09
@@ -51,9 +51,9 @@ public class MatchThreadDirect<T> implements Runnable {
    */
   protected VariantGraph<T> graph;
   /**
-   * the Suffix Tree we are matching against
+   * the suffix array we are matching against
    */
-  protected SuffixTree<T> st;
+  protected SuffixArray<T> st;
   /**
    * the last node we have seen before the match started
    */
@@ -75,9 +75,9 @@ public class MatchThreadDirect<T> implements Runnable {
    */
   VariantGraphArc<T> arc;
   /**
-   * the current position in the SuffixTree
+   * the current position in the suffix array
    */
-  protected SuffixTreePosition position;
+  protected SuffixArrayPosition position;
   /**
    * Versions shared by all arcs in the path
    */
@@ -110,18 +110,18 @@ public class MatchThreadDirect<T> implements Runnable {
   }
 
   /**
-   * A MatchThread looks for matches in the suffix tree
+   * A MatchThread looks for matches in the suffix array
    * vis-a-vis the variant graph.
    *
    * @param mum       the MUM to update if we find a longer match
-   * @param st        the suffix tree of the arc
+   * @param st        the suffix array of the arc
    * @param arc       the arc we are currently searching
    * @param graph     the subgraph containing the arc
    * @param start     the last node we have seen
    * @param prevChars an array of possible bytes that immediately
    *                  precede this match
    */
-  public MatchThreadDirect(MaximalUniqueMatch<T> mum, VariantGraph<T> graph, SuffixTree<T> st, VariantGraphArc<T> arc,
+  public MatchThreadDirect(MaximalUniqueMatch<T> mum, VariantGraph<T> graph, SuffixArray<T> st, VariantGraphArc<T> arc,
                            VariantGraphNode<T> start, int offset, List<PrevChar<T>> prevChars, VariantGraphNode<T> forbidden) {
     this.mum = mum;
     this.first = offset;
@@ -129,7 +129,7 @@ public class MatchThreadDirect<T> implements Runnable {
     this.arc = arc;
     this.start = start;
     this.graph = graph;
-    this.position = new SuffixTreePosition(null, 0);
+    this.position = new SuffixArrayPosition(st.length());
     this.offset = offset;
     this.prevChars = prevChars;
     this.forbidden = forbidden;
@@ -152,8 +152,8 @@ public class MatchThreadDirect<T> implements Runnable {
     this.offset = mtd.offset;
     // don't forget to duplicate this!
     // or splits will update each other
-    this.position = new SuffixTreePosition(mtd.position.node, mtd.position.edgePos);
-    this.versions = Sets.newHashSet(mtd.versions);
+    this.position = new SuffixArrayPosition(mtd.position);
+    this.versions = new WitnessSet(mtd.versions);
     this.pathLen = mtd.pathLen;
     this.prevChars = mtd.prevChars;
     this.travelled = mtd.travelled;
@@ -176,7 +176,7 @@ public class MatchThreadDirect<T> implements Runnable {
    */
   public void run() {
     List<T> data = arc.getData();
-    // FIXME: here we would have to match each token of every witness on the arc via SuffixTree#advance()!
+    // FIXME: here we would have to match each token of every witness on the arc via SuffixArray#advance()!
     while (first < data.size() && st.advance(position, data.get(first))) {
       first++;
       pathLen++;
@@ -201,7 +201,7 @@ public class MatchThreadDirect<T> implements Runnable {
   /**
    * Mismatch in the current arc. We apply three tests to assess if a
    * match is valid: <ol><li> We don't accept matches below the minimum size.
-   * </li><li> Reject matches that don't end in a leaf. These can't be unique
+   * </li><li> Reject matches occurring more than once in the suffix array. These can't be unique
    * and so can't be MUMs.</li><li> Reject any match that is not maximal. Using
    * the prevChars array we can work out if the match continues backwards
    * from its start by at least one character. Then it is not maximal and
@@ -213,14 +213,14 @@ public class MatchThreadDirect<T> implements Runnable {
   protected void mismatch() {
     // first test: are we long enough?
     if (pathLen >= MaximalUniqueMatch.MIN_LEN) {
-      // second test: are we unique in the suffix tree?
-      if (position.node.isLeaf()) {
+      // second test: are we unique in the suffix array?
+      if (position.isUnique()) {
         // third test
         if (isMaximal()) {
           addToPath(arc);
           // if we matched at least one byte of the current arc
           mum.update(start, offset, versions,
-                  position.edgePos - pathLen, pathLen, travelled);
+                  position.getOffset(), pathLen, travelled);
         }
         // else it's a substring of the maximum match
       }
@@ -237,11 +237,11 @@ public class MatchThreadDirect<T> implements Runnable {
    * @return true only if the match is maximal
    */
   protected boolean isMaximal() {
-    int prevCharIndex = position.edgePos - (pathLen + 1);
+    int prevCharIndex = position.getOffset() - 1;
     if (prevCharIndex >= 0) {
       T dataPrevChar = mum.arc.getData().get(prevCharIndex);
       if (prevCharIndex >= 0) {
-        Set<Witness> pathVersions = Sets.newHashSet();
+        Set<Witness> pathVersions = new WitnessSet();
         if (versions != null) {
           pathVersions.addAll(versions);
         }
@@ -302,7 +302,7 @@ public class MatchThreadDirect<T> implements Runnable {
    */
   protected void addToPath(VariantGraphArc<T> arc) {
     if (versions == null) {
-      versions = Sets.newHashSet(arc.versions);
+      versions = new WitnessSet(arc.versions);
       if (graph != null) {
         versions.retainAll(graph.constraint);
       }
@@ -20,12 +20,12 @@
  */
 package au.edu.uq.nmerge.graph;
 
-import au.edu.uq.nmerge.graph.suffixtree.SuffixTree;
+import au.edu.uq.nmerge.graph.suffixarray.SuffixArray;
 
 import java.util.List;
 import java.util.ListIterator;
 
-import static java.util.Collections.disjoint;
+import static au.edu.uq.nmerge.mvd.WitnessSet.disjoint;
 
 /**
  * This version of MatchThread searches the arcs to the left
@@ -37,21 +37,29 @@ import static java.util.Collections.disjoint;
  * @author Desmond Schmidt 31/1/09
  */
 public class MatchThreadTransposeLeft<T> extends MatchThreadDirect<T> {
+  /**
+   * the traversal whose printed arcs we may follow
+   */
+  private final TraversalState<T> traversal;
+
   /**
    * Constructor for thread to search for matches
    *
    * @param mum       the mum we have to update
-   * @param st        the suffix tree representing the new version
+   * @param st        the suffix array representing the new version
    * @param a         the arc to start searching from
    * @param first     the offset into a at which to start
    * @param prevChars an array of characters preceding a[first]
    * @param travelled the distance from the special arc on our right
    * @param forbidden the forbidden node we mustn't cross
+   * @param traversal the backwards traversal which printed the arcs
    */
-  MatchThreadTransposeLeft(MaximalUniqueMatch<T> mum, SuffixTree<T> st, VariantGraphArc<T> a,
-                           int first, List<PrevChar<T>> prevChars, int travelled, VariantGraphNode<T> forbidden) {
+  MatchThreadTransposeLeft(MaximalUniqueMatch<T> mum, SuffixArray<T> st, VariantGraphArc<T> a,
+                           int first, List<PrevChar<T>> prevChars, int travelled, VariantGraphNode<T> forbidden,
+                           TraversalState<T> traversal) {
     super(mum, null, st, a, a.from, first, prevChars, forbidden);
     this.travelled = travelled;
+    this.traversal = traversal;
   }
 
   /**
@@ -62,6 +70,7 @@ public class MatchThreadTransposeLeft<T> extends MatchThreadDirect<T> {
   protected MatchThreadTransposeLeft(MatchThreadTransposeLeft<T> mttl) {
     super(mttl);
     this.forbidden = mttl.forbidden;
+    this.traversal = mttl.traversal;
   }
 
   /**
@@ -77,7 +86,7 @@ public class MatchThreadTransposeLeft<T> extends MatchThreadDirect<T> {
       while (iter.hasNext()) {
         VariantGraphArc<T> a = iter.next();
         if (!disjoint(a.versions, versions)
-                && a.to.isPrintedOutgoing(a.versions)
+                && traversal.isPrintedOutgoing(a.to, a.versions)
                 && !a.versions.contains(mum.version)
                 && (!a.isParent() || !a.hasChildInVersion(mum.version))) {
           this.arc = a;
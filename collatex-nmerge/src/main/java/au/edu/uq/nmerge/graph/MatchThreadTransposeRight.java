@@ -20,12 +20,12 @@
  */
 package au.edu.uq.nmerge.graph;
 
-import au.edu.uq.nmerge.graph.suffixtree.SuffixTree;
+import au.edu.uq.nmerge.graph.suffixarray.SuffixArray;
 
 import java.util.List;
 import java.util.ListIterator;
 
-import static java.util.Collections.disjoint;
+import static au.edu.uq.nmerge.mvd.WitnessSet.disjoint;
 
 
 /**
@@ -40,14 +40,14 @@ public class MatchThreadTransposeRight<T> extends MatchThreadDirect<T> {
    * Constructor for thread to search for matches
    *
    * @param mum       the mum we have to update
-   * @param st        the suffix tree representing the new version
+   * @param st        the suffix array representing the new version
    * @param a         the arc to start searching from
    * @param first     the offset into a at which to start
    * @param prevChars an array of characters preceding a[first]
    * @param travelled the distance from the special arc
    * @param forbidden don't travel beyond this node (should be null)
    */
-  MatchThreadTransposeRight(MaximalUniqueMatch<T> mum, SuffixTree<T> st, VariantGraphArc<T> a,
+  MatchThreadTransposeRight(MaximalUniqueMatch<T> mum, SuffixArray<T> st, VariantGraphArc<T> a,
                             int first, List<PrevChar<T>> prevChars, int travelled, VariantGraphNode<T> forbidden) {
     super(mum, null, st, a, a.from, first, prevChars, forbidden);
     this.travelled = travelled;
@@ -22,14 +22,21 @@ package au.edu.uq.nmerge.graph;
 
 import au.edu.uq.nmerge.Errors;
 import au.edu.uq.nmerge.exception.MVDException;
-import au.edu.uq.nmerge.graph.suffixtree.SuffixTree;
+import au.edu.uq.nmerge.graph.suffixarray.SuffixArray;
 import au.edu.uq.nmerge.mvd.Witness;
+import au.edu.uq.nmerge.mvd.WitnessSet;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import static java.util.Collections.singleton;
 
@@ -42,10 +49,6 @@ import static java.util.Collections.singleton;
 public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>> {
   private static boolean debug;
 
-  //static int totalHashSize;
-  //static int numberOfHashes;
-  //static int maxHashSize;
-  static int PRINTED_HASH_SIZE = 128;
   /**
    * the arc we are the MUM of
    */
@@ -90,6 +93,11 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * store candidate MUMs here
    */
   HashMap<VariantGraphMatch<T>, VariantGraphMatch<T>> table;
+  /**
+   * if set, candidates are recorded here in the order found instead
+   * of being counted in the table
+   */
+  List<VariantGraphMatch<T>> occurrences;
   /**
    * are we transposed?
    */
@@ -106,6 +114,10 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * initial length of table
    */
   static final int INITIAL_QUEUE_LEN = 128;
+  /**
+   * number of match threads run together during direct MUM search
+   */
+  static final int MATCH_THREAD_BATCH_SIZE = 256;
   /**
    * golden ratio - used for threshold
    */
@@ -143,24 +155,37 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
     }
     if (!transposed || withinThreshold(distance, dataOffset, length)) {
       // select first version of match
-      Set<Witness> bs = Sets.newHashSet();
+      Set<Witness> bs = new WitnessSet();
       bs.addAll(matchVersions);
       // adjust if alignment is direct
       if (!transposed) {
         bs.retainAll(graph.constraint);
       }
       Witness v = Preconditions.checkNotNull(Iterables.getFirst(bs, null));
-      VariantGraphMatch<T> m = new VariantGraphMatch<T>(start, graphOffset, v, dataOffset, length, arc.data);
-      VariantGraphMatch<T> q = table.get(m);
-      if (q != null) {
-        if (!m.overlaps(q)) {
-          q.freq++;
-        }
-        // else it is the same data sharing part of the same
-        // path, so it is really the same match
-      } else {
-        table.put(m, m);
+      add(new VariantGraphMatch<T>(start, graphOffset, v, dataOffset, length, arc.data));
+    }
+  }
+
+  /**
+   * Count a candidate, unless it just continues an earlier occurrence
+   * of the same match.
+   *
+   * @param m the candidate
+   */
+  private void add(VariantGraphMatch<T> m) {
+    if (occurrences != null) {
+      occurrences.add(m);
+      return;
+    }
+    VariantGraphMatch<T> q = table.get(m);
+    if (q != null) {
+      if (!m.overlaps(q)) {
+        q.freq++;
       }
+      // else it is the same data sharing part of the same
+      // path, so it is really the same match
+    } else {
+      table.put(m, m);
     }
   }
 
@@ -275,23 +300,74 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
     return answer;
   }
 
+  /**
+   * Add the candidates recorded by another search for the same MUM,
+   * as if they had been found by this one after its own. Overlap is
+   * not transitive, so each occurrence has to be checked against the
+   * first one counted here rather than against the other search's.
+   *
+   * @param other the other search's MUM
+   */
+  void addCandidates(MaximalUniqueMatch<T> other) {
+    for (VariantGraphMatch<T> m : other.occurrences) {
+      add(m);
+    }
+  }
+
   /**
    * Find a direct MUM by comparing a special arc with its immediately
    * opposite subgraph
    *
    * @param special  the special arc to find the MUM of
-   * @param st       the suffix tree made from special
+   * @param st       the suffix array made from special
    * @param subGraph the subgraph directly opposite it
    * @return the best MUM or null
    */
-  public static <T> MaximalUniqueMatch<T> findDirectMUM(VariantGraphSpecialArc<T> special, SuffixTree<T> st,
+  public static <T> MaximalUniqueMatch<T> findDirectMUM(VariantGraphSpecialArc<T> special, SuffixArray<T> st,
                                                         VariantGraph<T> subGraph) throws MVDException {
+    return findDirectMUM(special, st, subGraph, MoreExecutors.sameThreadExecutor());
+  }
+
+  /**
+   * Find a direct MUM by comparing a special arc with its immediately
+   * opposite subgraph. The match threads starting at each position
+   * in the subgraph are run in batches on the given executor, each
+   * batch collecting its candidates separately. The candidates are
+   * then combined in batch order, so the result does not depend on
+   * the number of threads.
+   *
+   * @param special  the special arc to find the MUM of
+   * @param st       the suffix array made from special
+   * @param subGraph the subgraph directly opposite it
+   * @param executor runs batches of match threads
+   * @return the best MUM or null
+   */
+  public static <T> MaximalUniqueMatch<T> findDirectMUM(VariantGraphSpecialArc<T> special, SuffixArray<T> st,
+                                                        VariantGraph<T> subGraph, Executor executor)
+          throws MVDException {
+    return findDirectMUM(special, st, subGraph, executor, MATCH_THREAD_BATCH_SIZE);
+  }
+
+  /**
+   * Find a direct MUM, running match threads in batches of the given size
+   *
+   * @param special   the special arc to find the MUM of
+   * @param st        the suffix array made from special
+   * @param subGraph  the subgraph directly opposite it
+   * @param executor  runs batches of match threads
+   * @param batchSize the number of match threads per batch
+   * @return the best MUM or null
+   */
+  static <T> MaximalUniqueMatch<T> findDirectMUM(VariantGraphSpecialArc<T> special, SuffixArray<T> st,
+                                                 VariantGraph<T> subGraph, Executor executor, int batchSize)
+          throws MVDException {
     MaximalUniqueMatch<T> mum = new MaximalUniqueMatch<T>(special, subGraph, false);
-    HashSet<VariantGraphNode<T>> printedNodes = new HashSet<VariantGraphNode<T>>(PRINTED_HASH_SIZE);
+    List<MatchThreadDirect<T>> threads = Lists.newArrayList();
+    TraversalState<T> traversal = new TraversalState<T>();
     SimpleQueue<VariantGraphNode<T>> queue = new SimpleQueue<VariantGraphNode<T>>();
     queue.add(subGraph.start);
+    traversal.visit(subGraph.start);
     VariantGraphArc<T> lastArc = null;
-    printedNodes.add(subGraph.start);
     List<PrevChar<T>> prevChars = Lists.newArrayList();
     if (debug) {
       subGraph.verify();
@@ -310,31 +386,30 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
             prevChars = a.from.getPrevChars(subGraph.constraint, subGraph.start);
           }
           mtd = new MatchThreadDirect<T>(mum, subGraph, st, a, a.from, 0, prevChars, subGraph.end);
-          mtd.run();
+          threads.add(mtd);
           if (data.size() > 1) {
             prevChars = Lists.newArrayListWithExpectedSize(1);
-            Set<Witness> prevVersions = Sets.newHashSet();
+            Set<Witness> prevVersions = new WitnessSet();
             prevVersions.addAll(a.versions);
             prevVersions.retainAll(subGraph.constraint);
             // other (1 to N) characters
             for (int i = 1; i < data.size(); i++) {
               prevChars = Lists.newArrayList(Collections.singleton(new PrevChar<T>(prevVersions, data.get(i - 1))));
               mtd = new MatchThreadDirect<T>(mum, subGraph, st, a, a.from, i, prevChars, subGraph.end);
-              mtd.run();
+              threads.add(mtd);
             }
           }
         }
-        a.to.printArc(a);
-        printedNodes.add(a.to);
-        if (a.to != subGraph.end && a.to.allPrintedIncoming(
-                subGraph.constraint)) {
+        traversal.printArc(a);
+        if (a.to != subGraph.end && traversal.allPrintedIncoming(a.to, subGraph.constraint)) {
           queue.add(a.to);
         }
         lastArc = a;
       }
     }
     assert lastArc.to == subGraph.end;
-    clearPrintedArcs(printedNodes);
+    traversal.resetNodes();
+    runMatchThreads(mum, threads, executor, batchSize);
     if (mum.length() > 0) {
       return mum;
     } else {
@@ -342,6 +417,60 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
     }
   }
 
+  /**
+   * Run match threads in batches, each one recording its candidates in
+   * its own copy of the MUM, and add the candidates of all batches to
+   * the MUM in order.
+   * While waiting for a batch the calling thread runs it itself if it
+   * has not been started yet, so executors whose threads call this
+   * method cannot run out of threads.
+   *
+   * @param mum       the MUM to update
+   * @param threads   the match threads, each one referring to mum
+   * @param executor  runs batches of match threads
+   * @param batchSize the number of match threads per batch
+   */
+  static <T> void runMatchThreads(final MaximalUniqueMatch<T> mum, List<MatchThreadDirect<T>> threads,
+                                  Executor executor, int batchSize) throws MVDException {
+    List<FutureTask<MaximalUniqueMatch<T>>> batches = Lists.newArrayList();
+    for (final List<MatchThreadDirect<T>> batch : Lists.partition(threads, batchSize)) {
+      FutureTask<MaximalUniqueMatch<T>> task = new FutureTask<MaximalUniqueMatch<T>>(new Callable<MaximalUniqueMatch<T>>() {
+        @Override
+        public MaximalUniqueMatch<T> call() throws Exception {
+          MaximalUniqueMatch<T> candidates = new MaximalUniqueMatch<T>(mum.arc, mum.graph, mum.transposed);
+          // keep candidates in the order found for counting them
+          candidates.occurrences = Lists.newArrayList();
+          for (MatchThreadDirect<T> thread : batch) {
+            thread.mum = candidates;
+            thread.run();
+          }
+          return candidates;
+        }
+      });
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // run below
+      }
+      batches.add(task);
+    }
+    try {
+      for (FutureTask<MaximalUniqueMatch<T>> batch : batches) {
+        batch.run();
+        mum.addCandidates(batch.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MVDException(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (FutureTask<MaximalUniqueMatch<T>> batch : batches) {
+        batch.cancel(true);
+      }
+    }
+  }
+
   /**
    * Check that we can't get back to the source node
    *
@@ -388,11 +517,11 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * the graph to the left of the immediately opposite subgraph
    *
    * @param special  the special arc to find the transpose MUM of
-   * @param st       the suffix tree made from special
+   * @param st       the suffix array made from special
    * @param subGraph the subgraph directly opposite it
    * @return the best left transpose MUM or null
    */
-  public static <T> MaximalUniqueMatch<T> findLeftTransposeMUM(VariantGraphSpecialArc<T> special, SuffixTree<T> st,
+  public static <T> MaximalUniqueMatch<T> findLeftTransposeMUM(VariantGraphSpecialArc<T> special, SuffixArray<T> st,
                                                                VariantGraph<T> subGraph) {
     MaximalUniqueMatch<T> mum = new MaximalUniqueMatch<T>(special, subGraph, true);
     mum.transposeLeft = true;
@@ -421,26 +550,26 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * transpositions between special arcs and the graph.
    *
    * @param mum      the transpose mum to build
-   * @param st       the suffix tree of the special arc
+   * @param st       the suffix array of the special arc
    * @param node     node to look backwards from
    * @param distance the distance to search left in bytes
    */
-  static <T> void findLeftPositions(MaximalUniqueMatch<T> mum, SuffixTree<T> st,
+  static <T> void findLeftPositions(MaximalUniqueMatch<T> mum, SuffixArray<T> st,
                                     VariantGraphNode<T> node, int distance) {
-    HashSet<VariantGraphNode<T>> printedNodes = new HashSet<VariantGraphNode<T>>(PRINTED_HASH_SIZE);
+    TraversalState<T> traversal = new TraversalState<T>();
     SimpleQueue<VariantGraphNode<T>> queue = new SimpleQueue<VariantGraphNode<T>>();
     int travelled = 0;
     Witness mumV = mum.version;
     VariantGraphNode<T> origin = node;
     //BitSet range = new BitSet();
     queue.add(node);
-    node.setShortestPath(0);
+    traversal.setShortestPath(node, 0);
     while (!queue.isEmpty()) {
       node = queue.poll();
       // ALL of the incoming arcs are within range
       //range.or( node.getIncomingSet() );
       // the shortest path to get to this node
-      int shortestPath = node.getShortestPath();
+      int shortestPath = traversal.getShortestPath(node);
       ListIterator<VariantGraphArc<T>> iter = node.incomingArcs();
       while (iter.hasNext()) {
         VariantGraphArc<T> a = iter.next();
@@ -463,41 +592,21 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
             } else {
               prevChars = a.from.getPrevChars();
             }
-            mtt = new MatchThreadTransposeLeft<T>(mum, st, a, i, prevChars, shortestPath + travelled, origin);
+            mtt = new MatchThreadTransposeLeft<T>(mum, st, a, i, prevChars, shortestPath + travelled, origin, traversal);
             mtt.run();
             travelled++;
           }
         }
         // finished with this arc: record distance travelled
-        a.from.printOutgoingArc(a, shortestPath);
-        // keep track of nodes with printed arcs
-        printedNodes.add(a.from);
+        traversal.printOutgoingArc(a, shortestPath);
         if (distance - (shortestPath + travelled) > 0
                 && a.from.indegree() > 0
-                && a.from.allPrintedOutgoing()) {
+                && traversal.allPrintedOutgoing(a.from)) {
           queue.add(a.from);
         }
       }
     }
-    clearPrintedArcs(printedNodes);
-  }
-
-  /**
-   * Clear the printed arcs and outgoing printed arcs of any nodes
-   * in the set
-   *
-   * @param printedNodes a set of nodes with some arcs printed.
-   */
-  static <T> void clearPrintedArcs(HashSet<VariantGraphNode<T>> printedNodes) {
-    Iterator<VariantGraphNode<T>> iter2 = printedNodes.iterator();
-    while (iter2.hasNext()) {
-      VariantGraphNode<T> n = iter2.next();
-      n.reset();
-    }
-    //totalHashSize += printedNodes.size();
-    //numberOfHashes++;
-    //if ( printedNodes.size() > maxHashSize )
-    //	maxHashSize = printedNodes.size();
+    traversal.resetNodes();
   }
 
   /**
@@ -505,11 +614,11 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * of the overall graph to the right of the immediately opposite subgraph.
    *
    * @param special  the special arc to find the transpose MUM of
-   * @param st       the suffix tree made from special
+   * @param st       the suffix array made from special
    * @param subGraph the subgraph directly opposite it
    * @return the best right transpose MUM or null
    */
-  public static <T> MaximalUniqueMatch<T> findRightTransposeMUM(VariantGraphSpecialArc<T> special, SuffixTree<T> st,
+  public static <T> MaximalUniqueMatch<T> findRightTransposeMUM(VariantGraphSpecialArc<T> special, SuffixArray<T> st,
                                                                 VariantGraph<T> subGraph) {
     MaximalUniqueMatch<T> mum = new MaximalUniqueMatch<T>(special, subGraph, true);
     // 1. calculate number of bytes to go forwards
@@ -532,27 +641,26 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * search.
    *
    * @param mum      the MUM to update
-   * @param st       the suffix tree to lookup matches in
+   * @param st       the suffix array to lookup matches in
    * @param node     the node to start from
    * @param distance the distance to search forwards
    */
-  static <T> void findRightPositions(MaximalUniqueMatch<T> mum, SuffixTree<T> st, VariantGraphNode<T> node,
+  static <T> void findRightPositions(MaximalUniqueMatch<T> mum, SuffixArray<T> st, VariantGraphNode<T> node,
                                      int distance) {
     SimpleQueue<VariantGraphNode<T>> queue = new SimpleQueue<VariantGraphNode<T>>();
-    HashSet<VariantGraphNode<T>> printedNodes = new HashSet<VariantGraphNode<T>>(PRINTED_HASH_SIZE);
+    TraversalState<T> traversal = new TraversalState<T>();
     VariantGraphNode<T> origin = node;
-    Set<Witness> range = Sets.newHashSet();
+    Set<Witness> range = new WitnessSet();
     int travelled = 0;
     Witness mumV = mum.version;
-    printedNodes.add(node);
     queue.add(node);
-    node.setShortestPath(0);
+    traversal.setShortestPath(node, 0);
     while (!queue.isEmpty()) {
       node = queue.poll();
       // ALL of the incoming arcs are within range
       range.addAll(node.getOutgoingSet());
       // the shortest path to get to this node
-      int shortestPath = node.getShortestPath();
+      int shortestPath = traversal.getShortestPath(node);
       ListIterator<VariantGraphArc<T>> iter = node.outgoingArcs();
       while (iter.hasNext()) {
         VariantGraphArc<T> a = iter.next();
@@ -584,18 +692,16 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
           }
         }
         // finished with this arc: record distance travelled
-        a.to.printArc(a, shortestPath + a.dataLen());
-        // keep track of nodes with printed arcs
-        printedNodes.add(a.to);
+        traversal.printArc(a, shortestPath + a.dataLen());
         if (distance - (shortestPath + a.dataLen()) > 0
                 && a.to.outdegree() > 0
-                && a.to.allPrintedIncoming(range)) {
+                && traversal.allPrintedIncoming(a.to, range)) {
           queue.add(a.to);
         }
       }
     }
     // important: clean up all printed arcs
-    clearPrintedArcs(printedNodes);
+    traversal.resetNodes();
   }
 
   /**
@@ -761,7 +867,7 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
     arc.from.removeOutgoing(arc);
     if (leftSubArc != null) {
       arcFrom.addOutgoing(leftSubArc);
-      arcFrom = new VariantGraphNode<T>();
+      arcFrom = new VariantGraphNode<T>(graph.ids, graph.numbering);
       arcFrom.addIncoming(leftSubArc);
     }
     if (leftSubGraph == null) {
@@ -774,7 +880,7 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
       if (arcFrom == graph.start) {
         VariantGraphArc<T> a = createEmptyArc(version);
         arcFrom.addOutgoing(a);
-        arcFrom = new VariantGraphNode<T>();
+        arcFrom = new VariantGraphNode<T>(graph.ids, graph.numbering);
         arcFrom.addIncoming(a);
       }
       // else we're good
@@ -796,7 +902,7 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
     arc.to.removeIncoming(arc);
     if (rightSubArc != null) {
       arcTo.addIncoming(rightSubArc);
-      arcTo = new VariantGraphNode<T>();
+      arcTo = new VariantGraphNode<T>(graph.ids, graph.numbering);
       arcTo.addOutgoing(rightSubArc);
     }
     if (rightSubGraph == null) {
@@ -809,7 +915,7 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
       if (arcTo == graph.end) {
         VariantGraphArc<T> a = createEmptyArc(version);
         arcTo.addIncoming(a);
-        arcTo = new VariantGraphNode<T>();
+        arcTo = new VariantGraphNode<T>(graph.ids, graph.numbering);
         arcTo.addOutgoing(a);
       }
       // else there's already a residual path
@@ -824,9 +930,9 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * @return an empty subgraph
    */
   private VariantGraph<T> createEmptyLeftSubgraph() throws MVDException {
-    VariantGraphNode<T> n = new VariantGraphNode<T>();
+    VariantGraphNode<T> n = new VariantGraphNode<T>(graph.ids, graph.numbering);
     // create an empty arc to join n to graph.start
-    Set<Witness> bs = Sets.newHashSet(graph.start.getVersions());
+    Set<Witness> bs = new WitnessSet(graph.start.getVersions());
     bs.remove(version);
     assert !bs.isEmpty();
     VariantGraphArc<T> a = graph.start.pickOutgoingArc(version);
@@ -853,9 +959,9 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * @return an empty subgraph
    */
   private VariantGraph<T> createEmptyRightSubgraph() throws MVDException {
-    VariantGraphNode<T> n = new VariantGraphNode<T>();
+    VariantGraphNode<T> n = new VariantGraphNode<T>(graph.ids, graph.numbering);
     // create an empty arc to join graph.end to n
-    Set<Witness> bs = Sets.newHashSet(graph.end.getVersions());
+    Set<Witness> bs = new WitnessSet(graph.end.getVersions());
     bs.remove(version);
     assert !bs.isEmpty();
     VariantGraphArc<T> a = graph.end.pickIncomingArc(version);
@@ -922,7 +1028,7 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
     arc.from.removeOutgoing(arc);
     if (leftSubArc != null) {
       arcFrom.addOutgoing(leftSubArc);
-      arcFrom = new VariantGraphNode<T>();
+      arcFrom = new VariantGraphNode<T>(graph.ids, graph.numbering);
       arcFrom.addIncoming(leftSubArc);
     }
     // attach rightSubArc if any
@@ -930,20 +1036,20 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
     arc.to.removeIncoming(arc);
     if (rightSubArc != null) {
       arcTo.addIncoming(rightSubArc);
-      arcTo = new VariantGraphNode<T>();
+      arcTo = new VariantGraphNode<T>(graph.ids, graph.numbering);
       arcTo.addOutgoing(rightSubArc);
     }
     // now for the bit in the middle
     VariantGraphArc<T>[] parents = match.getMatchPath();
     for (int i = 0; i < parents.length; i++) {
-      Set<Witness> versions = Sets.newHashSet(version);
+      Set<Witness> versions = WitnessSet.of(graph.numbering, version);
       VariantGraphArc<T> child = new VariantGraphArc<T>(versions, parents[i]);
       arcFrom.addOutgoing(child);
       if (parents[i].versions.contains(version)) {
         Errors.LOG.error("Ooops!", new Exception());
       }
       if (i < parents.length - 1) {
-        arcFrom = new VariantGraphNode<T>();
+        arcFrom = new VariantGraphNode<T>(graph.ids, graph.numbering);
         arcFrom.addIncoming(child);
       } else {
         arcTo.addIncoming(child);
@@ -959,7 +1065,7 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * @return the empty unattached arc
    */
   private VariantGraphArc<T> createEmptyArc(Witness version) {
-    return new VariantGraphArc<T>(Sets.newHashSet(version), Lists.<T>newArrayList());
+    return new VariantGraphArc<T>(WitnessSet.of(graph.numbering, version), Lists.<T>newArrayList());
   }
 
   /**
@@ -971,7 +1077,7 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
   VariantGraphSpecialArc<T> splitOffLeftArc() {
     assert arc.parent == null && arc.children == null;
     final List<T> leftArcData = Lists.newArrayList(arc.getData().subList(0, match.dataOffset));
-    return new VariantGraphSpecialArc<T>(Sets.newHashSet(version), leftArcData, arc.position);
+    return new VariantGraphSpecialArc<T>(WitnessSet.of(graph.numbering, version), leftArcData, arc.position);
   }
 
   /**
@@ -983,7 +1089,7 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
   VariantGraphSpecialArc<T> splitOffRightArc() {
     final List<T> arcData = arc.getData();
     List<T> rightArcData = Lists.newArrayList(arcData.subList(match.dataOffset + match.length, arcData.size()));
-    return new VariantGraphSpecialArc<T>(Sets.newHashSet(version), rightArcData, arc.position + match.dataOffset + match.length);
+    return new VariantGraphSpecialArc<T>(WitnessSet.of(graph.numbering, version), rightArcData, arc.position + match.dataOffset + match.length);
   }
 
   /**
@@ -1027,7 +1133,7 @@ public class MaximalUniqueMatch<T> implements Comparable<MaximalUniqueMatch<T>>
    * @return a set of versions shared by start and end
    */
   Set<Witness> getConstraint(VariantGraphNode<T> start, VariantGraphNode<T> end) {
-    return Sets.newHashSet(Sets.intersection(start.getVersions(), end.getVersions()));
+    return WitnessSet.intersection(start.getVersions(), end.getVersions());
   }
 
   /**
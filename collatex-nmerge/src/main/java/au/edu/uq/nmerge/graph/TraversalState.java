@@ -0,0 +1,189 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.graph;
+
+import au.edu.uq.nmerge.mvd.Witness;
+import au.edu.uq.nmerge.mvd.WitnessSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Map;
+import java.util.Set;
+
+import static au.edu.uq.nmerge.mvd.WitnessSet.disjoint;
+
+/**
+ * The "printed" arcs and shortest paths of a single breadth-first
+ * traversal during MUM search. Unlike the equivalent fields of
+ * {@link VariantGraphNode} these are private to one search, so that
+ * several searches may run over the same graph at the same time.
+ * Nodes not yet visited have none of their arcs printed.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+class TraversalState<T> {
+  /**
+   * unprinted incoming versions per visited node
+   */
+  private final Map<VariantGraphNode<T>, Set<Witness>> printed = Maps.newHashMap();
+  /**
+   * unprinted outgoing versions per visited node
+   */
+  private final Map<VariantGraphNode<T>, Set<Witness>> printedOutgoing = Maps.newHashMap();
+  /**
+   * the shortest route to each visited node
+   */
+  private final Map<VariantGraphNode<T>, Integer> shortestPaths = Maps.newHashMap();
+  /**
+   * all nodes the traversal started from or printed arcs of
+   */
+  private final Set<VariantGraphNode<T>> visited = Sets.newHashSet();
+
+  /**
+   * Start the traversal from a node.
+   *
+   * @param node the first node to visit
+   */
+  void visit(VariantGraphNode<T> node) {
+    visited.add(node);
+  }
+
+  /**
+   * Reset the printed arcs of all nodes visited by this traversal,
+   * as other traversals of the graph still rely on the nodes' own
+   * printed sets being complete.
+   */
+  void resetNodes() {
+    for (VariantGraphNode<T> node : visited) {
+      node.reset();
+    }
+  }
+
+  /**
+   * Get the shortest path to a node from either side.
+   *
+   * @param node the node in question
+   * @return the shortest path to this node or 0 if not yet known
+   */
+  int getShortestPath(VariantGraphNode<T> node) {
+    final Integer shortestPath = shortestPaths.get(node);
+    return (shortestPath == null ? 0 : shortestPath);
+  }
+
+  /**
+   * Set the shortest path to a node
+   *
+   * @param node  the node in question
+   * @param value the value of the path length
+   */
+  void setShortestPath(VariantGraphNode<T> node, int value) {
+    visited.add(node);
+    shortestPaths.put(node, value);
+  }
+
+  /**
+   * "Print" an incoming arc of its to-node.
+   *
+   * @param a the arc to print
+   */
+  void printArc(VariantGraphArc<T> a) {
+    incoming(a.to).removeAll(a.versions);
+  }
+
+  /**
+   * "Print" an incoming arc of its to-node, recording the shortest path.
+   *
+   * @param a             the arc to print
+   * @param parentPathLen the shortest path to the to node of a
+   */
+  void printArc(VariantGraphArc<T> a, int parentPathLen) {
+    printArc(a);
+    final int shortestPath = getShortestPath(a.to);
+    if (shortestPath == 0 || parentPathLen < shortestPath) {
+      setShortestPath(a.to, parentPathLen);
+    }
+  }
+
+  /**
+   * "Print" an outgoing arc of its from-node backwards, recording the
+   * shortest path. Used in left transpose detection.
+   *
+   * @param a             the arc to print
+   * @param parentPathLen the shortest path from the to node of a
+   */
+  void printOutgoingArc(VariantGraphArc<T> a, int parentPathLen) {
+    outgoing(a.from).removeAll(a.versions);
+    final int shortestPath = getShortestPath(a.from);
+    if (shortestPath == 0 || parentPathLen + a.dataLen() < shortestPath) {
+      setShortestPath(a.from, parentPathLen + a.dataLen());
+    }
+  }
+
+  /**
+   * Is the outgoing arc of a node with the given versions printed?
+   *
+   * @param node     the node in question
+   * @param versions the versions of the arc to test
+   * @return true if an outgoing arc with those versions is printed
+   */
+  boolean isPrintedOutgoing(VariantGraphNode<T> node, Set<Witness> versions) {
+    return disjoint(versions, outgoing(node));
+  }
+
+  /**
+   * Have all the outgoing arcs of a node been printed (backwards)?
+   *
+   * @param node the node in question
+   * @return true if there are none left
+   */
+  boolean allPrintedOutgoing(VariantGraphNode<T> node) {
+    return outgoing(node).isEmpty();
+  }
+
+  /**
+   * Have all the incoming arcs of a node been printed?
+   *
+   * @param node  the node in question
+   * @param range the range within which the incoming arcs are assessed
+   * @return true if there are none left within range
+   */
+  boolean allPrintedIncoming(VariantGraphNode<T> node, Set<Witness> range) {
+    return disjoint(incoming(node), range);
+  }
+
+  private Set<Witness> incoming(VariantGraphNode<T> node) {
+    Set<Witness> versions = printed.get(node);
+    if (versions == null) {
+      visited.add(node);
+      printed.put(node, versions = new WitnessSet(node.getIncomingSet()));
+    }
+    return versions;
+  }
+
+  private Set<Witness> outgoing(VariantGraphNode<T> node) {
+    Set<Witness> versions = printedOutgoing.get(node);
+    if (versions == null) {
+      visited.add(node);
+      printedOutgoing.put(node, versions = new WitnessSet(node.getOutgoingSet()));
+    }
+    return versions;
+  }
+}
@@ -22,14 +22,14 @@ package au.edu.uq.nmerge.graph;
 
 import au.edu.uq.nmerge.exception.MVDException;
 import au.edu.uq.nmerge.mvd.Witness;
-import com.google.common.collect.Sets;
+import au.edu.uq.nmerge.mvd.WitnessSet;
 
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.ListIterator;
 import java.util.Set;
 
-import static java.util.Collections.disjoint;
+import static au.edu.uq.nmerge.mvd.WitnessSet.disjoint;
 
 /**
  * Represent a set of unattached arcs during building of the Graph
@@ -48,7 +48,7 @@ public class UnattachedSet<T> extends HashSet<VariantGraphArc<T>> {
    * Create an unattached set
    */
   UnattachedSet() {
-    versions = Sets.newHashSet();
+    versions = new WitnessSet();
   }
 
   /**
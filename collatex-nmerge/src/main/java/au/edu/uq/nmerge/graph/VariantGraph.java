@@ -23,8 +23,9 @@ package au.edu.uq.nmerge.graph;
 import au.edu.uq.nmerge.Errors;
 import au.edu.uq.nmerge.exception.MVDException;
 import au.edu.uq.nmerge.mvd.Witness;
+import au.edu.uq.nmerge.mvd.WitnessNumbering;
+import au.edu.uq.nmerge.mvd.WitnessSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import java.util.*;
 
@@ -56,13 +57,27 @@ public class VariantGraph<T> {
   int totalLen;
   static int MIN_OVERLAP_LEN = 10;
 
+  /**
+   * allocates the ids of the graph's nodes
+   */
+  final IdGenerator ids;
+  /**
+   * numbers the versions of the graph
+   */
+  final WitnessNumbering numbering;
+
   /**
    * Basic constructor
+   *
+   * @param ids       allocates the ids of the graph's nodes
+   * @param numbering numbers the versions of the graph
    */
-  public VariantGraph() {
-    start = new VariantGraphNode<T>();
-    end = new VariantGraphNode<T>();
-    this.constraint = Sets.newHashSet();
+  public VariantGraph(IdGenerator ids, WitnessNumbering numbering) {
+    this.ids = ids;
+    this.numbering = numbering;
+    start = new VariantGraphNode<T>(ids, numbering);
+    end = new VariantGraphNode<T>(ids, numbering);
+    this.constraint = new WitnessSet(numbering);
     maxLen = -1;
   }
 
@@ -77,10 +92,13 @@ public class VariantGraph<T> {
    * @param position   the position from the start of the new version
    */
   public VariantGraph(VariantGraphNode<T> start, VariantGraphNode<T> end, Set<Witness> constraint, int position) {
+    this.ids = start.ids;
+    this.numbering = start.numbering;
     this.start = start;
     this.end = end;
     this.position = position;
-    this.constraint = Sets.newHashSet(constraint);
+    this.constraint = new WitnessSet(numbering);
+    this.constraint.addAll(constraint);
     this.maxLen = maxLength();
   }
 
@@ -94,7 +112,7 @@ public class VariantGraph<T> {
    */
   public VariantGraphSpecialArc<T> addSpecialArc(List<T> data, Witness version, int position)
           throws MVDException {
-    VariantGraphSpecialArc<T> a = new VariantGraphSpecialArc<T>(Sets.newHashSet(version), data, position);
+    VariantGraphSpecialArc<T> a = new VariantGraphSpecialArc<T>(WitnessSet.of(numbering, version), data, position);
     start.addOutgoing(a);
     end.addIncoming(a);
     // ensure this is clear
@@ -324,6 +342,7 @@ public class VariantGraph<T> {
   void clearPrinted() {
     HashMap<Integer, VariantGraphNode<T>> hash = new HashMap<Integer, VariantGraphNode<T>>(1500);
     SimpleQueue<VariantGraphNode<T>> queue = new SimpleQueue<VariantGraphNode<T>>();
+    start.reset();
     queue.add(start);
     while (!queue.isEmpty()) {
       VariantGraphNode<T> node = queue.poll();
@@ -331,8 +350,8 @@ public class VariantGraph<T> {
       while (iter.hasNext()) {
         VariantGraphArc<T> a = iter.next();
         if (!hash.containsKey(a.to.nodeId)) {
-          queue.add(node);
-          node.reset();
+          queue.add(a.to);
+          a.to.reset();
           hash.put(a.to.nodeId, a.to);
         }
       }
@@ -349,14 +368,35 @@ public class VariantGraph<T> {
     return start;
   }
 
+  /**
+   * Remove a version whose merge did not complete. Its remaining
+   * special arcs are not in the constraint set yet, so it is added
+   * first for the traversal to reach them.
+   *
+   * @param version the version to remove
+   */
+  public void discardVersion(Witness version) throws MVDException {
+    this.constraint.add(version);
+    removeVersion(version);
+    this.constraint.remove(version);
+  }
+
   /**
    * Remove the text of a version from the graph. Don't adjust the
-   * versions sets but leave a hole.
+   * versions sets but leave a hole. Arcs only of that version are
+   * dropped, and where the version branched off, the arcs on either
+   * side are joined if they now share the same versions.
    *
    * @param version the version to remove
    */
-  public void removeVersion(Witness version) {
+  public void removeVersion(Witness version) throws MVDException {
+    if (!start.getOutgoingSet().contains(version)) {
+      // no text of that version in the graph
+      this.constraint.remove(version);
+      return;
+    }
     SimpleQueue<VariantGraphNode<T>> queue = new SimpleQueue<VariantGraphNode<T>>();
+    List<VariantGraphNode<T>> branches = Lists.newArrayList();
     queue.add(start);
     while (!queue.isEmpty()) {
       VariantGraphNode<T> node = queue.poll();
@@ -382,6 +422,8 @@ public class VariantGraph<T> {
       // can't delete arc inside iterator
       // so we do it outside
       if (del != null) {
+        branches.add(del.from);
+        branches.add(del.to);
         del.from.removeOutgoing(del);
         del.to.removeIncoming(del);
         // is it a child arc?
@@ -398,7 +440,35 @@ public class VariantGraph<T> {
         Errors.LOG.error(e.getMessage(), e);
       }
     }
+    for (VariantGraphNode<T> node : branches) {
+      join(node);
+    }
     // we removed the version, so clear the constraint
     this.constraint.remove(version);
   }
+
+  /**
+   * Join the only incoming and outgoing arc of a node into one, if
+   * they have the same versions and are not part of a transposition.
+   *
+   * @param node the node to bypass
+   */
+  private void join(VariantGraphNode<T> node) throws MVDException {
+    if (node == start || node == end || node.indegree() != 1 || node.outdegree() != 1) {
+      return;
+    }
+    final VariantGraphArc<T> a = node.incomingArcs().next();
+    final VariantGraphArc<T> b = node.outgoingArcs().next();
+    if (!a.versions.equals(b.versions) || a.parent != null || b.parent != null
+            || a.children != null || b.children != null || a.data == null || b.data == null) {
+      return;
+    }
+    final List<T> data = Lists.newArrayListWithCapacity(a.data.size() + b.data.size());
+    data.addAll(a.data);
+    data.addAll(b.data);
+    node.removeIncoming(a);
+    node.removeOutgoing(b);
+    b.to.replaceIncoming(b, a);
+    a.data = data;
+  }
 }
@@ -24,9 +24,9 @@ import au.edu.uq.nmerge.Errors;
 import au.edu.uq.nmerge.exception.MVDException;
 import au.edu.uq.nmerge.mvd.Match;
 import au.edu.uq.nmerge.mvd.Witness;
+import au.edu.uq.nmerge.mvd.WitnessSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import java.util.*;
 
@@ -60,14 +60,6 @@ public class VariantGraphArc<T> {
    * parent - can't be set as well as children
    */
   VariantGraphArc<T> parent;
-  /**
-   * parent id if subject of a transposition
-   */
-  int id;
-  /**
-   * id counter: used for parent/child relationships
-   */
-  static int arcId = 1;
 
   /**
    * Create a child arc
@@ -185,7 +177,6 @@ public class VariantGraphArc<T> {
   public void addChild(VariantGraphArc<T> child) {
     if (children == null) {
       children = new LinkedList<VariantGraphArc<T>>();
-      id = VariantGraphArc.arcId++;
     }
     children.add(child);
     child.parent = this;
@@ -209,9 +200,9 @@ public class VariantGraphArc<T> {
       sb.append(Iterables.toString(versions));
       sb.append(": ");
       if (parent != null) {
-        sb.append("[" + parent.id + ":");
+        sb.append("[" + Integer.toHexString(System.identityHashCode(parent)) + ":");
       } else if (children != null) {
-        sb.append("{" + id + ":");
+        sb.append("{" + Integer.toHexString(System.identityHashCode(this)) + ":");
       }
       sb.append(Iterables.toString(getData()));
       if (parent != null) {
@@ -284,15 +275,15 @@ public class VariantGraphArc<T> {
     VariantGraphArc<T>[] arcs = splitDataArc(offset);
     for (int i = 0; i < children.size(); i++) {
       VariantGraphArc<T> child = children.get(i);
-      VariantGraphArc<T> b = new VariantGraphArc<T>(Sets.newHashSet(child.versions), arcs[0]);
-      VariantGraphArc<T> c = new VariantGraphArc<T>(Sets.newHashSet(child.versions), arcs[1]);
+      VariantGraphArc<T> b = new VariantGraphArc<T>(new WitnessSet(child.versions), arcs[0]);
+      VariantGraphArc<T> c = new VariantGraphArc<T>(new WitnessSet(child.versions), arcs[1]);
       VariantGraphNode<T> childFrom = child.from;
       VariantGraphNode<T> childTo = child.to;
       childFrom.removeOutgoing(child);
       childTo.removeIncoming(child);
       childFrom.addOutgoing(b);
       childTo.addIncoming(c);
-      VariantGraphNode<T> n = new VariantGraphNode<T>();
+      VariantGraphNode<T> n = new VariantGraphNode<T>(childFrom.ids, childFrom.numbering);
       n.addIncoming(b);
       n.addOutgoing(c);
       if (child == desired) {
@@ -313,8 +304,8 @@ public class VariantGraphArc<T> {
    */
   private VariantGraphArc<T>[] splitDataArc(int offset) throws MVDException {
     VariantGraphArc<T>[] arcs = new VariantGraphArc[2];
-    arcs[0] = new VariantGraphArc<T>(Sets.newHashSet(versions), Lists.newArrayList(data.subList(0, offset)));
-    arcs[1] = new VariantGraphArc<T>(Sets.newHashSet(versions), Lists.newArrayList(data.subList(offset, dataLen())));
+    arcs[0] = new VariantGraphArc<T>(new WitnessSet(versions), Lists.newArrayList(data.subList(0, offset)));
+    arcs[1] = new VariantGraphArc<T>(new WitnessSet(versions), Lists.newArrayList(data.subList(offset, dataLen())));
     installSplit(arcs);
     return arcs;
   }
@@ -326,8 +317,8 @@ public class VariantGraphArc<T> {
    */
   private void installSplit(VariantGraphArc<T>[] arcs) throws MVDException {
     // now replace the existing arc with the two split ones
+    VariantGraphNode<T> inter = new VariantGraphNode<T>(from.ids, from.numbering);
     from.replaceOutgoing(this, arcs[0]);
-    VariantGraphNode<T> inter = new VariantGraphNode<T>();
     inter.addIncoming(arcs[0]);
     inter.addOutgoing(arcs[1]);
     to.replaceIncoming(this, arcs[1]);
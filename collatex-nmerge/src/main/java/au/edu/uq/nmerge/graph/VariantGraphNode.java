@@ -22,12 +22,13 @@ package au.edu.uq.nmerge.graph;
 
 import au.edu.uq.nmerge.exception.MVDException;
 import au.edu.uq.nmerge.mvd.Witness;
+import au.edu.uq.nmerge.mvd.WitnessNumbering;
+import au.edu.uq.nmerge.mvd.WitnessSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import java.util.*;
 
-import static java.util.Collections.disjoint;
+import static au.edu.uq.nmerge.mvd.WitnessSet.disjoint;
 
 /**
  * A Node is a point of connection for arcs in a variant graph
@@ -68,9 +69,13 @@ public class VariantGraphNode<T> {
    */
   LinkedList<VariantGraphMatch<T>> matches;
   /**
-   * new id counter (static)
+   * allocates the ids of the nodes of this graph
    */
-  static int id = 1;
+  final IdGenerator ids;
+  /**
+   * numbers the versions of this graph
+   */
+  final WitnessNumbering numbering;
   /**
    * unique identifier
    */
@@ -78,15 +83,20 @@ public class VariantGraphNode<T> {
 
   /**
    * Create a Node
+   *
+   * @param ids       allocates the node's id
+   * @param numbering numbers the versions of the node's graph
    */
-  public VariantGraphNode() {
+  public VariantGraphNode(IdGenerator ids, WitnessNumbering numbering) {
     incoming = new LinkedList<VariantGraphArc<T>>();
     outgoing = new LinkedList<VariantGraphArc<T>>();
-    printed = Sets.newHashSet();
-    printedOutgoing = Sets.newHashSet();
-    incomingSet = Sets.newHashSet();
-    outgoingSet = Sets.newHashSet();
-    nodeId = VariantGraphNode.id++;
+    printed = new WitnessSet(numbering);
+    printedOutgoing = new WitnessSet(numbering);
+    incomingSet = new WitnessSet(numbering);
+    outgoingSet = new WitnessSet(numbering);
+    this.ids = ids;
+    this.numbering = numbering;
+    nodeId = ids.nextNodeId();
   }
 
   /**
@@ -96,7 +106,7 @@ public class VariantGraphNode<T> {
    *
    * @param m a match that relies on us
    */
-  public void addMatch(VariantGraphMatch<T> m) {
+  public synchronized void addMatch(VariantGraphMatch<T> m) {
     // lazy evaluation - usually matches is null
     if (matches == null) {
       matches = new LinkedList<VariantGraphMatch<T>>();
@@ -168,7 +178,7 @@ public class VariantGraphNode<T> {
    * incoming one so we can print it again. Same for outgoing
    * also.
    */
-  public void reset() {
+  public synchronized void reset() {
     // FIXME: this was BitSet#or(BitSet)? Should'nt it be #and() aka. newHashSet(intersecs)
     printed.addAll(incomingSet);
     printedOutgoing.addAll(outgoingSet);
@@ -597,7 +607,7 @@ public class VariantGraphNode<T> {
    */
   private Set<Witness> checkArcs(ListIterator<VariantGraphArc<T>> iter, String type)
           throws MVDException {
-    Set<Witness> bs = Sets.newHashSet();
+    Set<Witness> bs = new WitnessSet(numbering);
     while (iter.hasNext()) {
       VariantGraphArc<T> a = iter.next();
       for (Witness i : a.versions) {
@@ -638,7 +648,7 @@ public class VariantGraphNode<T> {
       if (!disjoint(a.versions, constraint)) {
         if (a.dataLen() > 0) {
           List<T> data = a.getData();
-          Set<Witness> prevVersions = Sets.newHashSet();
+          Set<Witness> prevVersions = new WitnessSet(numbering);
           prevVersions.addAll(a.versions);
           prevVersions.retainAll(constraint);
           array.add(new PrevChar<T>(prevVersions, data.get(data.size() - 1)));
@@ -673,7 +683,7 @@ public class VariantGraphNode<T> {
    * keys in HashSet. Equal nodes should be stored only once.
    */
   public boolean equals(Object other) {
-    return nodeId == ((VariantGraphNode<?>) other).nodeId;
+    return (other instanceof VariantGraphNode) && nodeId == ((VariantGraphNode<?>) other).nodeId;
   }
   // extra routines for nmerge
 
@@ -722,7 +732,7 @@ public class VariantGraphNode<T> {
    * @return the overhang
    */
   Set<Witness> getOverhang() {
-    Set<Witness> overhang = Sets.newHashSet();
+    Set<Witness> overhang = new WitnessSet(numbering);
     ListIterator<VariantGraphArc<T>> iter1 = incoming.listIterator();
     ListIterator<VariantGraphArc<T>> iter2 = outgoing.listIterator();
     while (iter1.hasNext()) {
@@ -743,7 +753,7 @@ public class VariantGraphNode<T> {
    * @return a bitset clique of non-overlapping incoming arcs
    */
   Set<Witness> getClique(VariantGraphArc<T> selected) {
-    Set<Witness> bs = Sets.newHashSet();
+    Set<Witness> bs = new WitnessSet(numbering);
     if (incoming.size() > 0) {
       ListIterator<VariantGraphArc<T>> iter = incoming.listIterator();
       while (iter.hasNext()) {
@@ -773,7 +783,7 @@ public class VariantGraphNode<T> {
       VariantGraphArc<T> b = outgoing.get(0);
       if (!a.isParent() && !a.isChild()
               && !b.isParent() && !b.isChild()) {
-        VariantGraphArc<T> c = new VariantGraphArc<T>(Sets.newHashSet(a.versions), Lists.<T>newArrayList());
+        VariantGraphArc<T> c = new VariantGraphArc<T>(new WitnessSet(a.versions), Lists.<T>newArrayList());
         a.from.replaceOutgoing(a, c);
         b.to.replaceIncoming(b, c);
         if (unattached.contains(b)) {
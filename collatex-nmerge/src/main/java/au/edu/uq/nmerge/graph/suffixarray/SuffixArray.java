@@ -0,0 +1,338 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.graph.suffixarray;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A suffix array over a token sequence, replacing the pointer-based
+ * suffix tree used to find matches between a new version and the
+ * variant graph.
+ *
+ * <p>Tokens are encoded as ints by their rank among the distinct tokens of
+ * the sequence, so that the array itself is sorted in linear time by
+ * induced sorting (SA-IS, Nong, Zhang &amp; Chan 2009) and searches compare
+ * ints only. A search position is the interval of suffixes sharing the
+ * tokens matched so far; a match is unique once the interval holds a
+ * single suffix, which corresponds to reaching a leaf in the tree.</p>
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class SuffixArray<T> {
+  /**
+   * the distinct tokens in ascending order; a token's index is its code
+   */
+  private final T[] alphabet;
+  private final Comparator<T> comparator;
+  /**
+   * the encoded token sequence
+   */
+  private final int[] text;
+  /**
+   * start offsets of the suffixes of {@link #text} in lexicographic order
+   */
+  private final int[] suffixes;
+
+  /**
+   * Build a suffix array.
+   *
+   * @param tokens     the token sequence to index
+   * @param comparator the comparator determining token equality
+   */
+  @SuppressWarnings("unchecked")
+  public SuffixArray(List<T> tokens, Comparator<T> comparator) {
+    this.comparator = comparator;
+
+    final T[] sorted = (T[]) tokens.toArray();
+    Arrays.sort(sorted, comparator);
+    int distinct = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (distinct == 0 || comparator.compare(sorted[distinct - 1], sorted[i]) != 0) {
+        sorted[distinct++] = sorted[i];
+      }
+    }
+    this.alphabet = Arrays.copyOf(sorted, distinct);
+
+    final int n = tokens.size();
+    this.text = new int[n];
+    for (int i = 0; i < n; i++) {
+      text[i] = encode(tokens.get(i));
+    }
+
+    // codes are shifted by one to make room for the terminal 0
+    final int[] terminated = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      terminated[i] = text[i] + 1;
+    }
+    final int[] sa = new int[n + 1];
+    sais(terminated, sa, n + 1, distinct + 1);
+    // the terminal's suffix always sorts first
+    this.suffixes = Arrays.copyOfRange(sa, 1, n + 1);
+  }
+
+  /**
+   * Get the length of the indexed sequence
+   *
+   * @return the number of tokens
+   */
+  public int length() {
+    return text.length;
+  }
+
+  /**
+   * Get the position of a single token.
+   *
+   * @param b the first token of a match
+   * @return the relevant position, null if not present
+   */
+  public SuffixArrayPosition getStartPos(T b) {
+    final SuffixArrayPosition position = new SuffixArrayPosition(text.length);
+    return (advance(position, b) ? position : null);
+  }
+
+  /**
+   * Advance a position by one token if possible. On entry the position
+   * denotes the suffixes matched so far. We try to match the NEXT token.
+   * If we succeed, we update the position. Otherwise we do nothing to it.
+   *
+   * @param position the position where we were last time
+   * @param b        the token to advance the position by
+   * @return true if the advance was successful, false otherwise
+   */
+  public boolean advance(SuffixArrayPosition position, T b) {
+    final int code = encode(b);
+    if (code < 0) {
+      return false;
+    }
+    final int depth = position.depth;
+    int lo = position.lo;
+    int hi = position.hi;
+    if (lo > hi) {
+      return false;
+    }
+    // suffixes in the interval are sorted by their token at depth,
+    // so if both ends agree the whole interval does
+    if (tokenAt(lo, depth) != code || tokenAt(hi, depth) != code) {
+      lo = lowerBound(lo, hi + 1, depth, code);
+      hi = lowerBound(lo, hi + 1, depth, code + 1) - 1;
+      if (lo > hi) {
+        return false;
+      }
+    }
+    position.lo = lo;
+    position.hi = hi;
+    position.depth = depth + 1;
+    position.offset = suffixes[lo];
+    return true;
+  }
+
+  /**
+   * Search for a token sequence.
+   *
+   * @param w the sequence to find
+   * @return the offset of an occurrence of w in the indexed
+   *         sequence or <code>null</code> if not found
+   */
+  public Integer findSubstring(List<T> w) {
+    final SuffixArrayPosition position = new SuffixArrayPosition(text.length);
+    for (T b : w) {
+      if (!advance(position, b)) {
+        return null;
+      }
+    }
+    return position.offset;
+  }
+
+  /**
+   * Get the suffix starting offsets in lexicographic order
+   *
+   * @return the suffix array (read only!)
+   */
+  int[] getSuffixes() {
+    return suffixes;
+  }
+
+  private int encode(T b) {
+    final int code = Arrays.binarySearch(alphabet, b, comparator);
+    return (code < 0 ? -1 : code);
+  }
+
+  /**
+   * @return the code of the token at the given depth of the suffix
+   *         at the given rank, or -1 if the suffix is shorter
+   */
+  private int tokenAt(int rank, int depth) {
+    final int pos = suffixes[rank] + depth;
+    return (pos < text.length ? text[pos] : -1);
+  }
+
+  /**
+   * @return the first rank in [from, to) whose token at depth is not
+   *         less than code
+   */
+  private int lowerBound(int from, int to, int depth, int code) {
+    while (from < to) {
+      final int mid = (from + to) >>> 1;
+      if (tokenAt(mid, depth) < code) {
+        from = mid + 1;
+      } else {
+        to = mid;
+      }
+    }
+    return from;
+  }
+
+  /**
+   * Sort the suffixes of s by induced sorting.
+   *
+   * @param s  the string to sort, terminated by a unique 0
+   * @param sa receives the suffix array of s
+   * @param n  the length of s
+   * @param k  the size of the alphabet of s
+   */
+  static void sais(int[] s, int[] sa, int n, int k) {
+    if (n == 1) {
+      sa[0] = 0;
+      return;
+    }
+    // classify suffixes as S-type (true) or L-type (false)
+    final boolean[] t = new boolean[n];
+    t[n - 1] = true;
+    for (int i = n - 2; i >= 0; i--) {
+      t[i] = s[i] < s[i + 1] || (s[i] == s[i + 1] && t[i + 1]);
+    }
+
+    // 1. sort LMS substrings
+    final int[] buckets = new int[k];
+    bucketEnds(s, buckets, n, k);
+    Arrays.fill(sa, 0, n, -1);
+    for (int i = 1; i < n; i++) {
+      if (isLMS(t, i)) {
+        sa[--buckets[s[i]]] = i;
+      }
+    }
+    induce(s, sa, t, buckets, n, k);
+
+    // 2. name the sorted LMS substrings
+    int n1 = 0;
+    for (int i = 0; i < n; i++) {
+      if (isLMS(t, sa[i])) {
+        sa[n1++] = sa[i];
+      }
+    }
+    Arrays.fill(sa, n1, n, -1);
+    int name = 0;
+    int prev = -1;
+    for (int i = 0; i < n1; i++) {
+      final int pos = sa[i];
+      boolean diff = false;
+      for (int d = 0; d < n; d++) {
+        if (prev == -1 || s[pos + d] != s[prev + d] || t[pos + d] != t[prev + d]) {
+          diff = true;
+          break;
+        } else if (d > 0 && (isLMS(t, pos + d) || isLMS(t, prev + d))) {
+          break;
+        }
+      }
+      if (diff) {
+        name++;
+        prev = pos;
+      }
+      sa[n1 + pos / 2] = name - 1;
+    }
+    final int[] s1 = new int[n1];
+    for (int i = n - 1, j = n1 - 1; i >= n1; i--) {
+      if (sa[i] >= 0) {
+        s1[j--] = sa[i];
+      }
+    }
+
+    // 3. sort the LMS suffixes, recursing if names are not unique
+    final int[] sa1 = new int[n1];
+    if (name < n1) {
+      sais(s1, sa1, n1, name);
+    } else {
+      for (int i = 0; i < n1; i++) {
+        sa1[s1[i]] = i;
+      }
+    }
+
+    // 4. induce the order of all suffixes from the sorted LMS suffixes
+    for (int i = 1, j = 0; i < n; i++) {
+      if (isLMS(t, i)) {
+        s1[j++] = i;
+      }
+    }
+    bucketEnds(s, buckets, n, k);
+    Arrays.fill(sa, 0, n, -1);
+    for (int i = n1 - 1; i >= 0; i--) {
+      final int j = s1[sa1[i]];
+      sa[--buckets[s[j]]] = j;
+    }
+    induce(s, sa, t, buckets, n, k);
+  }
+
+  private static boolean isLMS(boolean[] t, int i) {
+    return i > 0 && t[i] && !t[i - 1];
+  }
+
+  private static void induce(int[] s, int[] sa, boolean[] t, int[] buckets, int n, int k) {
+    bucketStarts(s, buckets, n, k);
+    for (int i = 0; i < n; i++) {
+      final int j = sa[i] - 1;
+      if (j >= 0 && !t[j]) {
+        sa[buckets[s[j]]++] = j;
+      }
+    }
+    bucketEnds(s, buckets, n, k);
+    for (int i = n - 1; i >= 0; i--) {
+      final int j = sa[i] - 1;
+      if (j >= 0 && t[j]) {
+        sa[--buckets[s[j]]] = j;
+      }
+    }
+  }
+
+  private static void bucketStarts(int[] s, int[] buckets, int n, int k) {
+    bucketSizes(s, buckets, n, k);
+    for (int c = 0, sum = 0; c < k; c++) {
+      sum += buckets[c];
+      buckets[c] = sum - buckets[c];
+    }
+  }
+
+  private static void bucketEnds(int[] s, int[] buckets, int n, int k) {
+    bucketSizes(s, buckets, n, k);
+    for (int c = 0, sum = 0; c < k; c++) {
+      sum += buckets[c];
+      buckets[c] = sum;
+    }
+  }
+
+  private static void bucketSizes(int[] s, int[] buckets, int n, int k) {
+    Arrays.fill(buckets, 0);
+    for (int i = 0; i < n; i++) {
+      buckets[s[i]]++;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.graph.suffixarray;
+
+/**
+ * A position reached while matching tokens against a {@link SuffixArray}:
+ * the interval of suffixes starting with the tokens matched so far.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class SuffixArrayPosition {
+  /**
+   * first rank of the interval
+   */
+  int lo;
+  /**
+   * last rank of the interval
+   */
+  int hi;
+  /**
+   * number of tokens matched
+   */
+  int depth;
+  /**
+   * offset of the match in the indexed sequence
+   */
+  int offset;
+
+  /**
+   * Create a position before the first token of a match
+   *
+   * @param length the length of the indexed sequence
+   */
+  public SuffixArrayPosition(int length) {
+    this.lo = 0;
+    this.hi = length - 1;
+  }
+
+  /**
+   * Copy a position
+   *
+   * @param position the position to copy
+   */
+  public SuffixArrayPosition(SuffixArrayPosition position) {
+    this.lo = position.lo;
+    this.hi = position.hi;
+    this.depth = position.depth;
+    this.offset = position.offset;
+  }
+
+  /**
+   * Do the tokens matched so far occur only once?
+   *
+   * @return true if the match is unique
+   */
+  public boolean isUnique() {
+    return depth > 0 && lo == hi;
+  }
+
+  /**
+   * Get the offset of the tokens matched so far. Only
+   * meaningful for unique matches, otherwise it is the
+   * offset of an arbitrary occurrence.
+   *
+   * @return the offset in the indexed sequence
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Get the number of tokens matched so far
+   *
+   * @return the length of the match
+   */
+  public int getDepth() {
+    return depth;
+  }
+}
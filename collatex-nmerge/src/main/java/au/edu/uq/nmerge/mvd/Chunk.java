@@ -47,6 +47,11 @@ public class Chunk<T> {
 
   private ChunkStateSet states;
 
+  /**
+   * the offset of the chunk's first token in its version
+   */
+  private int offset;
+
   /**
    * the data of the chunk
    */
@@ -102,6 +107,24 @@ public class Chunk<T> {
     this.witness = witness;
   }
 
+  /**
+   * Get the offset of this chunk in its version
+   *
+   * @return the offset of the first token
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Set the offset of this chunk in its version
+   *
+   * @param offset the offset of the first token
+   */
+  void setOffset(int offset) {
+    this.offset = offset;
+  }
+
   /**
    * Overlay a match onto an array of chunks. Return the modified
    * chunk array.
@@ -162,9 +185,11 @@ public class Chunk<T> {
     // duplicate ids: this doesn't matter for chunks
     final Chunk<T> left = new Chunk<T>(id, states.getStates(), Lists.newArrayList(tokens.subList(0, offset)));
     left.witness = this.witness;
+    left.offset = this.offset;
 
     final Chunk<T> right = new Chunk<T>(id, new ChunkStateSet(states).getStates(), Lists.newArrayList(tokens.subList(offset, tokens.size())));
     right.witness = this.witness;
+    right.offset = this.offset + offset;
 
     return new Tuple<Chunk<T>>(left, right);
   }
@@ -205,6 +230,15 @@ public class Chunk<T> {
     return (tokens == null) ? 0 : tokens.size();
   }
 
+  /**
+   * Get the data of a Chunk
+   *
+   * @return the chunk's tokens
+   */
+  public List<T> getTokens() {
+    return tokens;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
@@ -215,6 +249,12 @@ public class Chunk<T> {
             .toString();
   }
 
+  /**
+   * Append data to a chunk. Chunks returned by a comparison of versions
+   * are views of their pairs and cannot be appended to.
+   *
+   * @param tokens the data to append
+   */
   public void add(List<T> tokens) {
     this.tokens.addAll(tokens);
   }
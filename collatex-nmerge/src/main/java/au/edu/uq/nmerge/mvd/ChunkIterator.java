@@ -0,0 +1,199 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.mvd;
+
+import au.edu.uq.nmerge.graph.IdGenerator;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Yields the chunks of a comparison of two versions as it walks the
+ * pairs of the first one. Only the chunk being built is held; its tokens
+ * are a read-only view of the pairs it spans rather than a copy.
+ * Chunks ending before the offset of interest are walked over without
+ * being built, so that the ids of merged chunks are the same as in a
+ * comparison of the whole version.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+class ChunkIterator<T> extends AbstractIterator<Chunk<T>> {
+  private final Iterator<Match<T>> matches;
+  private final Witness u;
+  private final Witness v;
+  private final ChunkState state;
+  private final int offset;
+  private final IdGenerator ids;
+
+  private TransposeState transposeState = new TransposeState();
+  private ChunkStateSet chunkStateSet = new ChunkStateSet();
+  private int chunkId = 0;
+
+  /**
+   * the chunk being built: its transposition id, states, the token
+   * lists of its pairs, its offset and its length
+   */
+  private int id = 0;
+  private ChunkState[] states = new ChunkStateSet().getStates();
+  private final List<List<T>> parts = Lists.newArrayList();
+  private int start = 0;
+  private int length = 0;
+  private boolean finished = false;
+
+  /**
+   * Compare versions
+   *
+   * @param matches the pairs of version u
+   * @param u       the first version to compare
+   * @param v       the second version to compare
+   * @param state   the state of text belonging only to u
+   * @param offset  the offset in u from which on chunks are returned
+   * @param ids     allocates ids of transpositions without one
+   */
+  ChunkIterator(Iterator<Match<T>> matches, Witness u, Witness v, ChunkState state, int offset, IdGenerator ids) {
+    this.matches = matches;
+    this.u = u;
+    this.v = v;
+    this.state = state;
+    this.offset = offset;
+    this.ids = ids;
+  }
+
+  @Override
+  protected Chunk<T> computeNext() {
+    while (matches.hasNext()) {
+      final Match<T> match = matches.next();
+      final TransposeState oldTransposeState = transposeState;
+      final ChunkStateSet oldChunkStateSet = chunkStateSet;
+
+      transposeState = transposeState.next(match, u, v, ids);
+      if (!transposeState.isTransposed()) {
+        // not transposed means deleted, inserted or merged
+        chunkStateSet = chunkStateSet.next(match, state, v);
+      }
+
+      Chunk<T> chunk = null;
+      if (transposeState != oldTransposeState || !chunkStateSet.equals(oldChunkStateSet)) {
+        // then we have to write out the current chunk
+        if (length > 0) {
+          chunk = finish(false);
+        }
+        // set up a new chunk
+        id = transposeState.getId();
+        states = (id != 0 ? new ChunkState[] { transposeState.getState() } : chunkStateSet.getStates());
+        parts.clear();
+        start += length;
+        length = 0;
+      }
+      parts.add(match.getTokens());
+      length += match.getTokens().size();
+
+      if (chunk != null) {
+        return chunk;
+      }
+    }
+    if (!finished) {
+      // the lingering chunk
+      finished = true;
+      return finish(true);
+    }
+    return endOfData();
+  }
+
+  /**
+   * Number the current chunk if it is merged and build it if it is of
+   * interest
+   *
+   * @param last whether it is the last chunk, which is always built
+   * @return the chunk or <code>null</code> if it ends before the offset
+   */
+  private Chunk<T> finish(boolean last) {
+    final boolean merged = new ChunkStateSet(states).isMerged();
+    if (merged) {
+      ++chunkId;
+    }
+    if (!last && start + length <= offset) {
+      return null;
+    }
+    final Chunk<T> chunk = new Chunk<T>(merged ? chunkId : id, Arrays.copyOf(states, states.length), tokens());
+    chunk.setWitness(u);
+    chunk.setOffset(start);
+    return chunk;
+  }
+
+  /**
+   * @return a read-only view of the tokens of the current chunk
+   */
+  private List<T> tokens() {
+    switch (parts.size()) {
+      case 0:
+        return Collections.emptyList();
+      case 1:
+        return Collections.unmodifiableList(parts.get(0));
+      default:
+        return new Slices<T>(parts);
+    }
+  }
+
+  /**
+   * Consecutive token lists viewed as one
+   */
+  private static class Slices<T> extends AbstractList<T> {
+    private final List<T>[] slices;
+    private final int[] starts;
+
+    @SuppressWarnings("unchecked")
+    private Slices(List<List<T>> slices) {
+      this.slices = slices.toArray(new List[slices.size()]);
+      this.starts = new int[this.slices.length + 1];
+      for (int i = 0; i < this.slices.length; i++) {
+        starts[i + 1] = starts[i] + this.slices[i].size();
+      }
+    }
+
+    @Override
+    public T get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException(Integer.toString(index));
+      }
+      int slice = Arrays.binarySearch(starts, index);
+      if (slice < 0) {
+        slice = -(slice + 1) - 1;
+      } else {
+        // skip empty slices starting at the same index
+        while (starts[slice + 1] == index) {
+          slice++;
+        }
+      }
+      return slices[slice].get(index - starts[slice]);
+    }
+
+    @Override
+    public int size() {
+      return starts[starts.length - 1];
+    }
+  }
+}
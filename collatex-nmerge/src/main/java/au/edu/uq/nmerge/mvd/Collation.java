@@ -22,18 +22,28 @@ package au.edu.uq.nmerge.mvd;
 
 import au.edu.uq.nmerge.Errors;
 import au.edu.uq.nmerge.exception.MVDException;
+import au.edu.uq.nmerge.fastme.FastME;
 import au.edu.uq.nmerge.graph.*;
-import au.edu.uq.nmerge.graph.suffixtree.SuffixTree;
+import au.edu.uq.nmerge.graph.suffixarray.SuffixArray;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
-import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import static java.util.Collections.disjoint;
+import static au.edu.uq.nmerge.mvd.WitnessSet.disjoint;
 
 /**
  * Represent a multi-version document.
@@ -46,16 +56,57 @@ public class Collation<T> {
   private final boolean directAlignOnly = false;
   private final String description;
 
-  private final Set<Witness> witnesses = Sets.newHashSet();
-  private final Ordering<T> tokenOrdering;
+  private final WitnessNumbering numbering = new WitnessNumbering();
+  private final Set<Witness> witnesses = new WitnessSet(numbering);
+  private final TokenDictionary<T> dictionary;
   private final T nullToken;
+  private final ExecutorService executor;
 
-  private List<Match<T>> matches = Lists.newArrayList();
+  /**
+   * allocates node and transposition ids
+   */
+  private final IdGenerator ids = new IdGenerator();
+  /**
+   * converts the graph into pairs
+   */
+  private final Converter<Integer> converter = new Converter<Integer>(ids, numbering);
+  /**
+   * the variant graph of all witnesses, holding token ids of the
+   * dictionary; created on the first update
+   */
+  private VariantGraph<Integer> graph;
+  /**
+   * the pairs of the graph, serialised on demand
+   */
+  private List<Match<Integer>> matches;
+  /**
+   * the pairs with decoded tokens, built on demand
+   */
+  private List<Match<T>> decodedMatches;
+  /**
+   * the search and offset index of the pairs, built on demand
+   */
+  private MatchIndex index;
 
   public Collation(String description, Ordering<T> tokenOrdering, T nullToken) {
+    this(description, tokenOrdering, nullToken, MoreExecutors.sameThreadExecutor());
+  }
+
+  /**
+   * Create a collation searching for MUMs concurrently.
+   *
+   * @param description   the description of the MVD
+   * @param tokenOrdering the ordering of tokens
+   * @param nullToken     the token used to mask out data
+   * @param executor      runs the direct and transpose MUM searches
+   *                      of special arcs and the match threads of direct
+   *                      searches; not shut down by the collation
+   */
+  public Collation(String description, Ordering<T> tokenOrdering, T nullToken, ExecutorService executor) {
     this.description = description;
-    this.tokenOrdering = tokenOrdering;
+    this.dictionary = new TokenDictionary<T>(tokenOrdering);
     this.nullToken = nullToken;
+    this.executor = executor;
   }
 
   /**
@@ -77,7 +128,33 @@ public class Collation<T> {
    * @return the pairs - read only!
    */
   public List<Match<T>> getMatches() {
-    return matches;
+    if (decodedMatches == null) {
+      decodedMatches = decode(matches());
+    }
+    return decodedMatches;
+  }
+
+  /**
+   * Decode pairs, retaining the transpositions between them
+   *
+   * @param encoded pairs holding token ids
+   * @return the pairs holding tokens
+   */
+  private List<Match<T>> decode(List<Match<Integer>> encoded) {
+    final Map<Match<Integer>, Match<T>> decoded = Maps.newIdentityHashMap();
+    final List<Match<T>> result = Lists.newArrayListWithExpectedSize(encoded.size());
+    for (Match<Integer> match : encoded) {
+      final Match<T> decodedMatch = new Match<T>(match.witnesses, dictionary.decode(match.getOwnTokens()));
+      decodedMatch.setId(match.getId());
+      decoded.put(match, decodedMatch);
+      result.add(decodedMatch);
+    }
+    for (Match<Integer> match : encoded) {
+      for (Match<Integer> child : match.getChildren()) {
+        decoded.get(match).addChild(decoded.get(child));
+      }
+    }
+    return result;
   }
 
   /**
@@ -92,64 +169,30 @@ public class Collation<T> {
    * @param v     the second version to compare
    * @param state the state of text belonging only to u
    * @return an array of chunks for special display
+   * @see #compare(Witness, Witness, ChunkState, int)
    */
   public List<Chunk<T>> compare(Witness u, Witness v, ChunkState state)
           throws MVDException {
-    List<Chunk<T>> result = Lists.newArrayList();
-
-    Chunk<T> currentChunk = new Chunk<T>();
-    currentChunk.setWitness(u);
-
-    TransposeState oldTransposeState = null;
-    ChunkStateSet oldChunkStateSet = null;
-
-    TransposeState transposeState = new TransposeState();
-    ChunkStateSet chunkStateSet = new ChunkStateSet();
-
-    int chunkId = 0;
-    TransposeState.transposeId = Integer.MAX_VALUE;
-
-    for (Match<T> match : Iterables.filter(matches, new Match.WitnessPredicate(u))) {
-      oldTransposeState = transposeState;
-      oldChunkStateSet = chunkStateSet;
-
-      transposeState = transposeState.next(match, u, v);
-      if (!transposeState.isTransposed()) {
-      // not transposed means deleted, inserted or merged
-        chunkStateSet = chunkStateSet.next(match, state, v);
-      }
+    return Lists.newArrayList(compare(u, v, state, 0));
+  }
 
-      if (!transposeState.equals(oldTransposeState) || !chunkStateSet.equals(oldChunkStateSet)) {
-        // then we have to write out currentChunk
-        ChunkStateSet currentChunkStates = currentChunk.getStates();
-        if (currentChunk.getLength() > 0) {
-          if (currentChunkStates.isMerged()) {
-            currentChunk.setId(++chunkId);
-          }
-          result.add(currentChunk);
-        }
-        // set up a new currentChunk chunk
-        ChunkState[] newStates;
-        if (transposeState.getId() != 0) {
-          newStates = new ChunkState[1];
-          newStates[0] = transposeState.getState();
-        } else {
-          newStates = chunkStateSet.getStates();
-        }
-        currentChunk = new Chunk<T>(transposeState.getId(), newStates, match.getTokens());
-        currentChunk.setWitness(u);
-      } else {
-        currentChunk.add(match.getTokens());
-      }
-    }
-    // add any lingering result
-    if (currentChunk.getStates().isMerged()) {
-      currentChunk.setId(++chunkId);
-    }
-    if (result.size() == 0 || !currentChunk.equals(result.get(result.size() - 1))) {
-      result.add(currentChunk);
-    }
-    return result;
+  /**
+   * Compare two versions u and v from a given offset in u on. Chunks
+   * are computed as the iterator advances; their tokens are read-only
+   * views of the pairs. The chunks before the offset are walked over
+   * without being built, so a view of part of a long version can be
+   * shown without comparing all of it first.
+   *
+   * @param u      the first version to compare
+   * @param v      the second version to compare
+   * @param state  the state of text belonging only to u
+   * @param offset the offset in u; the first chunk returned contains it
+   * @return the chunks from the one containing the offset on; the last
+   *         chunk of u is always returned
+   */
+  public Iterator<Chunk<T>> compare(Witness u, Witness v, ChunkState state, int offset) {
+    final Iterator<Match<T>> pairs = Iterators.filter(getMatches().iterator(), new Match.WitnessPredicate(u));
+    return new ChunkIterator<T>(pairs, u, v, state, offset, ids);
   }
 
   /**
@@ -160,16 +203,7 @@ public class Collation<T> {
    * @return the index of the next pair or Integer.MAX_VALUE if not found
    */
   int next(int pairIndex, Witness u) {
-    int i = pairIndex;
-    while (i < matches.size()) {
-      Match<T> p = matches.get(i);
-      if (p.contains(u)) {
-        return i;
-      } else {
-        i++;
-      }
-    }
-    return Integer.MAX_VALUE;
+    return index().next(pairIndex, u);
   }
 
   /**
@@ -181,21 +215,13 @@ public class Collation<T> {
    * @return the index of the previous pair or -1 if not found
    */
   int previous(int pairIndex, Witness u) {
-    int i = pairIndex - 1;
-    while (i > 0) {
-      Match<T> p = matches.get(i);
-      if (p.contains(u)) {
-        return i;
-      } else {
-        i--;
-      }
-    }
-    return -1;
+    return index().previous(pairIndex, u);
   }
 
   /**
    * Search for a pattern. Return multiple matches if requested
-   * as an array of Match objects
+   * as an array of Match objects. The pairs are indexed on the first
+   * search after the MVD changed; searches are then index lookups.
    *
    * @param pattern  the pattern to search for
    * @param bs       the set of versions to search through
@@ -204,77 +230,17 @@ public class Collation<T> {
    */
   public List<Hit<T>> search(List<T> pattern, Set<Witness> bs, boolean multiple)
           throws Exception {
-    KMPSearchState<T> inactive = null;
-    KMPSearchState<T> active = null;
-    List<Hit<T>> hits = Lists.newArrayList();
-    if (!witnesses.isEmpty()) {
-      inactive = new KMPSearchState<T>(tokenOrdering, pattern, bs);
-      for (int i = 0; i < matches.size(); i++) {
-        Match<T> temp = matches.get(i);
-        // move all elements from active to inactive
-        if (inactive == null) {
-          inactive = active;
-        } else {
-          inactive.append(active);
-        }
-        active = null;
-        // move matching SearchStates into active
-        KMPSearchState<T> s = inactive;
-        while (s != null) {
-          KMPSearchState<T> sequential = s.following;
-          if (!disjoint(s.v, temp.witnesses)) {
-            KMPSearchState<T> child = s.split(temp.witnesses);
-            if (active == null) {
-              active = child;
-            } else {
-              active.append(child);
-            }
-            if (s.v.isEmpty()) {
-              inactive = inactive.remove(s);
-            }
-          }
-          s = sequential;
-        }
-        // now process each byte of the pair
-        if (active != null) {
-          List<T> data = temp.getTokens();
-          for (int j = 0; j < data.size(); j++) {
-            KMPSearchState<T> ss = active;
-            while (ss != null) {
-              if (ss.update(data.get(j))) {
-                List<Hit<T>> m = Hit.createHits(pattern.size(), ss.v, this, i, j, multiple, ChunkState.FOUND);
-                if (hits == null) {
-                  hits = m;
-                } else {
-                  hits = Hit.merge(hits, m);
-                }
-                if (!multiple) {
-                  break;
-                }
-              }
-              ss = ss.following;
-            }
-            // now prune the active list
-            KMPSearchState<T> s1 = active;
-            if (s1.next != null) {
-              while (s1 != null) {
-                KMPSearchState<T> s2 = s1.following;
-                while (s2 != null) {
-                  KMPSearchState<T> sequential = s2.following;
-                  if (s1.equals(s2)) {
-                    s1.merge(s2);
-                    active.remove(s2);
-                  }
-                  s2 = sequential;
-                }
-                s1 = s1.following;
-              }
-            }
-          }
-        }
-      }
+    // tokens unknown to the dictionary cannot match
+    final List<Integer> encodedPattern = dictionary.lookup(pattern);
+    if (witnesses.isEmpty() || encodedPattern == null) {
+      return Lists.newArrayList();
+    }
+    final WitnessSet searched = newWitnessSet();
+    for (Witness witness : bs) {
+      searched.add(numbered(witness));
     }
-    return hits;
+    final List<Hit<T>> hits = index().find(encodedPattern, searched);
+    return (multiple || hits.isEmpty() ? hits : Lists.newArrayList(hits.get(0)));
   }
 
   /**
@@ -283,9 +249,47 @@ public class Collation<T> {
    * @return the id of the new version
    */
   public Witness add(Witness witness, List<T> data) throws Exception {
+    return add(witness, data, UpdateMetrics.DISABLED);
+  }
+
+  /**
+   * Create a new version, recording what the merge took.
+   *
+   * @param witness the witness to add
+   * @param data    the data to merge
+   * @param metrics the metrics to add to
+   * @return the id of the new version
+   */
+  public Witness add(Witness witness, List<T> data, UpdateMetrics metrics) throws Exception {
+    return update(register(witness), data, metrics);
+  }
+
+  /**
+   * Add a witness without data, to be restored from pairs
+   *
+   * @param witness the witness to add
+   * @return the witness
+   */
+  Witness register(Witness witness) {
     Preconditions.checkArgument(!witnesses.contains(witness));
+    numbering.register(witness);
     witnesses.add(witness);
-    return update(witness, data);
+    return witness;
+  }
+
+  /**
+   * Restore the graph of a collation without pairs from
+   * previously serialised ones
+   *
+   * @param pairs pairs holding ids of this collation's dictionary
+   *              and sets of its registered witnesses
+   */
+  void restore(List<Match<Integer>> pairs) throws Exception {
+    Preconditions.checkState(graph == null, "%s already holds a graph", this);
+    if (!pairs.isEmpty()) {
+      graph = converter.create(pairs, witnesses);
+      matches = pairs;
+    }
   }
 
   /**
@@ -297,39 +301,95 @@ public class Collation<T> {
    *         if this was the first witness
    */
   public Witness update(Witness witness, List<T> data) throws Exception {
+    return update(witness, data, UpdateMetrics.DISABLED);
+  }
+
+  /**
+   * Update an existing witness or add a new one, recording what the
+   * merge took. If the merge fails, whatever it merged is removed
+   * again and the witness is left without text.
+   *
+   * @param witness the id of the witness to add.
+   * @param data    the data to merge
+   * @param metrics the metrics to add to
+   * @return the witness
+   */
+  public Witness update(Witness witness, List<T> data, UpdateMetrics metrics) throws Exception {
     Preconditions.checkArgument(witnesses.contains(witness));
-    // to do: if witness already exists, remove it first
-    Converter<T> con = new Converter<T>();
-    VariantGraph<T> original = con.create(matches, witnesses);
-    original.removeVersion(witness);
-    VariantGraph<T> g = original;
-    VariantGraphSpecialArc<T> special = g.addSpecialArc(data, witness, 0);
+    final long start = metrics.start();
+    witness = numbered(witness);
+    if (graph == null) {
+      graph = converter.create(Collections.<Match<Integer>>emptyList(), witnesses);
+    }
+    matches = null;
+    decodedMatches = null;
+    index = null;
+    try {
+      graph.removeVersion(witness);
+      merge(witness, data, metrics);
+      graph.adopt(witness);
+    } catch (Exception e) {
+      discard(witness);
+      throw e;
+    }
+    metrics.updated(start);
+
+    if (Errors.LOG.isDebugEnabled()) {
+      float percentUnique = (witnesses.size() == 1 ? 0.0f : getPercentUnique(witness));
+      Errors.LOG.debug("Updated {} in {}: {} % unique", new Object[]{witness, this, percentUnique});
+    }
+
+    return witness;
+  }
+
+  /**
+   * Merge the data of a witness into the graph, aligning it via
+   * the best MUMs of its special arcs until none are left.
+   *
+   * @param witness the witness to merge
+   * @param data    the data to merge
+   * @param metrics the metrics to add to
+   */
+  private void merge(Witness witness, List<T> data, UpdateMetrics metrics) throws Exception {
+    VariantGraph<Integer> g = graph;
+    VariantGraphSpecialArc<Integer> special = g.addSpecialArc(dictionary.encode(data), witness, 0);
     if (g.getStart().cardinality() > 1) {
-      SuffixTree<T> st = makeSuffixTree(special);
-      MaximalUniqueMatch<T> bestMUM = MaximalUniqueMatch.findDirectMUM(special, st, g);
-      TreeMap<VariantGraphSpecialArc<T>, VariantGraph<T>> specials =
-              new TreeMap<VariantGraphSpecialArc<T>, VariantGraph<T>>();
+      final long search = metrics.start();
+      SuffixArray<Integer> st = makeSuffixArray(special, metrics);
+      MaximalUniqueMatch<Integer> bestMUM = MaximalUniqueMatch.findDirectMUM(special, st, g, executor);
+      metrics.searched(search);
+      TreeMap<VariantGraphSpecialArc<Integer>, VariantGraph<Integer>> specials =
+              new TreeMap<VariantGraphSpecialArc<Integer>, VariantGraph<Integer>>();
       while (bestMUM != null) {
+        metrics.tried(specials.size() + 1);
         if (bestMUM.verify()) {
+          final long merge = metrics.start();
           bestMUM.merge();
-          SimpleQueue<VariantGraphSpecialArc<T>> leftSpecials = bestMUM.getLeftSpecialArcs();
-          SimpleQueue<VariantGraphSpecialArc<T>> rightSpecials = bestMUM.getRightSpecialArcs();
+          SimpleQueue<VariantGraphSpecialArc<Integer>> leftSpecials = bestMUM.getLeftSpecialArcs();
+          SimpleQueue<VariantGraphSpecialArc<Integer>> rightSpecials = bestMUM.getRightSpecialArcs();
+          List<VariantGraphSpecialArc<Integer>> subArcs = Lists.newArrayList();
+          List<VariantGraph<Integer>> subGraphs = Lists.newArrayList();
           while (leftSpecials != null && !leftSpecials.isEmpty()) {
-            installSpecial(specials, leftSpecials.poll(), bestMUM.getLeftSubgraph(), true);
+            subArcs.add(leftSpecials.poll());
+            subGraphs.add(bestMUM.getLeftSubgraph());
           }
           while (rightSpecials != null && !rightSpecials.isEmpty()) {
-            installSpecial(specials, rightSpecials.poll(), bestMUM.getRightSubgraph(), false);
+            subArcs.add(rightSpecials.poll());
+            subGraphs.add(bestMUM.getRightSubgraph());
           }
+          metrics.merged(merge);
+          installSpecials(specials, subArcs, subGraphs, metrics);
         } else {
           // try again
-          bestMUM = recomputeMUM(bestMUM);
+          metrics.invalid();
+          bestMUM = recomputeMUM(bestMUM, metrics);
           if (bestMUM != null) {
             specials.put(bestMUM.getArc(), bestMUM.getGraph());
           }
         }
         if (Errors.LOG.isTraceEnabled()) {
-          for (VariantGraphSpecialArc<T> s : specials.keySet()) {
-            final MaximalUniqueMatch<T> bestMatch = s.getBest();
+          for (VariantGraphSpecialArc<Integer> s : specials.keySet()) {
+            final MaximalUniqueMatch<Integer> bestMatch = s.getBest();
             Errors.LOG.trace("{}{}", (bestMatch.isTransposition() ? "Transposed: " : ""), bestMatch.getMatch());
           }
         }
@@ -337,7 +397,7 @@ public class Collation<T> {
         // POP topmost entry, if possible
         bestMUM = null;
         if (specials.size() > 0) {
-          VariantGraphSpecialArc<T> key = specials.firstKey();
+          VariantGraphSpecialArc<Integer> key = specials.firstKey();
           //assert key.from != null && key.to != null;
           //System.out.println(key.toString());
           if (key != null) {
@@ -348,15 +408,24 @@ public class Collation<T> {
         }
       }
     }
-    original.adopt(witness);
-    matches = con.serialise();
+  }
 
-    if (Errors.LOG.isDebugEnabled()) {
-      float percentUnique = (witnesses.size() == 1 ? 0.0f : getPercentUnique(witness));
-      Errors.LOG.debug("Updated {} in {}: {} % unique", new Object[]{witness, this, percentUnique});
+  /**
+   * Drop whatever part of a witness a failed merge left in the
+   * graph, so that the other witnesses stay intact.
+   *
+   * @param witness the witness whose merge failed
+   */
+  private void discard(Witness witness) {
+    try {
+      graph.discardVersion(witness);
+      graph.verify();
+    } catch (Exception e) {
+      Errors.LOG.error("Could not discard " + witness + " after a failed merge", e);
     }
-
-    return witness;
+    matches = null;
+    decodedMatches = null;
+    index = null;
   }
 
   /**
@@ -371,8 +440,8 @@ public class Collation<T> {
     if (witnesses.size() == 1) {
       return 0.0f;
     } else {
-      for (int i = 0; i < matches.size(); i++) {
-        Match<T> p = matches.get(i);
+      for (int i = 0; i < matches().size(); i++) {
+        Match<Integer> p = matches().get(i);
         if (p.witnesses.contains(version)) {
           if (p.witnesses.size() == 1) {
             uniqueLen += p.length();
@@ -392,8 +461,8 @@ public class Collation<T> {
    */
   private float getPercentUnique(Witness version) {
     float unique = 0.0f, shared = 0.0f;
-    for (int i = 0; i < matches.size(); i++) {
-      Match<T> p = matches.get(i);
+    for (int i = 0; i < matches().size(); i++) {
+      Match<Integer> p = matches().get(i);
       if (p.witnesses.contains(version)) {
         if (p.witnesses.size() == 1) {
           unique += p.length();
@@ -411,8 +480,9 @@ public class Collation<T> {
    * @param old the old invalid MUM
    * @return a new valid MUM or null
    */
-  private MaximalUniqueMatch<T> recomputeMUM(MaximalUniqueMatch<T> old) throws MVDException {
-    return computeBestMUM(old.getGraph(), old.getArc());
+  private MaximalUniqueMatch<Integer> recomputeMUM(MaximalUniqueMatch<Integer> old, UpdateMetrics metrics)
+          throws MVDException {
+    return computeBestMUM(old.getGraph(), old.getArc(), metrics);
   }
 
   /**
@@ -420,58 +490,129 @@ public class Collation<T> {
    *
    * @param g       a graph
    * @param special a special arc aligned with g
+   * @param metrics the metrics of the update
    * @return the new MUM or null
    * @throws MVDException
    */
-  private MaximalUniqueMatch<T> computeBestMUM(VariantGraph<T> g, VariantGraphSpecialArc<T> special)
+  private MaximalUniqueMatch<Integer> computeBestMUM(VariantGraph<Integer> g, VariantGraphSpecialArc<Integer> special,
+                                                     UpdateMetrics metrics) throws MVDException {
+    return computeBestMUMs(Collections.singletonList(special), Collections.singletonList(g), metrics).get(0);
+  }
+
+  /**
+   * Compute the best MUMs of several special arcs. The searches
+   * only read the graph, so the direct and transpose searches of
+   * all arcs are run concurrently.
+   *
+   * @param specials special arcs
+   * @param graphs   the subgraph aligned with each special arc
+   * @param metrics  the metrics of the update
+   * @return the new MUM of each special arc, possibly null
+   * @throws MVDException
+   */
+  private List<MaximalUniqueMatch<Integer>> computeBestMUMs(List<VariantGraphSpecialArc<Integer>> specials,
+                                                      List<VariantGraph<Integer>> graphs, UpdateMetrics metrics)
           throws MVDException {
-    SuffixTree<T> st = makeSuffixTree(special);
-    MaximalUniqueMatch<T> directMUM = MaximalUniqueMatch.findDirectMUM(special, st, g);
-    MaximalUniqueMatch<T> best = directMUM;
-    if (!directAlignOnly) {
-      MaximalUniqueMatch<T> leftTransposeMUM = MaximalUniqueMatch.findLeftTransposeMUM(special, st, g);
-      MaximalUniqueMatch<T> rightTransposeMUM = MaximalUniqueMatch.findRightTransposeMUM(special, st, g);
-      best = getBest(directMUM, leftTransposeMUM, rightTransposeMUM);
+    final long start = metrics.start();
+    List<Future<MaximalUniqueMatch<Integer>>> searches = Lists.newArrayListWithExpectedSize(specials.size() * 3);
+    for (int i = 0; i < specials.size(); i++) {
+      final VariantGraphSpecialArc<Integer> special = specials.get(i);
+      final VariantGraph<Integer> g = graphs.get(i);
+      final SuffixArray<Integer> st = makeSuffixArray(special, metrics);
+      searches.add(executor.submit(new Callable<MaximalUniqueMatch<Integer>>() {
+        @Override
+        public MaximalUniqueMatch<Integer> call() throws Exception {
+          return MaximalUniqueMatch.findDirectMUM(special, st, g, executor);
+        }
+      }));
+      if (!directAlignOnly) {
+        searches.add(executor.submit(new Callable<MaximalUniqueMatch<Integer>>() {
+          @Override
+          public MaximalUniqueMatch<Integer> call() throws Exception {
+            return MaximalUniqueMatch.findLeftTransposeMUM(special, st, g);
+          }
+        }));
+        searches.add(executor.submit(new Callable<MaximalUniqueMatch<Integer>>() {
+          @Override
+          public MaximalUniqueMatch<Integer> call() throws Exception {
+            return MaximalUniqueMatch.findRightTransposeMUM(special, st, g);
+          }
+        }));
+      }
     }
-    if (best != null) {
-      special.setBest(best);
+
+    List<MaximalUniqueMatch<Integer>> bestMUMs = Lists.newArrayListWithExpectedSize(specials.size());
+    Iterator<Future<MaximalUniqueMatch<Integer>>> results = searches.iterator();
+    try {
+      for (VariantGraphSpecialArc<Integer> special : specials) {
+        MaximalUniqueMatch<Integer> best = results.next().get();
+        if (!directAlignOnly) {
+          MaximalUniqueMatch<Integer> leftTransposeMUM = results.next().get();
+          MaximalUniqueMatch<Integer> rightTransposeMUM = results.next().get();
+          best = getBest(best, leftTransposeMUM, rightTransposeMUM);
+        }
+        if (best != null) {
+          special.setBest(best);
+        }
+        bestMUMs.add(best);
+      }
+      metrics.searched(start);
+      return bestMUMs;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MVDException(e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), MVDException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      while (results.hasNext()) {
+        results.next().cancel(true);
+      }
     }
-    return best;
   }
 
   /**
-   * Create a new suffix tree based on the data in the special arc.
+   * Create a new suffix array based on the data in the special arc.
    * Mask out bytes that are not to be considered.
    *
    * @param special the special arc
-   * @return the suffix tree
+   * @param metrics the metrics of the update
+   * @return the suffix array
    * @throws MVDException
    */
-  private SuffixTree<T> makeSuffixTree(VariantGraphSpecialArc<T> special) throws MVDException {
-    return new SuffixTree<T>(Lists.newArrayList(special.getData()), tokenOrdering, nullToken);
+  private SuffixArray<Integer> makeSuffixArray(VariantGraphSpecialArc<Integer> special, UpdateMetrics metrics)
+          throws MVDException {
+    final long start = metrics.start();
+    final SuffixArray<Integer> suffixArray = new SuffixArray<Integer>(Lists.newArrayList(special.getData()), Ordering.<Integer>natural());
+    metrics.suffixArrayBuilt(start);
+    return suffixArray;
   }
 
   /**
-   * Install a subarc into specials
+   * Install subarcs into specials
    *
-   * @param specials the specials TreeMap (red-black tree)
-   * @param special  the special subarc to add
-   * @param subGraph the directly opposite subgraph
-   * @param left     true if we are doing the left subarc, otherwise the
-   *                 right
+   * @param specials  the specials TreeMap (red-black tree)
+   * @param subArcs   the special subarcs to add
+   * @param subGraphs the directly opposite subgraph of each subarc
+   * @param metrics   the metrics of the update
    */
-  private void installSpecial(TreeMap<VariantGraphSpecialArc<T>, VariantGraph<T>> specials,
-                              VariantGraphSpecialArc<T> special, VariantGraph<T> subGraph, boolean left) throws MVDException {
-    assert special.getFrom() != null && special.to != null;
-    // this is necessary BEFORE you recalculate the MUM
-    // because it will invalidate the special's location
-    // in the treemap and make it unfindable
-    if (specials.containsKey(special)) {
-      specials.remove(special);
+  private void installSpecials(TreeMap<VariantGraphSpecialArc<Integer>, VariantGraph<Integer>> specials,
+                               List<VariantGraphSpecialArc<Integer>> subArcs, List<VariantGraph<Integer>> subGraphs,
+                               UpdateMetrics metrics) throws MVDException {
+    for (VariantGraphSpecialArc<Integer> special : subArcs) {
+      assert special.getFrom() != null && special.to != null;
+      // this is necessary BEFORE you recalculate the MUM
+      // because it will invalidate the special's location
+      // in the treemap and make it unfindable
+      if (specials.containsKey(special)) {
+        specials.remove(special);
+      }
     }
-    MaximalUniqueMatch<T> best = computeBestMUM(subGraph, special);
-    if (best != null) {
-      specials.put(special, subGraph);
+    List<MaximalUniqueMatch<Integer>> bestMUMs = computeBestMUMs(subArcs, subGraphs, metrics);
+    for (int i = 0; i < subArcs.size(); i++) {
+      if (bestMUMs.get(i) != null) {
+        specials.put(subArcs.get(i), subGraphs.get(i));
+      }
     }
   }
 
@@ -483,11 +624,11 @@ public class Collation<T> {
    * @param rightTransposed the right transpose MUM possibly null
    * @return null or the best MUM
    */
-  private MaximalUniqueMatch<T> getBest(MaximalUniqueMatch<T> direct, MaximalUniqueMatch<T> leftTransposed,
-                                        MaximalUniqueMatch<T> rightTransposed) {
-    MaximalUniqueMatch<T> best = null;
+  private MaximalUniqueMatch<Integer> getBest(MaximalUniqueMatch<Integer> direct, MaximalUniqueMatch<Integer> leftTransposed,
+                                        MaximalUniqueMatch<Integer> rightTransposed) {
+    MaximalUniqueMatch<Integer> best = null;
     // decide which transpose MUM to use
-    MaximalUniqueMatch<T> transposed;
+    MaximalUniqueMatch<Integer> transposed;
     if (leftTransposed == null) {
       transposed = rightTransposed;
     } else if (rightTransposed == null) {
@@ -517,24 +658,37 @@ public class Collation<T> {
   }
 
   /**
-   * The only way to remove a version from an MVD is to construct
-   * a graph and then delete the version from it. Then we serialise
-   * it out into pairs again and call the other removeVersion method
-   * on EACH and EVERY pair.
+   * Remove a version from the graph. The pairs are
+   * serialised again when next needed.
    *
    * @param version the version to be removed
    */
   public void removeVersion(Witness version) throws Exception {
-    Converter<T> con = new Converter<T>();
-    VariantGraph<T> original = con.create(matches, Sets.newHashSet(witnesses));
-    original.removeVersion(version);
-    original.verify();
+    version = numbered(version);
     witnesses.remove(version);
-    matches = con.serialise();
-    for (int i = 0; i < matches.size(); i++) {
-      Match<T> p = matches.get(i);
-      p.witnesses.remove(version);
+    if (graph != null) {
+      graph.removeVersion(version);
+      graph.verify();
     }
+    matches = null;
+    decodedMatches = null;
+    index = null;
+  }
+
+  /**
+   * Get the pairs of the graph, serialising it if it changed
+   *
+   * @return the pairs - read only!
+   */
+  private List<Match<Integer>> matches() {
+    if (matches == null) {
+      try {
+        matches = (graph == null ? Collections.<Match<Integer>>emptyList() : converter.serialise());
+      } catch (MVDException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+    return matches;
   }
 
   /**
@@ -544,11 +698,20 @@ public class Collation<T> {
    * @return a byte array containing all the data of that witness
    */
   public List<T> getVersion(Witness witness) {
-    final List<T> result = Lists.newArrayList();
-    for (Match<T> match : Iterables.filter(matches, new Match.WitnessPredicate(witness))) {
-        result.addAll(match.getTokens());
-    }
-    return result;
+    return getVersion(witness, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Retrieve a range of a witness, copying it from the MVD
+   *
+   * @param witness the witness to retrieve
+   * @param offset  the offset of the range in the witness
+   * @param len     the length of the range
+   * @return the data of the range; shorter than requested if the
+   *         witness ends before
+   */
+  public List<T> getVersion(Witness witness, int offset, int len) {
+    return dictionary.decode(index().getVersion(witness, offset, len));
   }
 
   /**
@@ -564,10 +727,11 @@ public class Collation<T> {
    */
   public SortedSet<Variant<T>> getApparatus(Witness base, int offset, int len)
           throws MVDException {
+    base = numbered(base);
     int first = getPairIndex(base, offset);
     int last = getPairIndex(base, offset + len);
     /// list of unattached-as-outgoing pairs on the right
-    LinkedList<WrappedPair<T>> right = new LinkedList<WrappedPair<T>>();
+    LinkedList<WrappedPair<Integer>> right = new LinkedList<WrappedPair<Integer>>();
     LinkedList<CompactNode> nodes = buildBasicNodes(first, last, right, true);
     // find the nodes to which any remaining pairs belong
     // there may still be some ambiguous pairs that are outgoing
@@ -588,16 +752,16 @@ public class Collation<T> {
    * @return a list of nodes
    */
   LinkedList<CompactNode> buildBasicNodes(int first, int last,
-                                          LinkedList<WrappedPair<T>> right, boolean pushRight) {
+                                          LinkedList<WrappedPair<Integer>> right, boolean pushRight) {
     LinkedList<CompactNode> nodes = new LinkedList<CompactNode>();
     for (int i = last; i >= first; i--) {
       // if not saving unattached pairs
       if (!pushRight && right.isEmpty()) {
         break;
       }
-      Match<T> p = matches.get(i);
+      Match<Integer> p = matches().get(i);
       if (pushRight && p.isHint()) {
-        right.push(new WrappedPair<T>(p));
+        right.push(new WrappedPair<Integer>(p));
       } else if (!right.isEmpty() && right.peek().getMatch().isHint()) {
         CompactNode cn = new CompactNode(i);
         // add hint discretely
@@ -606,7 +770,7 @@ public class Collation<T> {
         addOutgoing(cn, right.pop(), right);
         setDefaultNode(cn, right);
         if (pushRight) {
-          right.push(new WrappedPair<T>(p));
+          right.push(new WrappedPair<Integer>(p));
         }
       } else if (!right.isEmpty() && !disjoint(right.peek().getMatch().witnesses, p.witnesses)) {
         CompactNode cn = new CompactNode(i);
@@ -614,10 +778,10 @@ public class Collation<T> {
         nodes.push(cn);
         setDefaultNode(cn, right);
         if (pushRight) {
-          right.push(new WrappedPair<T>(p));
+          right.push(new WrappedPair<Integer>(p));
         }
       } else if (pushRight) {
-        right.push(new WrappedPair<T>(p));
+        right.push(new WrappedPair<Integer>(p));
       }
     }
     return nodes;
@@ -637,7 +801,7 @@ public class Collation<T> {
     LinkedList<CompactNode> departing = new LinkedList<CompactNode>();
     LinkedList<CompactNode> delenda = new LinkedList<CompactNode>();
     Iterator<CompactNode> iter1 = nodes.iterator();
-    Set<Witness> basePath = Sets.newHashSet(base);
+    Set<Witness> basePath = WitnessSet.of(numbering, base);
     while (iter1.hasNext()) {
       CompactNode node = iter1.next();
       if (node.getIncoming().contains(base)) {
@@ -654,7 +818,7 @@ public class Collation<T> {
           CompactNode upNode = iter2.next();
           if (!disjoint(upNode.getOutgoing(), node.getIncoming())) {
             // compute intersection
-            Set<Witness> bs = Sets.newHashSet(Sets.intersection(upNode.getOutgoing(), node.getIncoming()));
+            Set<Witness> bs = WitnessSet.intersection(upNode.getOutgoing(), node.getIncoming());
             if (!bs.isEmpty()) {
               List<Set<Witness>> paths = getUniquePaths(upNode, node, bs, base);
               // precompute base variant for later
@@ -734,7 +898,7 @@ public class Collation<T> {
       length = 0;
       // get the first outgoing arc containing i
       startIndex = origStart = next(startIndex + 1, i);
-      Match<T> p = matches.get(startIndex);
+      Match<Integer> p = matches().get(startIndex);
       // start HERE: first outgoing arc, offset 0
       int lastStartIndex = startIndex;
       int lastOffset = 0;
@@ -745,7 +909,7 @@ public class Collation<T> {
           if (startIndex == -1) {
             break;
           }
-          p = matches.get(startIndex);
+          p = matches().get(startIndex);
           if (p.length() == 0) {
             offset = -1;
           } else {
@@ -765,20 +929,20 @@ public class Collation<T> {
       // now advance to end, extending length
       endIndex = origStart;
       while (endIndex <= end) {
-        p = matches.get(endIndex);
+        p = matches().get(endIndex);
         length += p.length();
         endIndex = next(endIndex + 1, i);
       }
       // extend to next space after end
-      p = matches.get(endIndex);
+      p = matches().get(endIndex);
       int endOffset = 0;
-      while (endIndex < matches.size()) {
+      while (endIndex < matches().size()) {
         if (endOffset == p.length()) {
           endIndex = next(endIndex + 1, i);
           if (endIndex == Integer.MAX_VALUE) {
             break;
           }
-          p = matches.get(endIndex);
+          p = matches().get(endIndex);
           endOffset = 0;
         } else {
           break;
@@ -786,10 +950,10 @@ public class Collation<T> {
       }
       // in case we shot off the end
       if (endIndex == Integer.MAX_VALUE) {
-        endIndex = previous(matches.size() - 1, i);
+        endIndex = previous(matches().size() - 1, i);
       }
       // now build variant
-      Variant<T> temp = new Variant<T>(offset, startIndex, endIndex, length, Sets.newHashSet(i), this);
+      Variant<T> temp = new Variant<T>(offset, startIndex, endIndex, length, WitnessSet.of(numbering, i), this);
       int k;
       for (k = 0; k < variants.size(); k++) {
         if (temp.equalsContent(variants.get(k))) {
@@ -811,10 +975,10 @@ public class Collation<T> {
    * @param cn    the Compact Node to act as default parent
    * @param right the list
    */
-  void setDefaultNode(CompactNode cn, LinkedList<WrappedPair<T>> right) {
-    Iterator<WrappedPair<T>> iter = right.iterator();
+  void setDefaultNode(CompactNode cn, LinkedList<WrappedPair<Integer>> right) {
+    Iterator<WrappedPair<Integer>> iter = right.iterator();
     while (iter.hasNext()) {
-      WrappedPair<T> wp = iter.next();
+      WrappedPair<Integer> wp = iter.next();
       if (wp.getDefaultNode() == null) {
         wp.setDefaultNode(cn);
       } else {
@@ -827,15 +991,15 @@ public class Collation<T> {
    * Add an outgoing arc to a node and look for incoming
    * pairs to the left of the node.
    */
-  void addOutgoing(CompactNode cn, WrappedPair<T> p, LinkedList<WrappedPair<T>> right) {
+  void addOutgoing(CompactNode cn, WrappedPair<Integer> p, LinkedList<WrappedPair<Integer>> right) {
     cn.addOutgoing(p.getMatch());
     Set<Witness> wi = cn.getWantsIncoming();
     while (!wi.isEmpty()) {
       int index = cn.getIndex();
       for (int i = index; i >= 0; i--) {
-        Match<T> q = matches.get(i);
+        Match<Integer> q = matches().get(i);
         if (!disjoint(q.witnesses, wi)) {
-          addIncoming(cn, new WrappedPair<T>(q), right);
+          addIncoming(cn, new WrappedPair<Integer>(q), right);
           wi = cn.getWantsIncoming();
           break;
         }
@@ -843,8 +1007,8 @@ public class Collation<T> {
     }
     // look through right for arcs that intersect
     // with p and must be attached to their default nodes
-    Iterator<WrappedPair<T>> iter = right.iterator();
-    WrappedPair<T> q = null;
+    Iterator<WrappedPair<Integer>> iter = right.iterator();
+    WrappedPair<Integer> q = null;
     while (iter.hasNext()) {
       q = iter.next();
       if (!disjoint(q.getMatch().witnesses, p.getMatch().witnesses)) {
@@ -853,7 +1017,9 @@ public class Collation<T> {
         q = null;
       }
     }
-    if (q != null) {
+    // pairs without a default node yet are left to the node
+    // that will be built for them further to the left
+    if (q != null && q.getDefaultNode() != null) {
       right.remove(q);
       CompactNode c = q.getDefaultNode();
       addIncoming(c, p, right);
@@ -865,12 +1031,12 @@ public class Collation<T> {
    * Add an incoming arc to a node and look for intersecting
    * pairs in the right list.
    */
-  void addIncoming(CompactNode cn, WrappedPair<T> p, LinkedList<WrappedPair<T>> right) {
+  void addIncoming(CompactNode cn, WrappedPair<Integer> p, LinkedList<WrappedPair<Integer>> right) {
     cn.addIncoming(p.getMatch());
     Set<Witness> wo = cn.getWantsOutgoing();
     while (!wo.isEmpty()) {
-      Iterator<WrappedPair<T>> iter = right.iterator();
-      WrappedPair<T> q = null;
+      Iterator<WrappedPair<Integer>> iter = right.iterator();
+      WrappedPair<Integer> q = null;
       while (iter.hasNext()) {
         q = iter.next();
         if (!disjoint(q.getMatch().witnesses, wo)) {
@@ -906,10 +1072,10 @@ public class Collation<T> {
     // if any such path contains even one pair that doesn't
     // contain the base version, add it to the paths set.
     for (int i = from.getIndex() + 1; i <= to.getIndex(); i++) {
-      Match<T> p = matches.get(i);
+      Match<Integer> p = matches().get(i);
       if (!disjoint(p.witnesses, pathV)) {
         // get intersection
-        Set<Witness> bs = Sets.newHashSet(Sets.intersection(p.witnesses, pathV));
+        Set<Witness> bs = WitnessSet.intersection(p.witnesses, pathV);
         if (!bs.isEmpty()) {
           LinkedList<Set<Witness>> queue = new LinkedList<Set<Witness>>();
           queue.push(bs);
@@ -923,8 +1089,8 @@ public class Collation<T> {
                 break;
               } else if (!disjoint(b, c)) {
                 // compute intersection and difference
-                Set<Witness> d = Sets.newHashSet(Sets.intersection(b, c));
-                Set<Witness> e = Sets.newHashSet(Sets.difference(b, c));
+                Set<Witness> d = WitnessSet.intersection(b, c);
+                Set<Witness> e = WitnessSet.difference(b, c);
                 // push them both and start again
                 queue.push(d);
                 queue.push(e);
@@ -962,20 +1128,58 @@ public class Collation<T> {
    * @return the relevant pair index of -1 if not found
    */
   int getPairIndex(Witness version, int offset) {
-    int pos = 0;
-    int found = -1;
-    for (int i = 0; i < matches.size(); i++) {
-      Match<T> p = matches.get(i);
-      if (p.witnesses.contains(version)) {
-        if (offset < pos + p.length()) {
-          found = i;
-          break;
-        } else {
-          pos += p.length();
-        }
-      }
+    return index().getPairIndex(version, offset);
+  }
+
+  /**
+   * Get the pairs holding token ids
+   *
+   * @return the pairs - read only!
+   */
+  List<Match<Integer>> getEncodedMatches() {
+    return matches();
+  }
+
+  /**
+   * Get the dictionary mapping tokens to the ids held by the pairs
+   *
+   * @return the dictionary
+   */
+  TokenDictionary<T> getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * Get the index of the pairs, building it if the graph changed
+   *
+   * @return the index
+   */
+  private MatchIndex index() {
+    if (index == null) {
+      index = new MatchIndex(matches(), dictionary.size(), numbering);
     }
-    return found;
+    return index;
+  }
+
+  /**
+   * Get the instance of a witness numbered in this collation
+   *
+   * @param witness a witness equal to one of this collation
+   * @return the numbered instance
+   */
+  private Witness numbered(Witness witness) {
+    final int number = numbering.numberOf(witness);
+    Preconditions.checkArgument(number >= 0, "%s not part of %s", witness, this);
+    return numbering.get(number);
+  }
+
+  /**
+   * Create an empty set over the numbering of this collation
+   *
+   * @return the new set
+   */
+  WitnessSet newWitnessSet() {
+    return new WitnessSet(numbering);
   }
 
   @Override
@@ -983,7 +1187,7 @@ public class Collation<T> {
     return Objects.toStringHelper(this)
             .addValue(description)
             .add("witnesses", witnesses.size())
-            .add("matches", matches.size())
+            .add("matches", matches().size())
             .toString();
   }
 
@@ -998,42 +1202,260 @@ public class Collation<T> {
    * that in a matrix of nVersions x nVersions, divide by the length
    * of the longest version in each case - 1.
    *
+   * <p>The pair list is split into consecutive ranges whose
+   * costs are computed in parallel. Each range records, per pair of
+   * versions, its first and last joint pair; the ranges are then
+   * chained in order so that the gaps spanning range boundaries are
+   * costed as in a single scan.</p>
+   *
+   * @param ordered the versions in the order of the matrix rows
    * @return a 2-D matrix of differences.
+   * @throws Exception if the computation of a range fails
    */
-  public double[][] computeDiffMatrix(List<Witness> ordered) {
-    int s = witnesses.size();
-    // keep track of the length of each version
+  public double[][] computeDiffMatrix(List<Witness> ordered) throws Exception {
+    final int s = witnesses.size();
+    Preconditions.checkArgument(ordered.size() == s, "%s does not order the witnesses of %s", ordered, this);
+    // map witness numbers to rows; the costs depend on the order in
+    // which the witnesses of a pair are visited, i.e. their numbers
+    final int[] rows = new int[numbering.size()];
+    Arrays.fill(rows, -1);
+    final int[] numbers = new int[s];
+    for (int r = 0; r < s; r++) {
+      numbers[r] = numbering.numberOf(numbered(ordered.get(r)));
+      rows[numbers[r]] = r;
+    }
+
+    final List<Match<Integer>> pairs = matches();
+    final int ranges = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), pairs.size() / 256));
+    final List<DiffRange> diffRanges = Lists.newArrayListWithExpectedSize(ranges);
+    for (int r = 0; r < ranges; r++) {
+      diffRanges.add(new DiffRange(pairs.subList(r * pairs.size() / ranges, (r + 1) * pairs.size() / ranges), numbering, rows, s));
+    }
+    // first the lengths of the versions before each range ...
+    invokeAll(diffRanges, false);
     int[] lengths = new int[s];
-    // the length of j last time j and k were joined
-    int[][] lastJoinJ = new int[s][s];
-    // the length of k last time j and k were joined
-    int[][] lastJoinK = new int[s][s];
-    // the cost is the longest distance between any two
-    // versions since they were last joined
-    int[][] costs = new int[s][s];
-    for (int i = 0; i < matches.size(); i++) {
-      Match<T> p = matches.get(i);
-      // consider each combination of j and k, including j=k
-      for (Witness jw : p.witnesses) {
-        int j = ordered.indexOf(jw);
-        for (Witness kw : p.witnesses) {
-          int k = ordered.indexOf(kw);
-          costs[j][k] += Math.max(lengths[j] - lastJoinJ[j][k], lengths[k] - lastJoinK[j][k]);
-          costs[k][j] = costs[j][k];
-          lastJoinJ[j][k] = lengths[j] + p.length();
-          lastJoinK[j][k] = lengths[k] + p.length();
+    for (DiffRange range : diffRanges) {
+      range.offsets = lengths;
+      lengths = range.lengths.clone();
+      for (int r = 0; r < s; r++) {
+        lengths[r] += range.offsets[r];
+      }
+    }
+    // ... then the costs within the ranges, chained in order
+    invokeAll(diffRanges, true);
+    final long[] costs = new long[s * (s - 1) / 2];
+    final int[] lastA = new int[costs.length];
+    final int[] lastB = new int[costs.length];
+    final int[] lastLength = new int[costs.length];
+    for (DiffRange range : diffRanges) {
+      for (int b = 1, pair = 0; b < s; b++) {
+        for (int a = 0; a < b; a++, pair++) {
+          if (range.firstLength[pair] < 0) {
+            continue;
+          }
+          costs[pair] += DiffRange.cost(numbers[a] < numbers[b], range.firstA[pair] - lastA[pair],
+                  range.firstB[pair] - lastB[pair], range.firstLength[pair], lastLength[pair]);
+          costs[pair] += range.costs[pair];
+          lastA[pair] = range.lastA[pair];
+          lastB[pair] = range.lastB[pair];
+          lastLength[pair] = range.lastLength[pair];
         }
-        lengths[j] += p.length();
       }
     }
+
     double[][] diffs = new double[s][s];
     for (int i = 0; i < s; i++) {
       for (int j = 0; j < s; j++) {
         // normalise by the longer of the two lengths -1
         double denominator = Math.max(lengths[i], lengths[j]) - 1;
-        diffs[i][j] = ((double) costs[i][j]) / denominator;
+        final long cost = (i == j ? 0 : costs[DiffRange.pair(Math.min(i, j), Math.max(i, j))]);
+        diffs[i][j] = ((double) cost) / denominator;
       }
     }
     return diffs;
   }
+
+  /**
+   * Compute a stemma of the versions of this MVD from their
+   * difference matrix, using the balanced minimum evolution method
+   *
+   * @return the stemma as a tree in Newick format
+   * @see #computeDiffMatrix(List)
+   */
+  public String computeStemma() throws Exception {
+    final List<Witness> ordered = Lists.newArrayList(witnesses);
+    final String[] taxa = new String[ordered.size()];
+    for (int i = 0; i < taxa.length; i++) {
+      taxa[i] = ordered.get(i).siglum;
+    }
+    final FastME fastME = new FastME(executor);
+    fastME.buildTree(computeDiffMatrix(ordered), taxa);
+    fastME.refineTree();
+    final ByteArrayOutputStream newick = new ByteArrayOutputStream();
+    fastME.T.NewickPrintTree(new PrintStream(newick, true, "UTF-8"));
+    return newick.toString("UTF-8").trim();
+  }
+
+  /**
+   * Run range computations of the difference matrix
+   *
+   * @param ranges the ranges
+   * @param costs  whether to compute costs or lengths
+   */
+  private void invokeAll(List<DiffRange> ranges, final boolean costs) throws Exception {
+    final List<Future<?>> results = Lists.newArrayListWithExpectedSize(ranges.size());
+    for (final DiffRange range : ranges) {
+      results.add(executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          if (costs) {
+            range.computeCosts();
+          } else {
+            range.computeLengths();
+          }
+          return null;
+        }
+      }));
+    }
+    try {
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<?> result : results) {
+        result.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * The part of the difference matrix contributed by a range of pairs.
+   *
+   * <p>Two versions are joined by a pair they share. For versions a and
+   * b, with a being visited before b, a join costs the maximum of the
+   * lengths both have grown by since their last join plus the maximum of
+   * b's growth and a's growth adjusted by the difference in length of
+   * the two joining pairs. As a range does not know the last join before
+   * it, its first join per pair of versions is kept for the caller to
+   * cost, together with its last join for the range after it.</p>
+   */
+  private static class DiffRange {
+    private final List<Match<Integer>> pairs;
+    private final WitnessNumbering numbering;
+    private final int[] rows;
+    private final int versions;
+
+    /**
+     * lengths of the versions within the range
+     */
+    int[] lengths;
+    /**
+     * lengths of the versions before the range
+     */
+    int[] offsets;
+
+    /**
+     * per pair of versions a &lt; b: the costs of all joins but the
+     * first, the lengths of a and b before the first join and the length
+     * of the joining pair, the lengths of a and b after the last join
+     * and the length of the joining pair; -1 if never joined
+     */
+    long[] costs;
+    int[] firstA;
+    int[] firstB;
+    int[] firstLength;
+    int[] lastA;
+    int[] lastB;
+    int[] lastLength;
+
+    /**
+     * @param pairs     the range of pairs
+     * @param numbering the numbering of the versions
+     * @param rows      the matrix row of each version by its number
+     * @param versions  the number of rows
+     */
+    private DiffRange(List<Match<Integer>> pairs, WitnessNumbering numbering, int[] rows, int versions) {
+      this.pairs = pairs;
+      this.numbering = numbering;
+      this.rows = rows;
+      this.versions = versions;
+    }
+
+    /**
+     * @return the index of versions a &lt; b in a triangular matrix
+     */
+    static int pair(int a, int b) {
+      return b * (b - 1) / 2 + a;
+    }
+
+    /**
+     * @param aFirst     whether version a is visited before b
+     * @param growthA    the length a has grown by since the last join
+     * @param growthB    the length b has grown by since the last join
+     * @param length     the length of the joining pair
+     * @param lastLength the length of the pair of the last join
+     * @return the cost of a join of versions a and b
+     */
+    static long cost(boolean aFirst, int growthA, int growthB, int length, int lastLength) {
+      final int first = (aFirst ? growthA : growthB);
+      final int second = (aFirst ? growthB : growthA);
+      return Math.max(first, second) + Math.max(second, first + length - lastLength);
+    }
+
+    void computeLengths() {
+      lengths = new int[versions];
+      for (Match<Integer> p : pairs) {
+        final int length = p.length();
+        for (Witness w : p.witnesses) {
+          lengths[rows[numbering.numberOf(w)]] += length;
+        }
+      }
+    }
+
+    void computeCosts() {
+      final int size = versions * (versions - 1) / 2;
+      costs = new long[size];
+      firstA = new int[size];
+      firstB = new int[size];
+      firstLength = new int[size];
+      lastA = new int[size];
+      lastB = new int[size];
+      lastLength = new int[size];
+      Arrays.fill(firstLength, -1);
+
+      final int[] current = offsets.clone();
+      final int[] members = new int[versions];
+      for (Match<Integer> p : pairs) {
+        final int length = p.length();
+        // members are visited in the order of their numbers
+        int count = 0;
+        for (Witness w : p.witnesses) {
+          members[count++] = rows[numbering.numberOf(w)];
+        }
+        for (int i = 0; i < count; i++) {
+          for (int j = i + 1; j < count; j++) {
+            final boolean aFirst = members[i] < members[j];
+            final int a = (aFirst ? members[i] : members[j]);
+            final int b = (aFirst ? members[j] : members[i]);
+            final int pair = pair(a, b);
+            if (firstLength[pair] < 0) {
+              firstA[pair] = current[a];
+              firstB[pair] = current[b];
+              firstLength[pair] = length;
+            } else {
+              costs[pair] += cost(aFirst, current[a] - lastA[pair], current[b] - lastB[pair], length, lastLength[pair]);
+            }
+            lastA[pair] = current[a] + length;
+            lastB[pair] = current[b] + length;
+            lastLength[pair] = length;
+          }
+        }
+        for (int i = 0; i < count; i++) {
+          current[members[i]] += length;
+        }
+      }
+    }
+  }
 }
@@ -22,7 +22,6 @@
 package au.edu.uq.nmerge.mvd;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.Sets;
 
 import java.util.Set;
 
@@ -37,8 +36,8 @@ public class CompactNode {
   int index;
 
   CompactNode(int index) {
-    this.incoming = Sets.newHashSet();
-    this.outgoing = Sets.newHashSet();
+    this.incoming = new WitnessSet();
+    this.outgoing = new WitnessSet();
     this.index = index;
   }
 
@@ -66,7 +65,7 @@ public class CompactNode {
    * @return the difference outgoing - incoming
    */
   Set<Witness> getWantsIncoming() {
-    return Sets.newHashSet(Sets.difference(outgoing, incoming));
+    return WitnessSet.difference(outgoing, incoming);
   }
 
   /**
@@ -75,7 +74,7 @@ public class CompactNode {
    * @return the difference
    */
   Set<Witness> getWantsOutgoing() {
-    return Sets.newHashSet(Sets.difference(incoming, outgoing));
+    return WitnessSet.difference(incoming, outgoing);
   }
 
   /**
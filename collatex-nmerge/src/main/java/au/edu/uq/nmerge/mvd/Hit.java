@@ -25,7 +25,6 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * Store and create matches for an MVD. Matches are runs within
@@ -101,45 +100,6 @@ public class Hit<T> {
     this.state = ChunkState.NONE;
   }
 
-  /**
-   * Generate a match or a list of Match objects. This is called
-   * by search when a match is found that terminates in some pair.
-   *
-   * @param len      the length of the match
-   * @param versions the versions in which to build the match
-   * @param endPair  the last Pair in which the match occurs
-   * @param endIndex the offset within the endPair in which
-   *                 the match occurs.
-   * @param multiple true if multiple matches are desired
-   * @return a list of Match objects
-   */
-  static <T> List<Hit<T>> createHits(int len, Set<Witness> versions,
-                                     Collation<T> collation, int endPair, int endIndex,
-                                     boolean multiple, ChunkState state) throws Exception {
-    List<Hit<T>> hits = Lists.newArrayList();
-    for (Witness i : versions) {
-      // start from one byte after the match
-      int offset = endIndex + 1;
-      // and add on the length of all relevant
-      // pairs up to the first one
-      for (int j = endPair - 1; j >= 0; j--) {
-        Match<T> p = collation.getMatches().get(j);
-        if (p.contains(i)) {
-          offset += p.length();
-        }
-      }
-      // now offset is len plus the real offset
-      offset -= len;
-      String shortName = i.siglum;
-      Hit<T> m = new Hit<T>(i, offset, len, shortName, state);
-      hits.add(m);
-      if (!multiple) {
-        break;
-      }
-    }
-    return hits;
-  }
-
   /**
    * Get the start offset of the match in its version
    *
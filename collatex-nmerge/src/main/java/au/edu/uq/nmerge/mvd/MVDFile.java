@@ -0,0 +1,457 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.mvd;
+
+import au.edu.uq.nmerge.exception.MVDException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.io.Closeables;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A multi-version document stored in a compact binary file, which is
+ * memory-mapped when read.
+ *
+ * <p>The file holds, in this order and with all numbers big-endian:</p>
+ * <ol>
+ * <li>the magic number and the description,</li>
+ * <li>the token dictionary: the number of tokens, the offsets of their
+ * UTF-8 encodings and the encodings themselves; a token's index is its
+ * id,</li>
+ * <li>the witness table: the number of witnesses and their sigla,</li>
+ * <li>the match table: one fixed-size record per pair holding the bitset
+ * of its witnesses, its id, the index of its parent and the ranges of
+ * its token ids and of its children's indices,</li>
+ * <li>the pool of children's indices and the pool of token ids.</li>
+ * </ol>
+ *
+ * <p>Opening a file only reads its header and witness table. Pairs and
+ * tokens are decoded when accessed, so that many documents can be kept
+ * open with little heap; the mapping is limited to files of up to 2GB.
+ * Documents to be updated are loaded into a {@link Collation} via
+ * {@link #toCollation(Ordering, Object)}.</p>
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class MVDFile<T> {
+  private static final int MAGIC = 0x4d564431;
+  /**
+   * size of a match record without its witness bitset: id, parent,
+   * token start, token count, children start, children count
+   */
+  private static final int RECORD_INTS = 6;
+
+  private final ByteBuffer buffer;
+  private final Function<String, ? extends T> tokenReader;
+  private final String description;
+  private final int tokenCount;
+  private final int tokenOffsets;
+  private final int tokenData;
+  private final List<Witness> witnesses;
+  private final WitnessNumbering numbering = new WitnessNumbering();
+  private final int words;
+  private final int matchCount;
+  private final int records;
+  private final int children;
+  private final int ids;
+
+  private final Object[] tokenCache;
+  private final Match<?>[] matchCache;
+  private final List<Match<T>> matches = new Matches();
+
+  private MVDFile(ByteBuffer buffer, Function<String, ? extends T> tokenReader) throws MVDException {
+    this.buffer = buffer;
+    this.tokenReader = tokenReader;
+
+    int position = 0;
+    if (buffer.limit() < 4 || buffer.getInt(position) != MAGIC) {
+      throw new MVDException("Not an MVD file");
+    }
+    position += 4;
+    this.description = readString(position);
+    position += 4 + buffer.getInt(position);
+
+    this.tokenCount = buffer.getInt(position);
+    this.tokenOffsets = position + 4;
+    this.tokenData = tokenOffsets + 4 * (tokenCount + 1);
+    position = tokenData + buffer.getInt(tokenOffsets + 4 * tokenCount);
+
+    final int witnessCount = buffer.getInt(position);
+    position += 4;
+    final List<Witness> witnessTable = Lists.newArrayListWithExpectedSize(witnessCount);
+    for (int w = 0; w < witnessCount; w++) {
+      final Witness witness = new Witness(readString(position));
+      position += 4 + buffer.getInt(position);
+      numbering.register(witness);
+      witnessTable.add(witness);
+    }
+    this.witnesses = Collections.unmodifiableList(witnessTable);
+
+    this.words = buffer.getInt(position);
+    this.matchCount = buffer.getInt(position + 4);
+    this.records = position + 8;
+    position = records + matchCount * recordSize();
+    this.children = position + 4;
+    position = children + 4 * buffer.getInt(position);
+    this.ids = position + 4;
+
+    this.tokenCache = new Object[tokenCount];
+    this.matchCache = new Match<?>[matchCount];
+  }
+
+  /**
+   * Open an MVD file
+   *
+   * @param file        the file to open
+   * @param tokenReader converts stored tokens back
+   * @return the document, reading from a read-only mapping of the file
+   */
+  public static <T> MVDFile<T> open(File file, Function<String, ? extends T> tokenReader)
+          throws IOException, MVDException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      return new MVDFile<T>(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), tokenReader);
+    } finally {
+      Closeables.closeQuietly(raf);
+    }
+  }
+
+  /**
+   * Write a collation to an MVD file
+   *
+   * @param collation   the collation to write
+   * @param tokenWriter converts tokens to the strings stored
+   * @param file        the file to write to
+   */
+  public static <T> void write(Collation<T> collation, Function<? super T, String> tokenWriter, File file)
+          throws IOException {
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      writeString(out, collation.getDescription());
+
+      final TokenDictionary<T> dictionary = collation.getDictionary();
+      final byte[][] tokens = new byte[dictionary.size()][];
+      out.writeInt(tokens.length);
+      int offset = 0;
+      for (int id = 0; id < tokens.length; id++) {
+        tokens[id] = tokenWriter.apply(dictionary.decode(id)).getBytes(Charsets.UTF_8);
+        out.writeInt(offset);
+        offset += tokens[id].length;
+      }
+      out.writeInt(offset);
+      for (byte[] token : tokens) {
+        out.write(token);
+      }
+
+      final Map<Witness, Integer> witnessIndex = Maps.newHashMap();
+      out.writeInt(collation.getWitnesses().size());
+      for (Witness witness : collation.getWitnesses()) {
+        witnessIndex.put(witness, witnessIndex.size());
+        writeString(out, witness.siglum);
+      }
+
+      final List<Match<Integer>> matches = collation.getEncodedMatches();
+      final Map<Match<Integer>, Integer> matchIndex = Maps.newIdentityHashMap();
+      for (Match<Integer> match : matches) {
+        matchIndex.put(match, matchIndex.size());
+      }
+      final int words = (witnessIndex.size() + 63) >>> 6;
+      out.writeInt(words);
+      out.writeInt(matches.size());
+      int tokenStart = 0;
+      int childStart = 0;
+      for (Match<Integer> match : matches) {
+        final long[] bits = new long[words];
+        for (Witness witness : match.witnesses) {
+          final int w = witnessIndex.get(witness);
+          bits[w >>> 6] |= (1L << w);
+        }
+        for (long word : bits) {
+          out.writeLong(word);
+        }
+        final List<Integer> data = match.getOwnTokens();
+        final int tokenLength = (data == null ? -1 : data.size());
+        out.writeInt(match.getId());
+        out.writeInt(match.isChild() ? matchIndex.get(match.getParent()) : -1);
+        out.writeInt(tokenStart);
+        out.writeInt(tokenLength);
+        out.writeInt(childStart);
+        out.writeInt(match.numChildren());
+        tokenStart += Math.max(0, tokenLength);
+        childStart += match.numChildren();
+      }
+
+      out.writeInt(childStart);
+      for (Match<Integer> match : matches) {
+        for (Match<Integer> child : match.getChildren()) {
+          out.writeInt(matchIndex.get(child));
+        }
+      }
+      out.writeInt(tokenStart);
+      for (Match<Integer> match : matches) {
+        if (match.getOwnTokens() != null) {
+          for (Integer id : match.getOwnTokens()) {
+            out.writeInt(id);
+          }
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Get the description defined for this MVD
+   *
+   * @return the description as a String
+   */
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * Get the witnesses of this MVD
+   *
+   * @return the witnesses in the order they were stored
+   */
+  public List<Witness> getWitnesses() {
+    return witnesses;
+  }
+
+  /**
+   * Get the pairs of this MVD. Pairs are decoded on first access
+   * together with the other pairs of their transposition, if any.
+   *
+   * @return the pairs - read only!
+   */
+  public List<Match<T>> getMatches() {
+    return matches;
+  }
+
+  /**
+   * Retrieve a witness without decoding any pairs
+   *
+   * @param witness the witness to retrieve
+   * @return the data of that witness
+   */
+  public List<T> getVersion(Witness witness) {
+    final int w = numbering.numberOf(witness);
+    Preconditions.checkArgument(w >= 0, "%s not part of %s", witness, this);
+    final List<T> version = Lists.newArrayList();
+    for (int m = 0; m < matchCount; m++) {
+      final int record = records + m * recordSize();
+      if ((buffer.getLong(record + 8 * (w >>> 6)) & (1L << w)) != 0) {
+        final int parent = recordInt(m, 1);
+        final int source = (parent < 0 ? m : parent);
+        final int start = recordInt(source, 2);
+        final int length = recordInt(source, 3);
+        for (int t = 0; t < length; t++) {
+          version.add(token(buffer.getInt(ids + 4 * (start + t))));
+        }
+      }
+    }
+    return version;
+  }
+
+  /**
+   * Load this MVD into a collation, so that it can be updated
+   *
+   * @param tokenOrdering the ordering of tokens; tokens equal under
+   *                      the ordering the MVD was written with must be
+   *                      equal under this one and vice versa
+   * @param nullToken     the token used to mask out data
+   * @return a new collation of this MVD
+   */
+  public Collation<T> toCollation(Ordering<T> tokenOrdering, T nullToken) throws Exception {
+    final Collation<T> collation = new Collation<T>(description, tokenOrdering, nullToken);
+    final Witness[] registered = new Witness[witnesses.size()];
+    for (int w = 0; w < registered.length; w++) {
+      registered[w] = collation.register(new Witness(witnesses.get(w).siglum));
+    }
+    final List<T> allTokens = Lists.newArrayListWithExpectedSize(tokenCount);
+    for (int id = 0; id < tokenCount; id++) {
+      allTokens.add(token(id));
+    }
+    final List<Integer> encoded = collation.getDictionary().encode(allTokens);
+
+    final List<Match<Integer>> pairs = Lists.newArrayListWithExpectedSize(matchCount);
+    for (int m = 0; m < matchCount; m++) {
+      final WitnessSet versions = collation.newWitnessSet();
+      for (Witness witness : witnessSet(m)) {
+        versions.add(registered[numbering.numberOf(witness)]);
+      }
+      List<Integer> data = null;
+      final int length = recordInt(m, 3);
+      if (length >= 0) {
+        final int start = recordInt(m, 2);
+        data = Lists.newArrayListWithExpectedSize(length);
+        for (int t = 0; t < length; t++) {
+          data.add(encoded.get(buffer.getInt(ids + 4 * (start + t))));
+        }
+      }
+      final Match<Integer> pair = new Match<Integer>(versions, data);
+      pair.setId(recordInt(m, 0));
+      pairs.add(pair);
+    }
+    for (int m = 0; m < matchCount; m++) {
+      for (int c = 0, start = recordInt(m, 4), count = recordInt(m, 5); c < count; c++) {
+        pairs.get(m).addChild(pairs.get(buffer.getInt(children + 4 * (start + c))));
+      }
+    }
+    collation.restore(pairs);
+    return collation;
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized Match<T> match(int m) {
+    if (matchCache[m] == null) {
+      final int parent = recordInt(m, 1);
+      final int root = (parent < 0 ? m : parent);
+      final Match<T> rootMatch = decode(root);
+      for (int c = 0, start = recordInt(root, 4), count = recordInt(root, 5); c < count; c++) {
+        rootMatch.addChild(decode(buffer.getInt(children + 4 * (start + c))));
+      }
+    }
+    return (Match<T>) matchCache[m];
+  }
+
+  private Match<T> decode(int m) {
+    final int length = recordInt(m, 3);
+    final Match<T> match = new Match<T>(witnessSet(m), length < 0 ? null : new Tokens(recordInt(m, 2), length));
+    match.setId(recordInt(m, 0));
+    matchCache[m] = match;
+    return match;
+  }
+
+  private WitnessSet witnessSet(int m) {
+    final long[] bits = new long[words];
+    final int record = records + m * recordSize();
+    for (int i = 0; i < words; i++) {
+      bits[i] = buffer.getLong(record + 8 * i);
+    }
+    return new WitnessSet(numbering, bits);
+  }
+
+  @SuppressWarnings("unchecked")
+  private T token(int id) {
+    synchronized (tokenCache) {
+      if (tokenCache[id] == null) {
+        tokenCache[id] = tokenReader.apply(readString(tokenData + buffer.getInt(tokenOffsets + 4 * id),
+                tokenData + buffer.getInt(tokenOffsets + 4 * (id + 1))));
+      }
+      return (T) tokenCache[id];
+    }
+  }
+
+  private int recordSize() {
+    return 8 * words + 4 * RECORD_INTS;
+  }
+
+  private int recordInt(int m, int field) {
+    return buffer.getInt(records + m * recordSize() + 8 * words + 4 * field);
+  }
+
+  private String readString(int position) {
+    return readString(position + 4, position + 4 + buffer.getInt(position));
+  }
+
+  private String readString(int from, int to) {
+    final byte[] bytes = new byte[to - from];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(from + i);
+    }
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    final byte[] bytes = (str == null ? "" : str).getBytes(Charsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * The pairs of the file, decoded on demand
+   */
+  private class Matches extends AbstractList<Match<T>> implements RandomAccess {
+    @Override
+    public Match<T> get(int index) {
+      if (index < 0 || index >= matchCount) {
+        throw new IndexOutOfBoundsException(Integer.toString(index));
+      }
+      return match(index);
+    }
+
+    @Override
+    public int size() {
+      return matchCount;
+    }
+  }
+
+  /**
+   * The tokens of a pair, decoded on demand
+   */
+  private class Tokens extends AbstractList<T> implements RandomAccess {
+    private final int start;
+    private final int length;
+
+    private Tokens(int start, int length) {
+      this.start = start;
+      this.length = length;
+    }
+
+    @Override
+    public T get(int index) {
+      if (index < 0 || index >= length) {
+        throw new IndexOutOfBoundsException(Integer.toString(index));
+      }
+      return token(buffer.getInt(ids + 4 * (start + index)));
+    }
+
+    @Override
+    public int size() {
+      return length;
+    }
+  }
+}
@@ -34,8 +34,6 @@ import java.util.Set;
  * @author Desmond Schmidt 18/8/07
  */
 public class Match<T> {
-  public static int pairId = 1;
-
   /**
    * parent id if subject of a transposition
    */
@@ -188,6 +186,15 @@ public class Match<T> {
     }
   }
 
+  /**
+   * Get the data of this pair, regardless of its parent
+   *
+   * @return this pair's own data
+   */
+  List<T> getOwnTokens() {
+    return tokens;
+  }
+
   /**
    * Set the data of this pair. Not to be used publicly!
    *
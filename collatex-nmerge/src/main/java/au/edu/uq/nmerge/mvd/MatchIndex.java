@@ -0,0 +1,322 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.mvd;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * An index over the pairs of an MVD, built once and then used to find
+ * token sequences and version offsets without scanning all pairs.
+ *
+ * <p>Every token position of the pair list is recorded under its token
+ * id. Every version is recorded as its path through the pair list, i.e.
+ * the indices of the pairs it contains together with the offset in the
+ * version at which each of them starts. A pattern is looked up via the
+ * positions of its rarest token; each of them is then verified by
+ * walking the paths of the versions passing through it. Offsets in a
+ * version are mapped to pairs by binary search over its path.</p>
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+class MatchIndex {
+  /**
+   * the pairs indexed
+   */
+  private final List<Match<Integer>> matches;
+  private final WitnessNumbering numbering;
+  /**
+   * offset of each pair's first token in the concatenated pair list;
+   * one more entry than there are pairs
+   */
+  private final int[] pairStarts;
+  /**
+   * for each token id, the positions in the concatenated pair list
+   */
+  private final int[][] positions;
+  /**
+   * for each witness number, the indices of the pairs of its version
+   */
+  private final int[][] paths;
+  /**
+   * for each witness number, the version offsets of the pairs in its path
+   */
+  private final int[][] offsets;
+
+  /**
+   * Index pairs
+   *
+   * @param matches   the pairs holding token ids
+   * @param tokens    the number of token ids in use
+   * @param numbering the numbering of the witnesses in the pairs
+   */
+  MatchIndex(List<Match<Integer>> matches, int tokens, WitnessNumbering numbering) {
+    this.matches = matches;
+    this.numbering = numbering;
+    final int pairs = matches.size();
+    this.pairStarts = new int[pairs + 1];
+    final int[] tokenCounts = new int[tokens];
+    final int[] pathLengths = new int[numbering.size()];
+    for (int i = 0; i < pairs; i++) {
+      final Match<Integer> match = matches.get(i);
+      final List<Integer> data = match.getTokens();
+      pairStarts[i + 1] = pairStarts[i] + data.size();
+      if (!match.isHint()) {
+        for (Integer id : data) {
+          tokenCounts[id]++;
+        }
+      }
+      for (Witness witness : match.witnesses) {
+        pathLengths[numbering.numberOf(witness)]++;
+      }
+    }
+
+    this.positions = new int[tokens][];
+    for (int id = 0; id < tokens; id++) {
+      positions[id] = new int[tokenCounts[id]];
+    }
+    this.paths = new int[pathLengths.length][];
+    this.offsets = new int[pathLengths.length][];
+    for (int w = 0; w < pathLengths.length; w++) {
+      paths[w] = new int[pathLengths[w]];
+      offsets[w] = new int[pathLengths[w]];
+    }
+
+    Arrays.fill(tokenCounts, 0);
+    Arrays.fill(pathLengths, 0);
+    final int[] versionLengths = new int[pathLengths.length];
+    for (int i = 0; i < pairs; i++) {
+      final Match<Integer> match = matches.get(i);
+      final List<Integer> data = match.getTokens();
+      if (!match.isHint()) {
+        for (int j = 0; j < data.size(); j++) {
+          final int id = data.get(j);
+          positions[id][tokenCounts[id]++] = pairStarts[i] + j;
+        }
+      }
+      for (Witness witness : match.witnesses) {
+        final int w = numbering.numberOf(witness);
+        paths[w][pathLengths[w]] = i;
+        offsets[w][pathLengths[w]++] = versionLengths[w];
+        versionLengths[w] += data.size();
+      }
+    }
+  }
+
+  /**
+   * Find all occurrences of a pattern in some versions
+   *
+   * @param pattern  the token ids to find
+   * @param searched the versions to search through
+   * @return the hits ordered by the position of their last token in
+   *         the pair list, then by version
+   */
+  <T> List<Hit<T>> find(List<Integer> pattern, WitnessSet searched) {
+    final SortedMap<Long, Hit<T>> hits = Maps.newTreeMap();
+    if (pattern.isEmpty()) {
+      return Lists.newArrayList(hits.values());
+    }
+    // anchor the search on the least frequent token of the pattern
+    int anchor = 0;
+    for (int p = 1; p < pattern.size(); p++) {
+      if (positions[pattern.get(p)].length < positions[pattern.get(anchor)].length) {
+        anchor = p;
+      }
+    }
+    for (int position : positions[pattern.get(anchor)]) {
+      final int pair = pairAt(position);
+      final int offset = position - pairStarts[pair];
+      for (Witness witness : WitnessSet.intersection(matches.get(pair).witnesses, searched)) {
+        final int w = numbering.numberOf(witness);
+        final int step = Arrays.binarySearch(paths[w], pair);
+        final int start = offsets[w][step] + offset - anchor;
+        if (start >= 0 && matchesAt(pattern, w, start)) {
+          final int end = start + pattern.size() - 1;
+          final int endStep = stepAt(w, end);
+          final long endPosition = pairStarts[paths[w][endStep]] + end - offsets[w][endStep];
+          hits.put((endPosition << 32) | w, new Hit<T>(witness, start, pattern.size(), witness.siglum, ChunkState.FOUND));
+        }
+      }
+    }
+    return Lists.newArrayList(hits.values());
+  }
+
+  /**
+   * Get the index of the pair containing the given offset in the
+   * given version
+   *
+   * @param version the version to get the pair index for
+   * @param offset  the offset within the version
+   * @return the relevant pair index or -1 if not found
+   */
+  int getPairIndex(Witness version, int offset) {
+    final int w = number(version);
+    final int step = (w < 0 ? -1 : stepAt(w, Math.max(0, offset)));
+    return (step < 0 ? -1 : paths[w][step]);
+  }
+
+  /**
+   * Get the index of the next pair intersecting with a version
+   *
+   * @param pairIndex the index to start looking from
+   * @param version   the version to look for
+   * @return the index of the next pair or Integer.MAX_VALUE if not found
+   */
+  int next(int pairIndex, Witness version) {
+    final int w = number(version);
+    if (w < 0) {
+      return Integer.MAX_VALUE;
+    }
+    final int step = insertionPoint(paths[w], pairIndex);
+    return (step < paths[w].length ? paths[w][step] : Integer.MAX_VALUE);
+  }
+
+  /**
+   * Get the index of the previous pair intersecting with a version,
+   * not considering the first pair
+   *
+   * @param pairIndex the index to start looking from
+   * @param version   the version to look for
+   * @return the index of the previous pair or -1 if not found
+   */
+  int previous(int pairIndex, Witness version) {
+    final int w = number(version);
+    if (w < 0) {
+      return -1;
+    }
+    final int step = insertionPoint(paths[w], pairIndex) - 1;
+    return (step >= 0 && paths[w][step] > 0 ? paths[w][step] : -1);
+  }
+
+  /**
+   * Get a range of a version
+   *
+   * @param version the version
+   * @param offset  the offset of the first token
+   * @param len     the maximum number of tokens
+   * @return the token ids of the range; shorter than requested
+   *         if the version ends before
+   */
+  List<Integer> getVersion(Witness version, int offset, int len) {
+    final List<Integer> result = Lists.newArrayList();
+    final int w = number(version);
+    int step = (w < 0 ? -1 : stepAt(w, Math.max(0, offset)));
+    if (step < 0) {
+      return result;
+    }
+    int from = Math.max(0, offset) - offsets[w][step];
+    for (; step < paths[w].length && result.size() < len; step++, from = 0) {
+      final List<Integer> data = matches.get(paths[w][step]).getTokens();
+      result.addAll(data.subList(from, from + Math.min(data.size() - from, len - result.size())));
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of a version in this index or -1 if it
+   *         has not been indexed
+   */
+  private int number(Witness version) {
+    final int w = numbering.numberOf(version);
+    return (w < paths.length ? w : -1);
+  }
+
+  /**
+   * @return the first index in a sorted array whose value is not
+   *         less than the given one
+   */
+  private static int insertionPoint(int[] sorted, int value) {
+    final int found = Arrays.binarySearch(sorted, value);
+    return (found < 0 ? -(found + 1) : found);
+  }
+
+  /**
+   * Does a version contain a pattern at a given offset?
+   */
+  private boolean matchesAt(List<Integer> pattern, int w, int start) {
+    int step = stepAt(w, start);
+    if (step < 0) {
+      return false;
+    }
+    int pos = pairStarts[paths[w][step]] + start - offsets[w][step];
+    for (Integer id : pattern) {
+      while (pos == pairStarts[paths[w][step] + 1]) {
+        if (++step == paths[w].length) {
+          return false;
+        }
+        pos = pairStarts[paths[w][step]];
+      }
+      if (matches.get(paths[w][step]).getTokens().get(pos - pairStarts[paths[w][step]]).intValue() != id) {
+        return false;
+      }
+      pos++;
+    }
+    return true;
+  }
+
+  /**
+   * @return the index in the path of version w of the non-empty pair
+   *         holding the token at the given version offset, or -1 if
+   *         the version is shorter
+   */
+  private int stepAt(int w, int offset) {
+    final int[] pathOffsets = offsets[w];
+    int lo = 0;
+    int hi = pathOffsets.length - 1;
+    int found = -1;
+    while (lo <= hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (pathOffsets[mid] <= offset) {
+        found = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    if (found < 0) {
+      return -1;
+    }
+    final int pair = paths[w][found];
+    return (offset - pathOffsets[found] < pairStarts[pair + 1] - pairStarts[pair] ? found : -1);
+  }
+
+  /**
+   * @return the index of the pair holding a position of the
+   *         concatenated pair list
+   */
+  private int pairAt(int position) {
+    int lo = 0;
+    int hi = pairStarts.length - 2;
+    while (lo < hi) {
+      final int mid = (lo + hi + 1) >>> 1;
+      if (pairStarts[mid] <= position) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.mvd;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Maps each distinct token of a collation to an int id, so that
+ * merging, searching and matching compare ids instead of calling
+ * the token ordering. Tokens equal according to the ordering share
+ * an id; ids are handed out densely in order of first occurrence.
+ *
+ * <p>Each id is represented by a single canonical Integer instance,
+ * so that encoded data can be compared by identity as well as by
+ * value, like the token objects it replaces.</p>
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class TokenDictionary<T> {
+  /**
+   * the id of each known token
+   */
+  private final Map<T, Integer> ids;
+  /**
+   * the first token seen for each id
+   */
+  private final List<T> tokens = Lists.newArrayList();
+  /**
+   * the canonical instance of each id
+   */
+  private final List<Integer> boxes = Lists.newArrayList();
+
+  /**
+   * Create an empty dictionary
+   *
+   * @param ordering the ordering deciding which tokens are equal
+   */
+  public TokenDictionary(Ordering<T> ordering) {
+    this.ids = Maps.newTreeMap(ordering);
+  }
+
+  /**
+   * Get the number of distinct tokens
+   *
+   * @return the number of ids handed out
+   */
+  public int size() {
+    return tokens.size();
+  }
+
+  /**
+   * Encode a token sequence, assigning ids to new tokens
+   *
+   * @param data the tokens to encode
+   * @return the ids of the tokens, backed by an int array
+   */
+  public List<Integer> encode(List<T> data) {
+    final int[] encoded = new int[data.size()];
+    for (int i = 0; i < encoded.length; i++) {
+      final T token = data.get(i);
+      Integer id = ids.get(token);
+      if (id == null) {
+        id = tokens.size();
+        ids.put(token, id);
+        tokens.add(token);
+        boxes.add(id);
+      }
+      encoded[i] = id;
+    }
+    return new EncodedTokens(encoded, 0, encoded.length);
+  }
+
+  /**
+   * Encode a token sequence without assigning new ids
+   *
+   * @param data the tokens to encode
+   * @return the ids of the tokens or <code>null</code> if
+   *         one of them is unknown and cannot occur in the collation
+   */
+  public List<Integer> lookup(List<T> data) {
+    final int[] encoded = new int[data.size()];
+    for (int i = 0; i < encoded.length; i++) {
+      final Integer id = ids.get(data.get(i));
+      if (id == null) {
+        return null;
+      }
+      encoded[i] = id;
+    }
+    return new EncodedTokens(encoded, 0, encoded.length);
+  }
+
+  /**
+   * Decode a token
+   *
+   * @param id the id of the token
+   * @return the token
+   */
+  public T decode(int id) {
+    return tokens.get(id);
+  }
+
+  /**
+   * Decode a sequence of ids
+   *
+   * @param encoded the ids, may be <code>null</code>
+   * @return a new list of the corresponding tokens
+   */
+  public List<T> decode(List<Integer> encoded) {
+    if (encoded == null) {
+      return null;
+    }
+    final List<T> decoded = Lists.newArrayListWithExpectedSize(encoded.size());
+    for (Integer id : encoded) {
+      decoded.add(tokens.get(id));
+    }
+    return decoded;
+  }
+
+  @Override
+  public String toString() {
+    return Collections.unmodifiableList(tokens).toString();
+  }
+
+  /**
+   * A slice of an int array of ids, yielding canonical instances.
+   */
+  private class EncodedTokens extends AbstractList<Integer> implements RandomAccess {
+    private final int[] ids;
+    private final int from;
+    private final int to;
+
+    private EncodedTokens(int[] ids, int from, int to) {
+      this.ids = ids;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public Integer get(int index) {
+      if (index < 0 || index >= to - from) {
+        throw new IndexOutOfBoundsException(Integer.toString(index));
+      }
+      return boxes.get(ids[from + index]);
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+
+    @Override
+    public List<Integer> subList(int fromIndex, int toIndex) {
+      if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+        throw new IndexOutOfBoundsException(fromIndex + ", " + toIndex);
+      }
+      return new EncodedTokens(ids, from + fromIndex, from + toIndex);
+    }
+  }
+}
@@ -20,6 +20,7 @@
  */
 package au.edu.uq.nmerge.mvd;
 
+import au.edu.uq.nmerge.graph.IdGenerator;
 import com.google.common.base.Objects;
 
 /**
@@ -30,16 +31,16 @@ import com.google.common.base.Objects;
 public class TransposeState {
   int id;
   ChunkState state;
-  static int transposeId = Integer.MAX_VALUE;
 
   /**
    * Assign a fresh id to a parent and all its children. Pairs
    * don't intrinsically have ids after serialisation from arcs
    *
    * @param parent the parent pair
+   * @param ids    allocates the id
    */
-  private void assignId(Match<?> parent) {
-    this.id = TransposeState.transposeId--;
+  private void assignId(Match<?> parent, IdGenerator ids) {
+    this.id = ids.nextTransposeId();
     parent.setId(this.id);
     for (Match<?> child : parent.getChildren()) {
       child.setId(parent.getId());
@@ -88,20 +89,21 @@ public class TransposeState {
    * @param match the pair to shift states in version u
    * @param u     the first version, contained in match
    * @param v     the version we are comparing to
+   * @param ids   allocates ids of transpositions without one
    * @return a new TransposeState or ourselves
    */
-  TransposeState next(Match<?> match, Witness u, Witness v) {
+  TransposeState next(Match<?> match, Witness u, Witness v, IdGenerator ids) {
     TransposeState next = this;
 
     if (match.isChild() && !match.contains(v) && match.getParent().contains(v) && !match.getParent().contains(u)) {
       if (match.getId() == 0) {
-        assignId(match.getParent());
+        assignId(match.getParent(), ids);
       }
       next = new TransposeState(match.getId(), ChunkState.CHILD);
     } else if (match.isParent() && !match.contains(v) && match.getChildInVersion(v) != null) {
       // if it has a child in v, it might be a repetition
       if (match.getId() == 0) {
-        assignId(match);
+        assignId(match, ids);
       }
       next = new TransposeState(match.getId(), ChunkState.PARENT);
     } else if (state == ChunkState.PARENT || state == ChunkState.CHILD) {
@@ -0,0 +1,194 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.mvd;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what happens while a witness is merged into a collation: how
+ * many MUMs were tried, how many had been invalidated by earlier merges
+ * and had to be recomputed, how large the queue of special arcs grew,
+ * and how long suffix array builds, MUM searches and merges took.
+ * <p/>
+ * Pass an instance to {@link Collation#update(Witness, java.util.List, UpdateMetrics)}
+ * to collect metrics; passing the same instance to several updates
+ * accumulates them, also if they run in parallel. Without one, nothing
+ * is recorded and no clocks are read.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class UpdateMetrics {
+  /**
+   * records nothing; shared by updates without metrics
+   */
+  static final UpdateMetrics DISABLED = new UpdateMetrics(false);
+
+  private final boolean enabled;
+  private final AtomicInteger updates = new AtomicInteger();
+  private final AtomicInteger mumsTried = new AtomicInteger();
+  private final AtomicInteger mumsMerged = new AtomicInteger();
+  private final AtomicInteger mumsInvalid = new AtomicInteger();
+  private final AtomicInteger maxSpecials = new AtomicInteger();
+  private final AtomicInteger suffixArrays = new AtomicInteger();
+  private final AtomicLong suffixArrayNanos = new AtomicLong();
+  private final AtomicLong searchNanos = new AtomicLong();
+  private final AtomicLong mergeNanos = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+
+  public UpdateMetrics() {
+    this(true);
+  }
+
+  private UpdateMetrics(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return the number of updates recorded
+   */
+  public int getUpdates() {
+    return updates.get();
+  }
+
+  /**
+   * @return the number of MUMs taken from the queue of special arcs
+   */
+  public int getMumsTried() {
+    return mumsTried.get();
+  }
+
+  /**
+   * @return the number of MUMs merged into the graph
+   */
+  public int getMumsMerged() {
+    return mumsMerged.get();
+  }
+
+  /**
+   * @return the number of MUMs that failed verification and were recomputed
+   */
+  public int getMumsInvalid() {
+    return mumsInvalid.get();
+  }
+
+  /**
+   * @return the largest number of special arcs queued at once
+   */
+  public int getMaxSpecials() {
+    return maxSpecials.get();
+  }
+
+  /**
+   * @return the number of suffix arrays built
+   */
+  public int getSuffixArrays() {
+    return suffixArrays.get();
+  }
+
+  /**
+   * @return the time spent building suffix arrays, in nanoseconds
+   */
+  public long getSuffixArrayNanos() {
+    return suffixArrayNanos.get();
+  }
+
+  /**
+   * @return the time spent searching for MUMs, including the
+   *         suffix arrays built for the searches, in nanoseconds
+   */
+  public long getSearchNanos() {
+    return searchNanos.get();
+  }
+
+  /**
+   * @return the time spent merging MUMs into the graph, in nanoseconds
+   */
+  public long getMergeNanos() {
+    return mergeNanos.get();
+  }
+
+  /**
+   * @return the time spent in updates overall, in nanoseconds
+   */
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+
+  /**
+   * Start timing a phase
+   *
+   * @return the start time, or 0 if disabled
+   */
+  long start() {
+    return (enabled ? System.nanoTime() : 0);
+  }
+
+  void updated(long start) {
+    if (enabled) {
+      updates.incrementAndGet();
+      totalNanos.addAndGet(System.nanoTime() - start);
+    }
+  }
+
+  void suffixArrayBuilt(long start) {
+    if (enabled) {
+      suffixArrays.incrementAndGet();
+      suffixArrayNanos.addAndGet(System.nanoTime() - start);
+    }
+  }
+
+  void searched(long start) {
+    if (enabled) {
+      searchNanos.addAndGet(System.nanoTime() - start);
+    }
+  }
+
+  void tried(int specials) {
+    if (enabled) {
+      mumsTried.incrementAndGet();
+      int max;
+      while ((max = maxSpecials.get()) < specials && !maxSpecials.compareAndSet(max, specials)) {
+      }
+    }
+  }
+
+  void merged(long start) {
+    if (enabled) {
+      mumsMerged.incrementAndGet();
+      mergeNanos.addAndGet(System.nanoTime() - start);
+    }
+  }
+
+  void invalid() {
+    if (enabled) {
+      mumsInvalid.incrementAndGet();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d update(s): %d MUM(s) tried, %d merged, %d invalid; at most %d special arc(s); " +
+            "%d suffix array(s) in %d ms; search %d ms; merge %d ms; total %d ms",
+            getUpdates(), getMumsTried(), getMumsMerged(), getMumsInvalid(), getMaxSpecials(), getSuffixArrays(),
+            getSuffixArrayNanos() / 1000000, getSearchNanos() / 1000000, getMergeNanos() / 1000000, getTotalNanos() / 1000000);
+  }
+}
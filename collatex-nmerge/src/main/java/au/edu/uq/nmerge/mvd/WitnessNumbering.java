@@ -0,0 +1,91 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.mvd;
+
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Numbers the witnesses of a collation consecutively, so that sets of
+ * them can be represented as bitsets (see {@link WitnessSet}). Numbers
+ * are never reused, even if a witness is removed from the collation.
+ * A witness may be numbered by several collations at once, each keeping
+ * its own number for it.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class WitnessNumbering {
+  private final ConcurrentMap<Witness, Integer> numbers = Maps.newConcurrentMap();
+  private volatile Witness[] witnesses = new Witness[0];
+
+  /**
+   * Number a witness if it has not been numbered yet
+   *
+   * @param witness the witness to number
+   * @return its number
+   */
+  public synchronized int register(Witness witness) {
+    Integer number = numbers.get(witness);
+    if (number == null) {
+      number = witnesses.length;
+      final Witness[] extended = Arrays.copyOf(witnesses, number + 1);
+      extended[number] = witness;
+      witnesses = extended;
+      numbers.put(witness, number);
+    }
+    return number;
+  }
+
+  /**
+   * Get the number of a witness
+   *
+   * @param o the witness
+   * @return its number or -1 if it is not a numbered witness
+   */
+  public int numberOf(Object o) {
+    if (!(o instanceof Witness)) {
+      return -1;
+    }
+    final Integer number = numbers.get(o);
+    return (number == null ? -1 : number);
+  }
+
+  /**
+   * Get a witness by its number
+   *
+   * @param number the number
+   * @return the witness
+   */
+  public Witness get(int number) {
+    return witnesses[number];
+  }
+
+  /**
+   * Get the number of witnesses numbered so far
+   *
+   * @return the next number to be assigned
+   */
+  public int size() {
+    return witnesses.length;
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package au.edu.uq.nmerge.mvd;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A set of witnesses stored as a bitset over their numbers in a
+ * {@link WitnessNumbering}. Union, intersection, difference and
+ * disjointness of two sets sharing a numbering are computed word by
+ * word; other collections are handled element by element.
+ *
+ * <p>A set is created over the numbering of a collation, or adopts the
+ * numbering of the first set added to it. Witnesses can only be added to
+ * a set that has a numbering, and must have been added to its collation
+ * before.</p>
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class WitnessSet extends AbstractSet<Witness> {
+  private static final long[] EMPTY = new long[0];
+
+  private WitnessNumbering numbering;
+  private long[] words = EMPTY;
+
+  /**
+   * Create an empty set
+   */
+  public WitnessSet() {
+  }
+
+  /**
+   * Create an empty set over a numbering
+   *
+   * @param numbering the numbering of the members
+   */
+  public WitnessSet(WitnessNumbering numbering) {
+    this.numbering = numbering;
+  }
+
+  /**
+   * Create a set of the given witnesses
+   *
+   * @param witnesses the initial members
+   */
+  public WitnessSet(Collection<? extends Witness> witnesses) {
+    addAll(witnesses);
+  }
+
+  /**
+   * Create a set from a bitset over witness numbers
+   *
+   * @param numbering the numbering of the members
+   * @param words     the bitset, adopted by the set
+   */
+  WitnessSet(WitnessNumbering numbering, long[] words) {
+    this.numbering = numbering;
+    this.words = words;
+  }
+
+  /**
+   * Create a set of the given witnesses
+   *
+   * @param numbering the numbering of the members
+   * @param witnesses the initial members
+   * @return a new set
+   */
+  public static WitnessSet of(WitnessNumbering numbering, Witness... witnesses) {
+    final WitnessSet set = new WitnessSet(numbering);
+    set.addAll(Arrays.asList(witnesses));
+    return set;
+  }
+
+  /**
+   * Compute the intersection of two sets
+   *
+   * @return a new set holding the witnesses in both
+   */
+  public static WitnessSet intersection(Set<Witness> a, Set<Witness> b) {
+    final WitnessSet intersection = new WitnessSet(a);
+    intersection.retainAll(b);
+    return intersection;
+  }
+
+  /**
+   * Compute the difference of two sets
+   *
+   * @return a new set holding the witnesses in a but not in b
+   */
+  public static WitnessSet difference(Set<Witness> a, Set<Witness> b) {
+    final WitnessSet difference = new WitnessSet(a);
+    difference.removeAll(b);
+    return difference;
+  }
+
+  /**
+   * Do two collections have no witnesses in common? A drop-in
+   * for {@link Collections#disjoint(Collection, Collection)}.
+   *
+   * @return true if they are disjoint
+   */
+  public static boolean disjoint(Collection<?> a, Collection<?> b) {
+    if (a instanceof WitnessSet && b instanceof WitnessSet) {
+      final WitnessSet wa = (WitnessSet) a;
+      final WitnessSet wb = (WitnessSet) b;
+      if (wa.compatible(wb)) {
+        final int common = Math.min(wa.words.length, wb.words.length);
+        for (int i = 0; i < common; i++) {
+          if ((wa.words[i] & wb.words[i]) != 0) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+    return Collections.disjoint(a, b);
+  }
+
+  @Override
+  public boolean add(Witness witness) {
+    if (numbering == null) {
+      throw new IllegalStateException("Cannot add " + witness + " to a set without numbering");
+    }
+    final int number = numbering.numberOf(witness);
+    if (number < 0) {
+      throw new IllegalArgumentException(witness + " is not part of this collation");
+    }
+    final int word = number >>> 6;
+    if (word >= words.length) {
+      words = Arrays.copyOf(words, word + 1);
+    }
+    final long bit = 1L << number;
+    final boolean absent = (words[word] & bit) == 0;
+    words[word] |= bit;
+    return absent;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    final int number = (numbering == null ? -1 : numbering.numberOf(o));
+    return number >= 0 && (number >>> 6) < words.length && (words[number >>> 6] & (1L << number)) != 0;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (!contains(o)) {
+      return false;
+    }
+    final int number = numbering.numberOf(o);
+    words[number >>> 6] &= ~(1L << number);
+    return true;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends Witness> c) {
+    if (c instanceof WitnessSet) {
+      final WitnessSet other = (WitnessSet) c;
+      if (numbering == null) {
+        numbering = other.numbering;
+      }
+      if (compatible(other)) {
+        if (other.words.length > words.length) {
+          words = Arrays.copyOf(words, other.words.length);
+        }
+        boolean changed = false;
+        for (int i = 0; i < other.words.length; i++) {
+          final long union = words[i] | other.words[i];
+          changed |= (union != words[i]);
+          words[i] = union;
+        }
+        return changed;
+      }
+    }
+    return super.addAll(c);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    if (c instanceof WitnessSet && compatible((WitnessSet) c)) {
+      final WitnessSet other = (WitnessSet) c;
+      boolean changed = false;
+      for (int i = 0; i < words.length; i++) {
+        final long intersection = (i < other.words.length ? words[i] & other.words[i] : 0);
+        changed |= (intersection != words[i]);
+        words[i] = intersection;
+      }
+      return changed;
+    }
+    // AbstractCollection#retainAll iterates over this set
+    boolean changed = false;
+    for (Iterator<Witness> it = iterator(); it.hasNext(); ) {
+      if (!c.contains(it.next())) {
+        it.remove();
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    if (c instanceof WitnessSet && compatible((WitnessSet) c)) {
+      final WitnessSet other = (WitnessSet) c;
+      boolean changed = false;
+      final int common = Math.min(words.length, other.words.length);
+      for (int i = 0; i < common; i++) {
+        final long difference = words[i] & ~other.words[i];
+        changed |= (difference != words[i]);
+        words[i] = difference;
+      }
+      return changed;
+    }
+    boolean changed = false;
+    for (Object o : c) {
+      changed |= remove(o);
+    }
+    return changed;
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    if (c instanceof WitnessSet && compatible((WitnessSet) c)) {
+      final WitnessSet other = (WitnessSet) c;
+      for (int i = 0; i < other.words.length; i++) {
+        final long word = (i < words.length ? words[i] : 0);
+        if ((other.words[i] & ~word) != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return super.containsAll(c);
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (long word : words) {
+      size += Long.bitCount(word);
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(words, 0);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof WitnessSet && compatible((WitnessSet) o)) {
+      final WitnessSet other = (WitnessSet) o;
+      final int length = Math.max(words.length, other.words.length);
+      for (int i = 0; i < length; i++) {
+        final long a = (i < words.length ? words[i] : 0);
+        final long b = (i < other.words.length ? other.words[i] : 0);
+        if (a != b) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public Iterator<Witness> iterator() {
+    return new Iterator<Witness>() {
+      private int next = nextSetBit(0);
+      private int last = -1;
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      @Override
+      public Witness next() {
+        if (next < 0) {
+          throw new NoSuchElementException();
+        }
+        last = next;
+        next = nextSetBit(next + 1);
+        return numbering.get(last);
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0) {
+          throw new IllegalStateException();
+        }
+        words[last >>> 6] &= ~(1L << last);
+        last = -1;
+      }
+    };
+  }
+
+  private int nextSetBit(int from) {
+    int word = from >>> 6;
+    if (word >= words.length) {
+      return -1;
+    }
+    long bits = words[word] & (-1L << from);
+    while (true) {
+      if (bits != 0) {
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+      }
+      if (++word == words.length) {
+        return -1;
+      }
+      bits = words[word];
+    }
+  }
+
+  /**
+   * Can two sets be combined word by word? Empty sets without
+   * numbering can be combined with anything.
+   */
+  private boolean compatible(WitnessSet other) {
+    return numbering == other.numbering || numbering == null || other.numbering == null;
+  }
+}
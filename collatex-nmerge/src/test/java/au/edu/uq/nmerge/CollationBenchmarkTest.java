@@ -0,0 +1,181 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.edu.uq.nmerge;
+
+import au.edu.uq.nmerge.mvd.ChunkState;
+import au.edu.uq.nmerge.mvd.Collation;
+import au.edu.uq.nmerge.mvd.MVDFile;
+import au.edu.uq.nmerge.mvd.UpdateMetrics;
+import au.edu.uq.nmerge.mvd.Witness;
+import com.google.common.base.Functions;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times the phases of collating synthetic traditions of growing size.
+ * <p/>
+ * Only a small smoke configuration runs with the regular tests; run the
+ * scaling benchmark with <code>-Dtest=CollationBenchmarkTest -Dnmerge.benchmark=true</code>, optionally
+ * setting <code>nmerge.benchmark.witnesses</code> and
+ * <code>nmerge.benchmark.lengths</code> to comma-separated sizes, and
+ * <code>nmerge.benchmark.warmups</code> and
+ * <code>nmerge.benchmark.iterations</code> to the number of runs per size.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class CollationBenchmarkTest extends AbstractTest {
+
+  @Test
+  public void smoke() throws Exception {
+    run(3, 200, 0, 1);
+  }
+
+  @Test
+  public void scaling() throws Exception {
+    Assume.assumeTrue(Boolean.getBoolean("nmerge.benchmark"));
+    final int warmups = Integer.getInteger("nmerge.benchmark.warmups", 2);
+    final int iterations = Integer.getInteger("nmerge.benchmark.iterations", 5);
+    for (int witnesses : sizes("nmerge.benchmark.witnesses", "2,4,8,16")) {
+      for (int length : sizes("nmerge.benchmark.lengths", "500,2000,8000")) {
+        run(witnesses, length, warmups, iterations);
+      }
+    }
+  }
+
+  /**
+   * Collates one tradition repeatedly and logs the minimum and median
+   * time of each phase, and what merging took in the last iteration
+   */
+  protected void run(int witnesses, int length, int warmups, int iterations) throws Exception {
+    final List<List<String>> texts = new Tradition(witnesses * 31 + length).generate(witnesses, length);
+    final Map<String, long[]> times = Maps.newLinkedHashMap();
+    UpdateMetrics metrics = null;
+    for (int i = -warmups; i < iterations; i++) {
+      final Phases phases = new Phases(times, i);
+
+      final Collation<String> collation = new Collation<String>("Benchmark", Ordering.<String>natural(), "");
+      final List<Witness> sigla = Lists.newArrayList();
+      metrics = new UpdateMetrics();
+      for (int w = 0; w < texts.size(); w++) {
+        sigla.add(collation.add(new Witness("W" + (w + 1)), texts.get(w), metrics));
+        phases.mark("add");
+      }
+      collation.getMatches();
+      phases.mark("getMatches");
+
+      final File file = File.createTempFile(getClass().getName(), ".mvd");
+      try {
+        MVDFile.write(collation, Functions.<String>identity(), file);
+        phases.mark("write");
+        assertEquals(texts.get(0), MVDFile.open(file, Functions.<String>identity()).getVersion(sigla.get(0)));
+        phases.mark("open");
+      } finally {
+        file.delete();
+      }
+
+      final List<String> base = texts.get(0);
+      for (int q = 0; q + 5 <= base.size(); q += Math.max(1, base.size() / 20)) {
+        collation.search(base.subList(q, q + 5), Sets.newHashSet(sigla), true);
+      }
+      phases.mark("search");
+
+      for (int q = 0; q < base.size(); q += 100) {
+        collation.getApparatus(sigla.get(0), q, Math.min(100, base.size() - q));
+      }
+      phases.mark("getApparatus");
+
+      if (sigla.size() > 1) {
+        Iterables.size(collation.compare(sigla.get(0), sigla.get(1), ChunkState.DELETED));
+        phases.mark("compare");
+      }
+
+      collation.computeDiffMatrix(sigla);
+      phases.mark("computeDiffMatrix");
+
+      for (int w = 0; w < texts.size(); w++) {
+        assertEquals(texts.get(w), collation.getVersion(sigla.get(w)));
+      }
+    }
+
+    final StringBuilder report = new StringBuilder();
+    report.append(String.format("%d witnesses x %d words (min/median ms):", witnesses, length));
+    for (Map.Entry<String, long[]> phase : times.entrySet()) {
+      final long[] samples = phase.getValue();
+      Arrays.sort(samples);
+      report.append(String.format(" %s %.1f/%.1f;", phase.getKey(), samples[0] / 1e6, samples[samples.length / 2] / 1e6));
+    }
+    LOG.info(report.toString());
+    LOG.info("Merging, last iteration: {}", metrics);
+  }
+
+  private static List<Integer> sizes(String property, String defaultValue) {
+    final List<Integer> sizes = Lists.newArrayList();
+    for (String size : System.getProperty(property, defaultValue).split(",")) {
+      sizes.add(Integer.parseInt(size.trim()));
+    }
+    return sizes;
+  }
+
+  /**
+   * Accumulates the time spent in each phase of one iteration; warm-up
+   * iterations are not recorded
+   */
+  private static class Phases {
+    private final Map<String, long[]> times;
+    private final int iteration;
+    private final Map<String, Long> current = Maps.newLinkedHashMap();
+    private long last = System.nanoTime();
+
+    private Phases(Map<String, long[]> times, int iteration) {
+      this.times = times;
+      this.iteration = iteration;
+    }
+
+    private void mark(String phase) {
+      final long now = System.nanoTime();
+      final Long spent = current.get(phase);
+      current.put(phase, (spent == null ? 0 : spent) + now - last);
+      last = now;
+      if (iteration >= 0) {
+        long[] samples = times.get(phase);
+        if (samples == null || samples.length <= iteration) {
+          samples = (samples == null ? new long[iteration + 1] : Longs.ensureCapacity(samples, iteration + 1, 0));
+          times.put(phase, samples);
+        }
+        samples[iteration] = current.get(phase);
+      }
+    }
+  }
+}
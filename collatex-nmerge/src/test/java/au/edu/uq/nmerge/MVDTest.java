@@ -22,15 +22,31 @@
 package au.edu.uq.nmerge;
 
 import au.edu.uq.nmerge.graph.Converter;
+import au.edu.uq.nmerge.graph.IdGenerator;
 import au.edu.uq.nmerge.graph.VariantGraph;
 import au.edu.uq.nmerge.mvd.*;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
@@ -55,6 +71,202 @@ public class MVDTest extends AbstractTest {
 
   }
 
+  @Test
+  public void concurrentSearch() throws Exception {
+    final List<List<String>> texts = variants(4, 300, 4);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final Collation<String> sequential = new Collation<String>("Test", Ordering.<String>natural(), "");
+      final Collation<String> concurrent = new Collation<String>("Test", Ordering.<String>natural(), "", executor);
+      for (int i = 0; i < texts.size(); i++) {
+        sequential.add(new Witness("W" + (i + 1)), texts.get(i));
+        concurrent.add(new Witness("W" + (i + 1)), texts.get(i));
+      }
+
+      assertEquals(Iterables.toString(sequential.getMatches()), Iterables.toString(concurrent.getMatches()));
+      for (int i = 0; i < texts.size(); i++) {
+        assertEquals(texts.get(i), concurrent.getVersion(new Witness("W" + (i + 1))));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void incrementalUpdates() throws Exception {
+    final List<List<String>> texts = variants(36, 200, 4);
+    final Collation<String> serialisedOnce = new Collation<String>("Test", Ordering.<String>natural(), "");
+    final Collation<String> serialisedAlways = new Collation<String>("Test", Ordering.<String>natural(), "");
+    for (int i = 0; i < texts.size(); i++) {
+      serialisedOnce.add(new Witness("W" + (i + 1)), texts.get(i));
+      serialisedAlways.add(new Witness("W" + (i + 1)), texts.get(i));
+      serialisedAlways.getMatches();
+    }
+    assertEquals(Iterables.toString(serialisedOnce.getMatches()), Iterables.toString(serialisedAlways.getMatches()));
+
+    serialisedOnce.removeVersion(new Witness("W2"));
+    assertEquals(texts.size() - 1, serialisedOnce.getWitnesses().size());
+    serialisedOnce.update(new Witness("W3"), texts.get(1));
+    assertEquals(texts.get(0), serialisedOnce.getVersion(new Witness("W1")));
+    assertEquals(texts.get(1), serialisedOnce.getVersion(new Witness("W3")));
+    assertEquals(texts.get(3), serialisedOnce.getVersion(new Witness("W4")));
+  }
+
+  @Test
+  public void removalJoinsArcs() throws Exception {
+    final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "");
+    collation.add(new Witness("W1"), tokenize("the quick brown fox has died"));
+    collation.add(new Witness("W2"), tokenize("the quick brown fox has died"));
+    collation.add(new Witness("W3"), tokenize("the quick brown fox got blue rabies and has died"));
+    assertEquals(4, collation.getMatches().size());
+
+    collation.removeVersion(new Witness("W3"));
+    assertEquals(1, collation.getMatches().size());
+    assertEquals(tokenize("the quick brown fox has died"), collation.getVersion(new Witness("W2")));
+
+    collation.add(new Witness("W3"), tokenize("the quick brown fox lives"));
+    assertEquals(tokenize("the quick brown fox lives"), collation.getVersion(new Witness("W3")));
+    assertEquals(tokenize("the quick brown fox has died"), collation.getVersion(new Witness("W1")));
+  }
+
+  @Test
+  public void failedUpdate() throws Exception {
+    final RejectingExecutor executor = new RejectingExecutor();
+    final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "", executor);
+    collation.add(new Witness("W1"), tokenize("the quick brown fox has died"));
+    collation.add(new Witness("W2"), tokenize("the quick fox got blue rabies and has died"));
+    final String matches = Iterables.toString(collation.getMatches());
+
+    // searches after the first merge cannot be submitted
+    executor.rejecting = true;
+    final UpdateMetrics metrics = new UpdateMetrics();
+    try {
+      collation.add(new Witness("W3"), tokenize("the quick blue fox got lives"), metrics);
+      fail();
+    } catch (RejectedExecutionException e) {
+      assertTrue(metrics.getMumsMerged() > 0);
+    }
+    executor.rejecting = false;
+    assertEquals(matches, Iterables.toString(collation.getMatches()));
+    assertEquals(tokenize("the quick brown fox has died"), collation.getVersion(new Witness("W1")));
+
+    collation.update(new Witness("W3"), tokenize("the quick blue fox got lives"));
+    assertEquals(tokenize("the quick blue fox got lives"), collation.getVersion(new Witness("W3")));
+    assertEquals(tokenize("the quick fox got blue rabies and has died"), collation.getVersion(new Witness("W2")));
+  }
+
+  @Test
+  public void independentCollationsInParallel() throws Exception {
+    final UpdateMetrics metrics = new UpdateMetrics();
+    final List<Callable<String>> collations = Lists.newArrayList();
+    for (int c = 0; c < 4; c++) {
+      final List<List<String>> texts = variants(40 + c, 200, 3);
+      collations.add(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "");
+          for (int i = 0; i < texts.size(); i++) {
+            collation.add(new Witness("W" + (i + 1)), texts.get(i), metrics);
+          }
+          return Iterables.toString(collation.getMatches());
+        }
+      });
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(collations.size());
+    try {
+      final List<Future<String>> results = executor.invokeAll(collations);
+      for (int c = 0; c < collations.size(); c++) {
+        assertEquals(collations.get(c).call(), results.get(c).get());
+      }
+      // shared by the parallel and the sequential runs
+      assertEquals(2 * collations.size() * 3, metrics.getUpdates());
+      assertEquals(metrics.getMumsTried(), metrics.getMumsMerged() + metrics.getMumsInvalid());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void encodedSearch() throws Exception {
+    final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "");
+    final Witness w1 = collation.add(new Witness("W1"), tokenize("the quick brown fox has died"));
+    final Witness w2 = collation.add(new Witness("W2"), tokenize("the quick fox got blue rabies and has died"));
+
+    final List<Hit<String>> hits = collation.search(tokenize("has died"), Sets.newHashSet(w1, w2), true);
+    assertEquals(2, hits.size());
+    assertEquals(0, collation.search(tokenize("has lived"), Sets.newHashSet(w1, w2), true).size());
+    assertEquals(tokenize("the quick fox got blue rabies and has died"), collation.getVersion(w2));
+  }
+
+  @Test
+  public void witnessesSharedByCollations() throws Exception {
+    final Witness w1 = new Witness("W1");
+    final Witness w2 = new Witness("W2");
+    final Collation<String> c1 = new Collation<String>("C1", Ordering.<String>natural(), "");
+    c1.add(w1, tokenize("the quick brown fox has died"));
+    c1.add(w2, tokenize("the quick fox got blue rabies and has died"));
+
+    final Collation<String> c2 = new Collation<String>("C2", Ordering.<String>natural(), "");
+    c2.add(w1, tokenize("the slow brown fox lives"));
+
+    assertEquals(2, c1.search(tokenize("has died"), Sets.newHashSet(w1, w2), true).size());
+    assertEquals(tokenize("the quick brown fox has died"), c1.getVersion(w1));
+    assertEquals(tokenize("the slow brown fox lives"), c2.getVersion(w1));
+  }
+
+  @Test
+  public void streamingCompare() throws Exception {
+    final List<List<String>> texts = variants(43, 300, 3);
+    final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "");
+    for (int i = 0; i < texts.size(); i++) {
+      collation.add(new Witness("W" + (i + 1)), texts.get(i));
+    }
+    final Witness u = new Witness("W1");
+    final Witness v = new Witness("W2");
+    final String matches = Iterables.toString(collation.getMatches());
+
+    final List<Chunk<String>> chunks = collation.compare(u, v, ChunkState.DELETED);
+    assertEquals(matches, Iterables.toString(collation.getMatches()));
+    final List<String> tokens = Lists.newArrayList();
+    for (Chunk<String> chunk : chunks) {
+      assertEquals(tokens.size(), chunk.getOffset());
+      tokens.addAll(chunk.getTokens());
+    }
+    assertEquals(texts.get(0), tokens);
+
+    final Random random = new Random(43);
+    for (int q = 0; q < 20; q++) {
+      final int offset = random.nextInt(tokens.size());
+      int first = 0;
+      while (chunks.get(first).getOffset() + chunks.get(first).getLength() <= offset) {
+        first++;
+      }
+      final Iterator<Chunk<String>> streamed = collation.compare(u, v, ChunkState.DELETED, offset);
+      assertEquals(Iterables.toString(chunks.subList(first, chunks.size())), Iterators.toString(streamed));
+    }
+  }
+
+  @Test
+  public void updateMetrics() throws Exception {
+    final List<List<String>> texts = variants(45, 300, 4);
+    final Collation<String> plain = new Collation<String>("Test", Ordering.<String>natural(), "");
+    final Collation<String> measured = new Collation<String>("Test", Ordering.<String>natural(), "");
+    final UpdateMetrics metrics = new UpdateMetrics();
+    for (int i = 0; i < texts.size(); i++) {
+      plain.add(new Witness("W" + (i + 1)), texts.get(i));
+      measured.add(new Witness("W" + (i + 1)), texts.get(i), metrics);
+    }
+    LOG.debug(metrics.toString());
+    assertEquals(Iterables.toString(plain.getMatches()), Iterables.toString(measured.getMatches()));
+    assertEquals(texts.size(), metrics.getUpdates());
+    assertEquals(metrics.getMumsTried(), metrics.getMumsMerged() + metrics.getMumsInvalid());
+    assertTrue(metrics.getMumsMerged() >= texts.size() - 1);
+    assertTrue(metrics.getMaxSpecials() > 1);
+    assertTrue(metrics.getSuffixArrays() >= metrics.getMumsTried());
+    assertTrue(metrics.getTotalNanos() >= metrics.getSearchNanos() + metrics.getMergeNanos());
+    assertTrue(metrics.getSearchNanos() >= metrics.getSuffixArrayNanos());
+  }
+
   protected void collate(String... witnessContents) throws Exception {
     final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "");
 
@@ -68,7 +280,11 @@ public class MVDTest extends AbstractTest {
       LOG.debug(m.toString());
     }
 
-    final Converter<String> converter = new Converter<String>();
+    final WitnessNumbering numbering = new WitnessNumbering();
+    for (Witness w : witnesses) {
+      numbering.register(w);
+    }
+    final Converter<String> converter = new Converter<String>(new IdGenerator(), numbering);
     final VariantGraph<String> graph = converter.create(collation.getMatches(), collation.getWitnesses());
     LOG.debug("\n" + graph.toString());
 
@@ -86,7 +302,57 @@ public class MVDTest extends AbstractTest {
     }
   }
 
+  /**
+   * Witnesses of a tradition with a small vocabulary and frequent
+   * substitutions, additions, omissions and transpositions.
+   */
+  protected List<List<String>> variants(long seed, int length, int count) {
+    return new Tradition(seed).setVocabulary(60)
+            .setSubstitutionRate(0.025).setAdditionRate(0.025).setOmissionRate(0.025).setMaxRunLength(1)
+            .setTranspositionRate(0.025).setMaxBlockLength(5)
+            .generate(count, length);
+  }
+
   protected List<String> tokenize(String str) {
     return Arrays.asList(str.split("\\s+"));
   }
+
+  /**
+   * Runs tasks in the calling thread until told to reject them.
+   */
+  private static class RejectingExecutor extends AbstractExecutorService {
+    private volatile boolean rejecting;
+
+    @Override
+    public void execute(Runnable command) {
+      if (rejecting) {
+        throw new RejectedExecutionException();
+      }
+      command.run();
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return Lists.newArrayList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return false;
+    }
+  }
 }
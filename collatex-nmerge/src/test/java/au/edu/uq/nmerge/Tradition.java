@@ -0,0 +1,177 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.edu.uq.nmerge;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic traditions for tests and benchmarks: an archetype drawn from
+ * a skewed vocabulary, and witnesses each copied from the archetype or an
+ * earlier witness, with copying errors, additions, omissions and
+ * transpositions at controllable rates.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class Tradition {
+  private final Random random;
+  private int vocabulary = 2000;
+  private String prefix = "w";
+  private double substitutionRate = 0.02;
+  private double additionRate = 0.005;
+  private double omissionRate = 0.005;
+  private double transpositionRate = 0.001;
+  private int maxRunLength = 6;
+  private int maxBlockLength = 40;
+
+  public Tradition(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Set the number of distinct words; word frequencies fall off
+   * roughly as in natural language
+   */
+  public Tradition setVocabulary(int vocabulary) {
+    Preconditions.checkArgument(vocabulary > 0);
+    this.vocabulary = vocabulary;
+    return this;
+  }
+
+  /**
+   * Set the prefix of the generated words, followed by their rank
+   */
+  public Tradition setPrefix(String prefix) {
+    this.prefix = Preconditions.checkNotNull(prefix);
+    return this;
+  }
+
+  /**
+   * Set the probability of a copied word being miscopied
+   */
+  public Tradition setSubstitutionRate(double substitutionRate) {
+    this.substitutionRate = checkRate(substitutionRate);
+    return this;
+  }
+
+  /**
+   * Set the probability per copied word of a run of words being added after it
+   */
+  public Tradition setAdditionRate(double additionRate) {
+    this.additionRate = checkRate(additionRate);
+    return this;
+  }
+
+  /**
+   * Set the probability per exemplar word of a run of words being omitted from it on
+   */
+  public Tradition setOmissionRate(double omissionRate) {
+    this.omissionRate = checkRate(omissionRate);
+    return this;
+  }
+
+  /**
+   * Set the probability per word of a copy of a block of words being moved elsewhere
+   */
+  public Tradition setTranspositionRate(double transpositionRate) {
+    this.transpositionRate = checkRate(transpositionRate);
+    return this;
+  }
+
+  /**
+   * Set the maximum length of added and omitted runs
+   */
+  public Tradition setMaxRunLength(int maxRunLength) {
+    Preconditions.checkArgument(maxRunLength > 0);
+    this.maxRunLength = maxRunLength;
+    return this;
+  }
+
+  /**
+   * Set the maximum length of transposed blocks
+   */
+  public Tradition setMaxBlockLength(int maxBlockLength) {
+    Preconditions.checkArgument(maxBlockLength > 0);
+    this.maxBlockLength = maxBlockLength;
+    return this;
+  }
+
+  /**
+   * Generate the texts of a tradition
+   *
+   * @param witnesses the number of witnesses
+   * @param length    the number of words of the archetype
+   * @return the texts of the witnesses, in order of copying
+   */
+  public List<List<String>> generate(int witnesses, int length) {
+    final List<String> archetype = Lists.newArrayListWithExpectedSize(length);
+    for (int i = 0; i < length; i++) {
+      archetype.add(word());
+    }
+    final List<List<String>> texts = Lists.newArrayListWithExpectedSize(witnesses);
+    for (int w = 0; w < witnesses; w++) {
+      final int exemplar = random.nextInt(texts.size() + 1);
+      texts.add(copy(exemplar == texts.size() ? archetype : texts.get(exemplar)));
+    }
+    return texts;
+  }
+
+  protected List<String> copy(List<String> exemplar) {
+    final List<String> copy = Lists.newArrayListWithExpectedSize(exemplar.size() + exemplar.size() / 10);
+    for (int i = 0; i < exemplar.size(); i++) {
+      if (random.nextDouble() < omissionRate) {
+        i += random.nextInt(maxRunLength);
+        continue;
+      }
+      copy.add(random.nextDouble() < substitutionRate ? word() : exemplar.get(i));
+      if (random.nextDouble() < additionRate) {
+        for (int a = 1 + random.nextInt(maxRunLength); a > 0; a--) {
+          copy.add(word());
+        }
+      }
+    }
+    for (int t = (int) Math.round(copy.size() * transpositionRate); t > 0 && copy.size() > 1; t--) {
+      final int from = random.nextInt(copy.size() - 1);
+      final List<String> moved = copy.subList(from, Math.min(from + 1 + random.nextInt(maxBlockLength), copy.size()));
+      final List<String> block = Lists.newArrayList(moved);
+      moved.clear();
+      copy.addAll(random.nextInt(copy.size() + 1), block);
+    }
+    return copy;
+  }
+
+  /**
+   * Draws a word with a log-uniform rank, so that few words are frequent
+   * and many are rare
+   */
+  protected String word() {
+    return prefix + (int) Math.pow(vocabulary, random.nextDouble());
+  }
+
+  private static double checkRate(double rate) {
+    Preconditions.checkArgument(rate >= 0 && rate <= 1, "%s is not a rate", rate);
+    return rate;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.edu.uq.nmerge.fastme;
+
+import au.edu.uq.nmerge.AbstractTest;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class FastMETest extends AbstractTest {
+
+  @Test
+  public void additiveDistances() throws Exception {
+    // ((A:1,B:2):5,(C:3,D:4))
+    final double[][] distances = {
+            {0, 3, 9, 10},
+            {3, 0, 10, 11},
+            {9, 10, 0, 7},
+            {10, 11, 7, 0}
+    };
+    for (balance btype : new balance[] { balance.OLS, balance.BAL }) {
+      final FastME fastME = new FastME();
+      fastME.setBalance(btype);
+      Assert.assertEquals("(B:2,(C:3,D:4)I5:5,A:1)I3;", stemma(fastME, distances));
+    }
+  }
+
+  @Test
+  public void parallelEqualsSequentialRefinement() throws Exception {
+    final Random random = new Random(42);
+    final int size = 700;
+    final double[][] points = new double[size][3];
+    for (double[] point : points) {
+      for (int d = 0; d < point.length; d++) {
+        point[d] = random.nextDouble();
+      }
+    }
+    final double[][] distances = new double[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        double sum = 0;
+        for (int d = 0; d < 3; d++) {
+          sum += (points[i][d] - points[j][d]) * (points[i][d] - points[j][d]);
+        }
+        distances[i][j] = Math.sqrt(sum);
+      }
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (balance btype : new balance[] { balance.OLS, balance.BAL }) {
+        final FastME sequential = new FastME(MoreExecutors.sameThreadExecutor(), 1);
+        sequential.setBalance(btype);
+        final FastME parallel = new FastME(executor, 4);
+        parallel.setBalance(btype);
+        Assert.assertEquals(stemma(sequential, distances), stemma(parallel, distances));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static String stemma(FastME fastME, double[][] distances) throws Exception {
+    final String[] taxa = new String[distances.length];
+    for (int i = 0; i < taxa.length; i++) {
+      taxa[i] = (taxa.length <= 26 ? String.valueOf((char) ('A' + i)) : "W" + i);
+    }
+    fastME.buildTree(distances, taxa);
+    fastME.refineTree();
+    final ByteArrayOutputStream newick = new ByteArrayOutputStream();
+    fastME.T.NewickPrintTree(new PrintStream(newick, true, "UTF-8"));
+    return newick.toString("UTF-8").trim();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.edu.uq.nmerge.graph;
+
+import au.edu.uq.nmerge.AbstractTest;
+import au.edu.uq.nmerge.Tradition;
+import au.edu.uq.nmerge.mvd.Collation;
+import au.edu.uq.nmerge.mvd.Witness;
+import au.edu.uq.nmerge.mvd.WitnessNumbering;
+import au.edu.uq.nmerge.graph.suffixarray.SuffixArray;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class MaximalUniqueMatchTest extends AbstractTest {
+
+  @Test
+  public void batchingDoesNotChangeCounts() throws Exception {
+    final List<List<String>> texts = new Tradition(47).setVocabulary(40).generate(5, 300);
+    final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "");
+    final WitnessNumbering numbering = new WitnessNumbering();
+    for (int i = 0; i < texts.size() - 1; i++) {
+      numbering.register(collation.add(new Witness("W" + (i + 1)), texts.get(i)));
+    }
+    final Witness added = new Witness("W" + texts.size());
+    numbering.register(added);
+
+    final VariantGraph<String> graph = new Converter<String>(new IdGenerator(), numbering).create(collation.getMatches(), collation.getWitnesses());
+    final VariantGraphSpecialArc<String> special = graph.addSpecialArc(texts.get(texts.size() - 1), added, 0);
+    final SuffixArray<String> st = new SuffixArray<String>(Lists.newArrayList(special.getData()), Ordering.<String>natural());
+
+    // one batch holding all match threads
+    final String unbatched = describe(MaximalUniqueMatch.findDirectMUM(special, st, graph, MoreExecutors.sameThreadExecutor(), 1 << 20));
+    for (int batchSize : new int[] { 1, 2, 3, 7, 64, MaximalUniqueMatch.MATCH_THREAD_BATCH_SIZE }) {
+      final MaximalUniqueMatch<String> batched = MaximalUniqueMatch.findDirectMUM(special, st, graph, MoreExecutors.sameThreadExecutor(), batchSize);
+      assertEquals("Batches of " + batchSize, unbatched, describe(batched));
+    }
+  }
+
+  @Test
+  public void combiningBatchesCountsLikeOneSearch() {
+    final Witness witness = new Witness("W1");
+    final List<String> data = Arrays.asList("a", "b");
+    final VariantGraphNode<String> start = new VariantGraphNode<String>(new IdGenerator(), new WitnessNumbering());
+    final VariantGraphSpecialArc<String> arc = new VariantGraphSpecialArc<String>(Collections.singleton(witness), data, 0);
+
+    // b overlaps a and c, but c does not overlap a, so c is a second occurrence
+    final VariantGraphMatch<String> a = new Occurrence(start, 0, witness, data);
+    final VariantGraphMatch<String> b = new Occurrence(start, 1, witness, data);
+    final VariantGraphMatch<String> c = new Occurrence(start, 2, witness, data);
+
+    final MaximalUniqueMatch<String> mum = new MaximalUniqueMatch<String>(arc, null, false);
+    mum.addCandidates(batch(arc, a));
+    mum.addCandidates(batch(arc, b, c));
+    assertEquals(2, mum.table.get(a).freq);
+  }
+
+  private static MaximalUniqueMatch<String> batch(VariantGraphSpecialArc<String> arc, VariantGraphMatch<String>... occurrences) {
+    final MaximalUniqueMatch<String> batch = new MaximalUniqueMatch<String>(arc, null, false);
+    batch.occurrences = Lists.newArrayList(occurrences);
+    return batch;
+  }
+
+  private static String describe(MaximalUniqueMatch<String> mum) {
+    final List<String> candidates = Lists.newArrayList();
+    for (VariantGraphMatch<String> candidate : mum.table.values()) {
+      candidates.add(candidate + " x" + candidate.freq);
+    }
+    Collections.sort(candidates);
+    return mum.match + " " + candidates;
+  }
+
+  /**
+   * An occurrence overlapping those starting next to it.
+   */
+  private static class Occurrence extends VariantGraphMatch<String> {
+
+    private Occurrence(VariantGraphNode<String> start, int graphOffset, Witness version, List<String> data) {
+      super(start, graphOffset, version, 0, data.size(), data);
+    }
+
+    @Override
+    public boolean overlaps(VariantGraphMatch<String> b) {
+      return Math.abs(graphOffset - b.graphOffset) <= 1;
+    }
+  }
+}
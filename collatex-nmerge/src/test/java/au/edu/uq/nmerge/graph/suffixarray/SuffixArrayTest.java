@@ -0,0 +1,112 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.edu.uq.nmerge.graph.suffixarray;
+
+import au.edu.uq.nmerge.AbstractTest;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class SuffixArrayTest extends AbstractTest {
+
+  private static final List<String> TEST_STRING = Lists.newArrayList("Hello ", "world ", "world ", "World ", "!");
+
+  @Test
+  public void simple() {
+    final SuffixArray<String> sa = new SuffixArray<String>(TEST_STRING, Ordering.<String>natural());
+    Assert.assertEquals(Integer.valueOf(0), sa.findSubstring(TEST_STRING.subList(0, 3)));
+    Assert.assertNull(sa.findSubstring(Lists.newArrayList("world ", "Hello ")));
+  }
+
+  /**
+   * All the words stored in a string are findable
+   */
+  @Test
+  public void verifyAllSuffixes() {
+    final SuffixArray<String> sa = new SuffixArray<String>(TEST_STRING, Ordering.<String>natural());
+    final int end = TEST_STRING.size();
+    for (int start = 0; start < end; start++) {
+      Assert.assertEquals("Couldn't find word [" + start + ", " + end + "]", Integer.valueOf(start), sa.findSubstring(TEST_STRING.subList(start, end)));
+    }
+  }
+
+  @Test
+  public void uniqueMatches() {
+    final SuffixArray<String> sa = new SuffixArray<String>(TEST_STRING, Ordering.<String>natural());
+    final SuffixArrayPosition position = sa.getStartPos("world ");
+    Assert.assertNotNull(position);
+    Assert.assertFalse(position.isUnique());
+
+    final SuffixArrayPosition copy = new SuffixArrayPosition(position);
+    Assert.assertTrue(sa.advance(copy, "World "));
+    Assert.assertTrue(copy.isUnique());
+    Assert.assertEquals(2, copy.getOffset());
+    Assert.assertEquals(2, copy.getDepth());
+
+    Assert.assertFalse(sa.advance(position, "!"));
+    Assert.assertEquals(1, position.getDepth());
+    Assert.assertNull(sa.getStartPos("?"));
+  }
+
+  /**
+   * Induced sorting yields the same order as comparing suffixes
+   */
+  @Test
+  public void sortedSuffixes() {
+    final Random random = new Random(33);
+    for (int run = 0; run < 50; run++) {
+      final List<Integer> tokens = Lists.newArrayList();
+      final int alphabet = 1 + random.nextInt(6);
+      for (int i = random.nextInt(300); i > 0; i--) {
+        tokens.add(random.nextInt(alphabet));
+      }
+      final SuffixArray<Integer> sa = new SuffixArray<Integer>(tokens, Ordering.<Integer>natural());
+
+      final List<Integer> expected = Lists.newArrayList();
+      for (int i = 0; i < tokens.size(); i++) {
+        expected.add(i);
+      }
+      Collections.sort(expected, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          return Ordering.<Integer>natural().lexicographical().compare(tokens.subList(o1, tokens.size()), tokens.subList(o2, tokens.size()));
+        }
+      });
+
+      final List<Integer> actual = Lists.newArrayList();
+      for (int suffix : sa.getSuffixes()) {
+        actual.add(suffix);
+      }
+      Assert.assertEquals(expected, actual);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.edu.uq.nmerge.mvd;
+
+import au.edu.uq.nmerge.AbstractTest;
+import au.edu.uq.nmerge.Tradition;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class DiffMatrixTest extends AbstractTest {
+
+  @Test
+  public void rangesEqualSingleScan() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "", executor);
+      final List<List<String>> texts = new Tradition(41).setVocabulary(500).setSubstitutionRate(0.2)
+              .setTranspositionRate(0.005).generate(6, 600);
+      for (int v = 0; v < texts.size(); v++) {
+        collation.add(new Witness("W" + (v + 1)), texts.get(v));
+      }
+      Assert.assertTrue(collation.getMatches().size() > 2 * 256);
+
+      final List<Witness> ordered = Lists.newArrayList(collation.getWitnesses());
+      Collections.reverse(ordered);
+      final double[][] expected = scan(collation, ordered);
+      final double[][] actual = collation.computeDiffMatrix(ordered);
+      for (int i = 0; i < expected.length; i++) {
+        Assert.assertArrayEquals(expected[i], actual[i], 0.0);
+      }
+
+      final String stemma = collation.computeStemma();
+      Assert.assertTrue(stemma.endsWith(";"));
+      for (Witness witness : ordered) {
+        Assert.assertTrue(stemma.contains(witness.siglum));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * The difference matrix computed in a single scan over all pairs
+   */
+  private static double[][] scan(Collation<String> collation, List<Witness> ordered) {
+    int s = ordered.size();
+    int[] lengths = new int[s];
+    int[][] lastJoinJ = new int[s][s];
+    int[][] lastJoinK = new int[s][s];
+    int[][] costs = new int[s][s];
+    for (Match<String> p : collation.getMatches()) {
+      for (Witness jw : p.witnesses) {
+        int j = ordered.indexOf(jw);
+        for (Witness kw : p.witnesses) {
+          int k = ordered.indexOf(kw);
+          costs[j][k] += Math.max(lengths[j] - lastJoinJ[j][k], lengths[k] - lastJoinK[j][k]);
+          costs[k][j] = costs[j][k];
+          lastJoinJ[j][k] = lengths[j] + p.length();
+          lastJoinK[j][k] = lengths[k] + p.length();
+        }
+        lengths[j] += p.length();
+      }
+    }
+    double[][] diffs = new double[s][s];
+    for (int i = 0; i < s; i++) {
+      for (int j = 0; j < s; j++) {
+        double denominator = Math.max(lengths[i], lengths[j]) - 1;
+        diffs[i][j] = ((double) costs[i][j]) / denominator;
+      }
+    }
+    return diffs;
+  }
+}
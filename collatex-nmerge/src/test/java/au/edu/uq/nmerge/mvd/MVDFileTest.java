@@ -0,0 +1,82 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.edu.uq.nmerge.mvd;
+
+import au.edu.uq.nmerge.AbstractTest;
+import au.edu.uq.nmerge.Tradition;
+import com.google.common.base.Functions;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class MVDFileTest extends AbstractTest {
+
+  @Test
+  public void writeAndOpen() throws Exception {
+    final Collation<String> collation = new Collation<String>("Test ä", Ordering.<String>natural(), "");
+    final List<List<String>> texts = new Tradition(39).setPrefix("tö").setVocabulary(400).setSubstitutionRate(0.1)
+            .setTranspositionRate(0.01).generate(4, 150);
+    for (int v = 0; v < texts.size(); v++) {
+      collation.add(new Witness("W" + (v + 1)), texts.get(v));
+    }
+
+    final File file = File.createTempFile(getClass().getName(), ".mvd");
+    file.deleteOnExit();
+    MVDFile.write(collation, Functions.<String>identity(), file);
+
+    final MVDFile<String> mvd = MVDFile.open(file, Functions.<String>identity());
+    Assert.assertEquals(collation.getDescription(), mvd.getDescription());
+    Assert.assertEquals(Lists.newArrayList(collation.getWitnesses()), mvd.getWitnesses());
+    for (int v = 0; v < texts.size(); v++) {
+      Assert.assertEquals(texts.get(v), mvd.getVersion(new Witness("W" + (v + 1))));
+    }
+    final List<Match<String>> matches = collation.getMatches();
+    boolean transposed = false;
+    for (Match<String> match : matches) {
+      transposed |= match.isChild();
+    }
+    Assert.assertTrue(transposed);
+    Assert.assertEquals(matches.size(), mvd.getMatches().size());
+    for (int m = matches.size() - 1; m >= 0; m--) {
+      Assert.assertEquals(matches.get(m).toString(), mvd.getMatches().get(m).toString());
+      Assert.assertEquals(matches.get(m).getId(), mvd.getMatches().get(m).getId());
+    }
+
+    final Collation<String> loaded = mvd.toCollation(Ordering.<String>natural(), "");
+    Assert.assertEquals(Iterables.toString(matches), Iterables.toString(loaded.getMatches()));
+    final List<String> updated = Lists.newArrayList(texts.get(0));
+    updated.subList(10, 30).clear();
+    loaded.update(new Witness("W1"), updated);
+    Assert.assertEquals(updated, loaded.getVersion(new Witness("W1")));
+    for (int v = 1; v < texts.size(); v++) {
+      Assert.assertEquals(texts.get(v), loaded.getVersion(new Witness("W" + (v + 1))));
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.edu.uq.nmerge.mvd;
+
+import au.edu.uq.nmerge.AbstractTest;
+import au.edu.uq.nmerge.Tradition;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class MatchIndexTest extends AbstractTest {
+
+  @Test
+  public void indexedEqualsScan() throws Exception {
+    final Random random = new Random(37);
+    final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "");
+    final List<Witness> witnesses = Lists.newArrayList();
+    final List<List<String>> texts = new Tradition(37).setVocabulary(8).setSubstitutionRate(0.1)
+            .setTranspositionRate(0.01).generate(4, 120);
+    for (int v = 0; v < texts.size(); v++) {
+      witnesses.add(collation.add(new Witness("W" + (v + 1)), texts.get(v)));
+    }
+
+    for (int q = 0; q < 50; q++) {
+      final List<String> source = texts.get(random.nextInt(texts.size()));
+      final int start = random.nextInt(source.size() - 4);
+      final List<String> pattern = source.subList(start, start + 1 + random.nextInt(4));
+      final Set<Witness> searched = Sets.newHashSet(witnesses.subList(0, 1 + random.nextInt(witnesses.size())));
+
+      final Set<String> expected = Sets.newHashSet();
+      for (int v = 0; v < witnesses.size(); v++) {
+        if (searched.contains(witnesses.get(v))) {
+          final List<String> text = texts.get(v);
+          for (int o = 0; o + pattern.size() <= text.size(); o++) {
+            if (text.subList(o, o + pattern.size()).equals(pattern)) {
+              expected.add(witnesses.get(v) + "@" + o);
+            }
+          }
+        }
+      }
+      final Set<String> actual = Sets.newHashSet();
+      for (Hit<String> hit : collation.search(pattern, searched, true)) {
+        Assert.assertEquals(pattern.size(), hit.getLength());
+        actual.add(hit.getVersion() + "@" + hit.getStartOffset());
+      }
+      Assert.assertEquals(expected, actual);
+      Assert.assertEquals(Math.min(1, expected.size()), collation.search(pattern, searched, false).size());
+    }
+  }
+
+  @Test
+  public void offsets() throws Exception {
+    final Collation<String> collation = new Collation<String>("Test", Ordering.<String>natural(), "");
+    final List<Witness> witnesses = Lists.newArrayList();
+    final List<List<String>> texts = new Tradition(38).setVocabulary(8).setSubstitutionRate(0.1)
+            .setOmissionRate(0.02).setMaxRunLength(30).generate(3, 100);
+    for (int v = 0; v < texts.size(); v++) {
+      witnesses.add(collation.add(new Witness("W" + (v + 1)), texts.get(v)));
+    }
+    collation.removeVersion(witnesses.remove(1));
+    texts.remove(1);
+
+    final List<Match<String>> matches = collation.getMatches();
+    for (int v = 0; v < witnesses.size(); v++) {
+      final Witness witness = witnesses.get(v);
+      final List<String> text = texts.get(v);
+      Assert.assertEquals(text, collation.getVersion(new Witness(witness.siglum)));
+      for (int o = 0; o <= text.size(); o++) {
+        int pos = 0;
+        int expected = -1;
+        for (int i = 0; i < matches.size() && expected < 0; i++) {
+          if (matches.get(i).contains(witness)) {
+            if (o < pos + matches.get(i).length()) {
+              expected = i;
+            }
+            pos += matches.get(i).length();
+          }
+        }
+        Assert.assertEquals(expected, collation.getPairIndex(witness, o));
+        Assert.assertEquals(text.subList(o, Math.min(text.size(), o + 7)), collation.getVersion(witness, o, 7));
+      }
+      for (int i = 0; i <= matches.size(); i++) {
+        int next = Integer.MAX_VALUE;
+        for (int j = matches.size() - 1; j >= i; j--) {
+          next = (matches.get(j).contains(witness) ? j : next);
+        }
+        int previous = -1;
+        for (int j = 1; j < i; j++) {
+          previous = (matches.get(j).contains(witness) ? j : previous);
+        }
+        Assert.assertEquals(next, collation.next(i, witness));
+        Assert.assertEquals(previous, collation.previous(i, witness));
+      }
+    }
+    Assert.assertTrue(collation.getVersion(new Witness("W2")).isEmpty());
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * NMerge is Copyright 2009-2011 Desmond Schmidt
+ *
+ * This file is part of NMerge. NMerge is a Java library for merging
+ * multiple versions into multi-version documents (MVDs), and for
+ * reading, searching and comparing them.
+ *
+ * NMerge is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.edu.uq.nmerge.mvd;
+
+import au.edu.uq.nmerge.AbstractTest;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class WitnessSetTest extends AbstractTest {
+
+  @Test
+  public void setAlgebra() {
+    final WitnessNumbering numbering = new WitnessNumbering();
+    final Witness[] w = new Witness[70];
+    for (int i = 0; i < w.length; i++) {
+      w[i] = new Witness("W" + i);
+      numbering.register(w[i]);
+    }
+
+    final WitnessSet a = WitnessSet.of(numbering, w[0], w[1], w[65]);
+    final WitnessSet b = WitnessSet.of(numbering, w[1], w[2]);
+    Assert.assertEquals(3, a.size());
+    Assert.assertTrue(a.contains(new Witness("W65")));
+    Assert.assertFalse(a.contains(new Witness("X")));
+
+    Assert.assertEquals(WitnessSet.of(numbering, w[1]), WitnessSet.intersection(a, b));
+    Assert.assertEquals(Sets.newHashSet(w[0], w[65]), WitnessSet.difference(a, b));
+    Assert.assertFalse(WitnessSet.disjoint(a, b));
+    Assert.assertTrue(WitnessSet.disjoint(a, WitnessSet.of(numbering, w[69])));
+    Assert.assertTrue(WitnessSet.disjoint(a, new WitnessSet()));
+
+    final WitnessSet union = new WitnessSet();
+    union.addAll(a);
+    union.addAll(b);
+    Assert.assertTrue(union.containsAll(a));
+    Assert.assertEquals(Sets.newHashSet(w[0], w[1], w[2], w[65]), union);
+    Assert.assertEquals(Sets.newHashSet(w[0], w[1], w[2], w[65]).hashCode(), union.hashCode());
+
+    union.removeAll(Collections.singleton(w[1]));
+    union.retainAll(Sets.newHashSet(w[0], w[65]));
+    Assert.assertEquals(WitnessSet.of(numbering, w[65], w[0]), union);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unnumbered() {
+    WitnessSet.of(new WitnessNumbering(), new Witness("W1"));
+  }
+
+  @Test
+  public void sharedWitnesses() {
+    final Witness w1 = new Witness("W1");
+    final Witness w2 = new Witness("W2");
+    final WitnessNumbering first = new WitnessNumbering();
+    first.register(w1);
+    first.register(w2);
+    final WitnessNumbering second = new WitnessNumbering();
+    second.register(w2);
+    second.register(w1);
+
+    final WitnessSet set = WitnessSet.of(first, w1, w2);
+    Assert.assertEquals(Sets.newHashSet(w1, w2), set);
+    Assert.assertEquals(WitnessSet.of(second, w1), WitnessSet.difference(set, WitnessSet.of(second, w2)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void withoutNumbering() {
+    new WitnessSet().add(new Witness("W1"));
+  }
+}
@@ -1,14 +1,19 @@
 package eu.interedition.collatex;
 
+import com.google.common.base.Supplier;
 import eu.interedition.collatex.dekker.DekkerAlgorithm;
+import eu.interedition.collatex.graph.GraphFactory;
 import eu.interedition.collatex.needlemanwunsch.NeedlemanWunschAlgorithm;
+import eu.interedition.collatex.parallel.SegmentingCollationAlgorithm;
 
 import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
  */
 public class CollationAlgorithmFactory {
+  private static final int MIN_SEGMENT_LENGTH = 500;
   
   public static CollationAlgorithm dekker(Comparator<Token> comparator) {
     return new DekkerAlgorithm(comparator);
@@ -17,4 +22,13 @@ public class CollationAlgorithmFactory {
   public static CollationAlgorithm needlemanWunsch(Comparator<Token> comparator) {
     return new NeedlemanWunschAlgorithm(comparator);
   }
+
+  public static CollationAlgorithm segmentedDekker(GraphFactory graphFactory, final Comparator<Token> comparator, ExecutorService executor) {
+    return new SegmentingCollationAlgorithm(graphFactory, comparator, new Supplier<CollationAlgorithm>() {
+      @Override
+      public CollationAlgorithm get() {
+        return dekker(comparator);
+      }
+    }, executor, MIN_SEGMENT_LENGTH);
+  }
 }
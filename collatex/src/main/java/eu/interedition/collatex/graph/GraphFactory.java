@@ -1,7 +1,9 @@
 package eu.interedition.collatex.graph;
 
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import eu.interedition.collatex.Witness;
@@ -9,6 +11,7 @@ import eu.interedition.collatex.Token;
 import eu.interedition.collatex.input.SimpleToken;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
@@ -17,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import static eu.interedition.collatex.graph.GraphRelationshipType.*;
 import static org.neo4j.graphdb.Direction.INCOMING;
@@ -28,6 +32,7 @@ import static org.neo4j.graphdb.Direction.OUTGOING;
 public class GraphFactory {
   private static final Logger LOG = LoggerFactory.getLogger(GraphFactory.class);
   public static final String CREATED_KEY = "created";
+  public static final String TOUCHED_KEY = "touched";
 
   private Resolver<Witness> witnessResolver = new DefaultResolver<Witness>();
   private Resolver<Token> tokenResolver = new DefaultResolver<Token>();
@@ -118,12 +123,59 @@ public class GraphFactory {
     });
   }
   
+  /**
+   * Looks up a variant graph registered with this factory by the identifier of its start node.
+   *
+   * @return the graph or <code>null</code>, if no graph with the given identifier exists
+   */
+  public VariantGraph variantGraph(long id) {
+    try {
+      final Relationship registration = registration(database.getNodeById(id));
+      return (registration == null ? null : wrapVariantGraph(registration));
+    } catch (NotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Records that a registered variant graph is in use, so {@link #deleteGraphsOlderThan(long)} purges it only once it
+   * has not been touched for as long as an untouched graph since its creation.
+   *
+   * <p>This writes to the graph's registration, so the calling transaction holds a write lock on it until it finishes;
+   * concurrent modifications of a graph which touch it first are thereby serialised.</p>
+   */
+  public void touch(VariantGraph graph) {
+    final Relationship registration = registration(graph.getStart().getNode());
+    Preconditions.checkArgument(registration != null, "Unregistered variant graph");
+    registration.setProperty(TOUCHED_KEY, System.currentTimeMillis());
+  }
+
+  private Relationship registration(Node startNode) {
+    for (Relationship registration : startNode.getRelationships(VARIANT_GRAPH, INCOMING)) {
+      if (registration.getStartNode().equals(variantGraphs)) {
+        return registration;
+      }
+    }
+    return null;
+  }
+
   public VariantGraph newVariantGraph() {
+    final VariantGraph graph = newUnregisteredVariantGraph();
+    final Relationship startRel = variantGraphs.createRelationshipTo(graph.getStart().getNode(), VARIANT_GRAPH);
+    startRel.setProperty(CREATED_KEY, System.currentTimeMillis());
+    return graph;
+  }
+
+  /**
+   * Creates a variant graph which is not linked to this factory's graph registry.
+   *
+   * <p>Such graphs are neither listed via {@link #variantGraphs()} nor purged by {@link #deleteGraphsOlderThan(long)};
+   * they are meant for intermediate results the caller deletes itself. As no shared node is written to, they can be
+   * created in concurrent transactions without contending for locks.</p>
+   */
+  public VariantGraph newUnregisteredVariantGraph() {
     final Node startNode = database.createNode();
     final Node endNode = database.createNode();
-
-    final Relationship startRel = variantGraphs.createRelationshipTo(startNode, VARIANT_GRAPH);
-    startRel.setProperty(CREATED_KEY, System.currentTimeMillis());
     startNode.createRelationshipTo(endNode, VARIANT_GRAPH);
 
     final VariantGraph graph = wrapVariantGraph(startNode, endNode);
@@ -162,9 +214,17 @@ public class GraphFactory {
     return graph;
   }
 
-  public void deleteGraphsOlderThan(long timestamp) {
+  /**
+   * Deletes registered variant graphs neither created nor {@link #touch(VariantGraph) touched} since the given point in
+   * time, as well as edit graphs created before it.
+   *
+   * @return the identifiers of the deleted variant graphs' start nodes
+   */
+  public List<Long> deleteGraphsOlderThan(long timestamp) {
+    final List<Long> deleted = Lists.newArrayList();
     for (Relationship vgRel : variantGraphs.getRelationships(VARIANT_GRAPH, OUTGOING)) {
-      if (((Long) vgRel.getProperty(CREATED_KEY)) < timestamp) {
+      if (((Long) vgRel.getProperty(TOUCHED_KEY, vgRel.getProperty(CREATED_KEY))) < timestamp) {
+        deleted.add(vgRel.getEndNode().getId());
         delete(wrapVariantGraph(vgRel));
       }
     }
@@ -173,6 +233,7 @@ public class GraphFactory {
         delete(wrapEditGraph(egRel));
       }
     }
+    return deleted;
   }
 
   public void delete(VariantGraph vg) {
@@ -184,7 +245,10 @@ public class GraphFactory {
       }
     }
 
-    startNode.getSingleRelationship(VARIANT_GRAPH, INCOMING).delete();
+    final Relationship registration = startNode.getSingleRelationship(VARIANT_GRAPH, INCOMING);
+    if (registration != null) {
+      registration.delete();
+    }
     startNode.getSingleRelationship(VARIANT_GRAPH, OUTGOING).delete();
     for (VariantGraphVertex v : vg.vertices()) {
       for (VariantGraphEdge e : v.incoming()) {
@@ -0,0 +1,300 @@
+package eu.interedition.collatex.parallel;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import eu.interedition.collatex.CollationAlgorithm;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.graph.GraphFactory;
+import eu.interedition.collatex.graph.VariantGraph;
+import eu.interedition.collatex.graph.VariantGraphEdge;
+import eu.interedition.collatex.graph.VariantGraphTransposition;
+import eu.interedition.collatex.graph.VariantGraphVertex;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Collates long witnesses by splitting them at anchor tokens and aligning the resulting segments concurrently.
+ *
+ * <p>Anchors are tokens which occur exactly once in every witness and in the same relative order. Every witness is cut
+ * after each selected anchor, so that a segment ends with the same anchor in all witnesses. The segments are collated
+ * independently on the given executor, each one by a fresh instance of the delegate algorithm and into its own
+ * unregistered graph. The resulting sub-graphs are then stitched together into the target graph in segment order.</p>
+ *
+ * <p>Segmentation only applies when collating several witnesses into an empty graph; otherwise the witnesses are
+ * handed to the delegate algorithm as a whole. As alignments cannot cross anchors, transpositions spanning more than
+ * one segment will not be detected.</p>
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class SegmentingCollationAlgorithm implements CollationAlgorithm {
+  private static final Logger LOG = LoggerFactory.getLogger(SegmentingCollationAlgorithm.class);
+
+  private final GraphFactory graphFactory;
+  private final Comparator<Token> comparator;
+  private final Supplier<CollationAlgorithm> algorithmSupplier;
+  private final ExecutorService executor;
+  private final int minSegmentLength;
+
+  /**
+   * @param graphFactory      the factory used to create intermediate segment graphs; must be the one the target graphs
+   *                          stem from, so that token and witness references resolve identically
+   * @param comparator        the token comparator used to detect anchors; should be the one the delegate algorithms use
+   * @param algorithmSupplier provides a new delegate algorithm instance per segment
+   * @param executor          the executor running segment collations
+   * @param minSegmentLength  the minimal number of tokens every witness must have in a segment before it is closed by
+   *                          an anchor
+   */
+  public SegmentingCollationAlgorithm(GraphFactory graphFactory, Comparator<Token> comparator, Supplier<CollationAlgorithm> algorithmSupplier, ExecutorService executor, int minSegmentLength) {
+    Preconditions.checkArgument(minSegmentLength > 0, "Minimal segment length must be positive");
+    this.graphFactory = graphFactory;
+    this.comparator = comparator;
+    this.algorithmSupplier = algorithmSupplier;
+    this.executor = executor;
+    this.minSegmentLength = minSegmentLength;
+  }
+
+  @Override
+  public void collate(VariantGraph against, Iterable<Token> witness) {
+    algorithmSupplier.get().collate(against, witness);
+  }
+
+  @Override
+  public void collate(VariantGraph against, Iterable<Token>... witnesses) {
+    collate(against, Arrays.asList(witnesses));
+  }
+
+  @Override
+  public void collate(VariantGraph against, List<Iterable<Token>> witnesses) {
+    if (witnesses.size() < 2 || !against.witnesses().isEmpty()) {
+      algorithmSupplier.get().collate(against, witnesses);
+      return;
+    }
+
+    final List<List<Token>> tokens = Lists.newArrayListWithExpectedSize(witnesses.size());
+    for (Iterable<Token> witness : witnesses) {
+      tokens.add(Lists.newArrayList(witness));
+    }
+
+    final List<List<Iterable<Token>>> segments = segment(tokens, anchors(tokens));
+    LOG.debug("{}: Collating {} segment(s)", against, segments.size());
+    if (segments.size() < 2) {
+      algorithmSupplier.get().collate(against, witnesses);
+      return;
+    }
+
+    final List<Future<VariantGraph>> results = Lists.newArrayListWithExpectedSize(segments.size());
+    for (final List<Iterable<Token>> segment : segments) {
+      results.add(executor.submit(new Callable<VariantGraph>() {
+        @Override
+        public VariantGraph call() throws Exception {
+          return collateSegment(segment);
+        }
+      }));
+    }
+
+    final List<VariantGraph> segmentGraphs = Lists.newArrayListWithExpectedSize(segments.size());
+    try {
+      for (Future<VariantGraph> result : results) {
+        segmentGraphs.add(result.get());
+      }
+      stitch(against, segmentGraphs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<VariantGraph> result : results.subList(segmentGraphs.size(), results.size())) {
+        result.cancel(true);
+      }
+      for (VariantGraph segmentGraph : segmentGraphs) {
+        graphFactory.delete(segmentGraph);
+      }
+    }
+  }
+
+  /**
+   * Determines anchor positions, that is tokens occurring exactly once in every witness in the same relative order.
+   *
+   * @return for every anchor, its index in each witness' token list
+   */
+  protected List<int[]> anchors(List<List<Token>> witnesses) {
+    final List<Map<Token, Integer>> positions = Lists.newArrayListWithExpectedSize(witnesses.size());
+    for (List<Token> witness : witnesses) {
+      final Map<Token, Integer> witnessPositions = new TreeMap<Token, Integer>(comparator);
+      final Set<Token> repeated = Sets.newTreeSet(comparator);
+      for (int tc = 0; tc < witness.size(); tc++) {
+        final Token token = witness.get(tc);
+        if (witnessPositions.put(token, tc) != null) {
+          repeated.add(token);
+        }
+      }
+      witnessPositions.keySet().removeAll(repeated);
+      positions.add(witnessPositions);
+    }
+
+    final List<int[]> anchors = Lists.newArrayList();
+    final int[] last = new int[witnesses.size()];
+    Arrays.fill(last, -1);
+    final List<Token> first = witnesses.get(0);
+    for (int tc = 0; tc < first.size(); tc++) {
+      final Token candidate = first.get(tc);
+      final int[] anchor = new int[witnesses.size()];
+      boolean inOrder = true;
+      for (int wc = 0; inOrder && wc < witnesses.size(); wc++) {
+        final Integer position = positions.get(wc).get(candidate);
+        inOrder = (position != null && position > last[wc]);
+        anchor[wc] = (inOrder ? position : -1);
+      }
+      if (inOrder) {
+        anchors.add(anchor);
+        System.arraycopy(anchor, 0, last, 0, anchor.length);
+      }
+    }
+    return anchors;
+  }
+
+  /**
+   * Cuts witnesses after anchors, skipping anchors which would yield segments shorter than the configured minimum.
+   *
+   * <p>The last segment always extends to the end of all witnesses; an anchor which would leave a witness without
+   * tokens in the last segment is not used as a cut.</p>
+   *
+   * @return the segments in witness order, each one containing a non-empty token sequence per witness
+   */
+  protected List<List<Iterable<Token>>> segment(List<List<Token>> witnesses, List<int[]> anchors) {
+    final List<int[]> cuts = Lists.newArrayList();
+    final int[] segmentStart = new int[witnesses.size()];
+    for (int[] anchor : anchors) {
+      boolean cut = true;
+      for (int wc = 0; cut && wc < witnesses.size(); wc++) {
+        cut = (anchor[wc] + 1 - segmentStart[wc]) >= minSegmentLength && (anchor[wc] + 1) < witnesses.get(wc).size();
+      }
+      if (cut) {
+        cuts.add(anchor);
+        for (int wc = 0; wc < witnesses.size(); wc++) {
+          segmentStart[wc] = anchor[wc] + 1;
+        }
+      }
+    }
+
+    final List<List<Iterable<Token>>> segments = Lists.newArrayListWithExpectedSize(cuts.size() + 1);
+    Arrays.fill(segmentStart, 0);
+    for (int[] cut : cuts) {
+      final List<Iterable<Token>> segment = Lists.newArrayListWithExpectedSize(witnesses.size());
+      for (int wc = 0; wc < witnesses.size(); wc++) {
+        segment.add(witnesses.get(wc).subList(segmentStart[wc], cut[wc] + 1));
+        segmentStart[wc] = cut[wc] + 1;
+      }
+      segments.add(segment);
+    }
+    final List<Iterable<Token>> remainder = Lists.newArrayListWithExpectedSize(witnesses.size());
+    for (int wc = 0; wc < witnesses.size(); wc++) {
+      final List<Token> witness = witnesses.get(wc);
+      remainder.add(witness.subList(segmentStart[wc], witness.size()));
+    }
+    segments.add(remainder);
+    return segments;
+  }
+
+  protected VariantGraph collateSegment(List<Iterable<Token>> segment) {
+    VariantGraph graph;
+    Transaction tx = graphFactory.getDatabase().beginTx();
+    try {
+      graph = graphFactory.newUnregisteredVariantGraph();
+      tx.success();
+    } finally {
+      tx.finish();
+    }
+
+    tx = graphFactory.getDatabase().beginTx();
+    try {
+      algorithmSupplier.get().collate(graph, segment);
+      tx.success();
+    } finally {
+      tx.finish();
+    }
+    return graph;
+  }
+
+  protected void stitch(VariantGraph into, List<VariantGraph> segmentGraphs) {
+    final Map<Witness, VariantGraphVertex> last = Maps.newHashMap();
+    for (VariantGraph segmentGraph : segmentGraphs) {
+      final VariantGraphVertex segmentStart = segmentGraph.getStart();
+      final VariantGraphVertex segmentEnd = segmentGraph.getEnd();
+
+      final Map<VariantGraphVertex, VariantGraphVertex> copies = Maps.newHashMap();
+      for (VariantGraphVertex vertex : segmentGraph.vertices()) {
+        if (!vertex.equals(segmentStart) && !vertex.equals(segmentEnd)) {
+          copies.put(vertex, copy(into, vertex));
+        }
+      }
+
+      final List<VariantGraphEdge> endEdges = Lists.newArrayList();
+      for (VariantGraphEdge edge : segmentGraph.edges()) {
+        final VariantGraphVertex from = edge.from();
+        final VariantGraphVertex to = edge.to();
+        final SortedSet<Witness> witnesses = edge.getWitnesses();
+        if (to.equals(segmentEnd)) {
+          endEdges.add(edge);
+        } else if (from.equals(segmentStart)) {
+          for (Witness witness : witnesses) {
+            final VariantGraphVertex previous = last.get(witness);
+            into.connect(previous == null ? into.getStart() : previous, copies.get(to), singleton(witness));
+          }
+        } else {
+          into.connect(copies.get(from), copies.get(to), witnesses);
+        }
+      }
+      for (VariantGraphEdge edge : endEdges) {
+        final VariantGraphVertex from = copies.get(edge.from());
+        if (from != null) {
+          for (Witness witness : edge.getWitnesses()) {
+            last.put(witness, from);
+          }
+        }
+      }
+
+      for (VariantGraphTransposition transposition : segmentGraph.transpositions()) {
+        into.transpose(copies.get(transposition.from()), copies.get(transposition.to()));
+      }
+    }
+
+    for (Map.Entry<Witness, VariantGraphVertex> lastVertex : last.entrySet()) {
+      into.connect(lastVertex.getValue(), into.getEnd(), singleton(lastVertex.getKey()));
+    }
+  }
+
+  private static VariantGraphVertex copy(VariantGraph into, VariantGraphVertex vertex) {
+    final SortedSet<Token> tokens = vertex.tokens();
+    final VariantGraphVertex copy = into.add(tokens.first());
+    if (tokens.size() > 1) {
+      copy.add(Iterables.skip(tokens, 1));
+    }
+    return copy;
+  }
+
+  private static SortedSet<Witness> singleton(Witness witness) {
+    return Sets.newTreeSet(Collections.singleton(witness));
+  }
+}
@@ -22,6 +22,14 @@ public class VariantGraphFactoryTest extends AbstractTest {
     Assert.assertEquals(2, Iterables.size(graphFactory.newVariantGraph().vertices()));
   }
   
+  @Test
+  public void graphsCanBeLookedUp() {
+    final VariantGraph vg = graphFactory.newVariantGraph();
+    Assert.assertEquals(vg, graphFactory.variantGraph(vg.getStart().getNode().getId()));
+    Assert.assertNull(graphFactory.variantGraph(vg.getEnd().getNode().getId()));
+    Assert.assertNull(graphFactory.variantGraph(graphFactory.newUnregisteredVariantGraph().getStart().getNode().getId()));
+  }
+
   @Test
   public void purgeGraphs() {
     final VariantGraph vg = graphFactory.newVariantGraph();
@@ -0,0 +1,81 @@
+package eu.interedition.collatex.parallel;
+
+import com.google.common.base.Supplier;
+import eu.interedition.collatex.AbstractTest;
+import eu.interedition.collatex.CollationAlgorithm;
+import eu.interedition.collatex.CollationAlgorithmFactory;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.graph.VariantGraph;
+import eu.interedition.collatex.input.SimpleWitness;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class SegmentingCollationAlgorithmTest extends AbstractTest {
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void createExecutor() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterClass
+  public static void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void segmentedEqualsUnsegmented() {
+    final SimpleWitness[] w = createWitnesses(
+            "the black cat sat on the mat and the grey dog looked at it from the door",
+            "the white cat sat on a mat while the grey dog looked at it from the window",
+            "a black cat sat on the mat and the dog looked from the door");
+
+    final VariantGraph segmented = graphFactory.newVariantGraph();
+    segmenting(2).collate(segmented, w);
+
+    assertEquals(toString(merge(w).join().toTable()), toString(segmented.join().toTable()));
+  }
+
+  @Test
+  public void anchorsSplitSegments() {
+    final SimpleWitness[] w = createWitnesses("a b c d e f", "a x c d y f");
+    final List<List<Token>> tokens = Arrays.asList(w[0].getTokens(), w[1].getTokens());
+    final SegmentingCollationAlgorithm algorithm = segmenting(1);
+
+    final List<int[]> anchors = algorithm.anchors(tokens);
+    assertEquals(4, anchors.size());
+    assertEquals(4, algorithm.segment(tokens, anchors).size());
+    assertEquals(2, segmenting(2).segment(tokens, anchors).size());
+  }
+
+  @Test
+  public void witnessesAreStitched() {
+    final SimpleWitness[] w = createWitnesses("a b c d e f", "a x c d y f");
+    final VariantGraph graph = graphFactory.newVariantGraph();
+    segmenting(1).collate(graph, w);
+
+    assertEquals("A: |a|b|c|d|e|f|\nB: |a|x|c|d|y|f|\n", toString(graph.toTable()));
+  }
+
+  private static SegmentingCollationAlgorithm segmenting(int minSegmentLength) {
+    return new SegmentingCollationAlgorithm(graphFactory, new EqualityTokenComparator(), new Supplier<CollationAlgorithm>() {
+      @Override
+      public CollationAlgorithm get() {
+        return CollationAlgorithmFactory.dekker(new EqualityTokenComparator());
+      }
+    }, executor, minSegmentLength);
+  }
+}
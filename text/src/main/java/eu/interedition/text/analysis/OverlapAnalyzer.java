@@ -26,6 +26,7 @@ import eu.interedition.text.Annotation;
 import eu.interedition.text.Name;
 import eu.interedition.text.event.AnnotationEventAdapter;
 
+import java.nio.CharBuffer;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
@@ -60,6 +61,10 @@ public class OverlapAnalyzer extends AnnotationEventAdapter {
     Iterables.addAll(started, annotations);
   }
 
+  @Override
+  public void text(long start, long end, CharBuffer text) {
+  }
+
   @Override
   public void end(long offset, Iterable<Annotation> annotations) {
     for (Annotation ending : annotations) {
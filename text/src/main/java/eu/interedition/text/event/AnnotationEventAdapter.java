@@ -23,12 +23,13 @@ import eu.interedition.text.Annotation;
 import eu.interedition.text.Name;
 import eu.interedition.text.Range;
 
+import java.nio.CharBuffer;
 import java.util.Map;
 
 /**
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
  */
-public class AnnotationEventAdapter implements AnnotationEventListener {
+public class AnnotationEventAdapter implements CharBufferAnnotationEventListener {
   public void start() {
   }
 
@@ -44,6 +45,10 @@ public class AnnotationEventAdapter implements AnnotationEventListener {
   public void text(Range r, String text) {
   }
 
+  public void text(long start, long end, CharBuffer text) {
+    text(new Range(start, end), text.toString());
+  }
+
   public void end() {
   }
 }
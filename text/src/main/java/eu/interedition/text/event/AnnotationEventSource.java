@@ -19,31 +19,43 @@
  */
 package eu.interedition.text.event;
 
-import com.google.common.base.Joiner;
-import com.google.common.base.Predicates;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import eu.interedition.text.*;
 import eu.interedition.text.query.Criterion;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.CharBuffer;
 import java.util.*;
 
 import static eu.interedition.text.query.Criteria.*;
 
+/**
+ * Generates events for the annotations of a text in the order of their offsets, interleaved with its content.
+ * <p/>
+ * The annotations are fetched with a single query and swept once in the order of their start offsets; those which
+ * have started are kept in a queue ordered by their end offsets until they end. The content is read in pages of the
+ * given size at most, into a buffer which {@link CharBufferAnnotationEventListener}s get to see without copying.
+ * The collections of annotations passed to listeners are reused as well and only valid during the call.
+ */
 public class AnnotationEventSource {
-  private AnnotationRepository annotationRepository;
-  private TextRepository textRepository;
+  private static final Comparator<Annotation> BY_START = new Comparator<Annotation>() {
+    public int compare(Annotation o1, Annotation o2) {
+      return o1.getRange().compareTo(o2.getRange());
+    }
+  };
 
-  private static final com.google.common.base.Predicate<Annotation> EMPTY = new com.google.common.base.Predicate<Annotation>() {
-    public boolean apply(Annotation input) {
-      return input.getRange().length() == 0;
+  private static final Comparator<Annotation> BY_END = new Comparator<Annotation>() {
+    public int compare(Annotation o1, Annotation o2) {
+      final long end1 = o1.getRange().getEnd();
+      final long end2 = o2.getRange().getEnd();
+      return (end1 < end2 ? -1 : (end1 > end2 ? 1 : 0));
     }
   };
 
+  private AnnotationRepository annotationRepository;
+  private TextRepository textRepository;
+
   public AnnotationEventSource() {
   }
 
@@ -60,77 +72,74 @@ public class AnnotationEventSource {
   }
 
   public void listen(final AnnotationEventListener listener, final int pageSize, final Text text, final Criterion criterion, final Set<Name> dataSet) throws IOException {
+    final List<Annotation> annotations = Lists.newArrayList(annotationRepository.find(and(criterion, text(text)), dataSet));
+    Collections.sort(annotations, BY_START);
+
     textRepository.read(text, new TextConsumer() {
 
       public void read(Reader content, long contentLength) throws IOException {
-        final SortedMap<Long, Set<Annotation>> starts = Maps.newTreeMap();
-        final SortedMap<Long, Set<Annotation>> ends = Maps.newTreeMap();
-
+        final Iterator<Annotation> annotationIt = annotations.iterator();
+        final PriorityQueue<Annotation> ends = new PriorityQueue<Annotation>(Math.max(1, annotations.size()), BY_END);
+        final char[] buf = new char[(int) Math.max(1, Math.min(pageSize, contentLength))];
+        final CharBuffer window = CharBuffer.wrap(buf);
+        final CharBufferAnnotationEventListener windowListener = (listener instanceof CharBufferAnnotationEventListener //
+                ? (CharBufferAnnotationEventListener) listener : null);
+
+        Annotation next = (annotationIt.hasNext() ? annotationIt.next() : null);
         long offset = 0;
-        long next = 0;
-        long pageEnd = 0;
+
+        final List<Annotation> ending = Lists.newArrayList();
+        final List<Annotation> empty = Lists.newArrayList();
+        final List<Annotation> starting = Lists.newArrayList();
 
         listener.start();
 
-        final Set<Annotation> annotationData = Sets.newHashSet();
         while (true) {
-          if ((offset % pageSize) == 0) {
-            pageEnd = Math.min(offset + pageSize, contentLength);
-            final Range pageRange = new Range(offset, pageEnd);
-            final Iterable<Annotation> pageAnnotations = annotationRepository.find(and(criterion, text(text), rangeOverlap(pageRange)), dataSet);
-            for (Annotation a : pageAnnotations) {
-              final long start = a.getRange().getStart();
-              final long end = a.getRange().getEnd();
-              if (start >= offset) {
-                Set<Annotation> starting = starts.get(start);
-                if (starting == null) {
-                  starts.put(start, starting = Sets.newHashSet());
-                }
-                starting.add(a);
-                annotationData.add(a);
-              }
-              if (end <= pageEnd) {
-                Set<Annotation> ending = ends.get(end);
-                if (ending == null) {
-                  ends.put(end, ending = Sets.newHashSet());
-                }
-                ending.add(a);
-                annotationData.add(a);
-              }
+          ending.clear();
+          while (!ends.isEmpty() && ends.peek().getRange().getEnd() == offset) {
+            ending.add(ends.remove());
+          }
+          if (!ending.isEmpty()) listener.end(offset, ending);
+
+          empty.clear();
+          starting.clear();
+          while (next != null && next.getRange().getStart() == offset) {
+            if (next.getRange().length() == 0) {
+              empty.add(next);
+            } else {
+              starting.add(next);
+              ends.add(next);
             }
-
-            next = Math.min(starts.isEmpty() ? contentLength : starts.firstKey(), ends.isEmpty() ? contentLength : ends.firstKey());
+            next = (annotationIt.hasNext() ? annotationIt.next() : null);
           }
+          if (!empty.isEmpty()) listener.empty(offset, empty);
+          if (!starting.isEmpty()) listener.start(offset, starting);
 
-          if (offset == next) {
-            final Set<Annotation> startEvents = (!starts.isEmpty() && offset == starts.firstKey() ? starts.remove(starts.firstKey()) : Sets.<Annotation>newHashSet());
-            final Set<Annotation> endEvents = (!ends.isEmpty() && offset == ends.firstKey() ? ends.remove(ends.firstKey()) : Sets.<Annotation>newHashSet());
-
-            final Set<Annotation> terminating = Sets.filter(endEvents, Predicates.not(EMPTY));
-            if (!terminating.isEmpty()) listener.end(offset, filter(annotationData, terminating, true));
-
-            final Set<Annotation> empty = Sets.filter(startEvents, EMPTY);
-            if (!empty.isEmpty()) listener.empty(offset, filter(annotationData, empty, true));
-
-            final Set<Annotation> starting = Sets.filter(startEvents, Predicates.not(EMPTY));
-            if (!starting.isEmpty()) listener.start(offset, filter(annotationData, starting, false));
-
+          if (offset == contentLength) {
+            break;
+          }
 
-            next = Math.min(starts.isEmpty() ? contentLength : starts.firstKey(), ends.isEmpty() ? contentLength : ends.firstKey());
+          long readTo = Math.min(contentLength, (offset / pageSize + 1) * pageSize);
+          if (!ends.isEmpty()) {
+            readTo = Math.min(readTo, ends.peek().getRange().getEnd());
+          }
+          if (next != null) {
+            readTo = Math.min(readTo, next.getRange().getStart());
           }
 
-          if (offset == contentLength) {
+          final int read = content.read(buf, 0, (int) (readTo - offset));
+          if (read < 0) {
             break;
           }
-
-          final long readTo = Math.min(pageEnd, next);
-          if (offset < readTo) {
-            final char[] currentText = new char[(int) (readTo - offset)];
-            int read = content.read(currentText);
-            if (read > 0) {
-              listener.text(new Range(offset, offset + read), new String(currentText, 0, read));
-              offset += read;
+          if (read > 0) {
+            if (windowListener == null) {
+              listener.text(new Range(offset, offset + read), new String(buf, 0, read));
+            } else {
+              window.clear();
+              window.limit(read);
+              windowListener.text(offset, offset + read, window);
             }
+            offset += read;
           }
         }
 
@@ -138,18 +147,4 @@ public class AnnotationEventSource {
       }
     });
   }
-
-  protected static Iterable<Annotation> filter(Iterable<Annotation> data, Set<Annotation> keys, boolean remove) {
-    final List<Annotation> filtered = Lists.newArrayList();
-    for (Iterator<Annotation> it = data.iterator(); it.hasNext();  ) {
-      final Annotation annotation = it.next();
-      if (keys.contains(annotation)) {
-        filtered.add(annotation);
-        if (remove) {
-          it.remove();
-        }
-      }
-    }
-    return filtered;
-  }
 }
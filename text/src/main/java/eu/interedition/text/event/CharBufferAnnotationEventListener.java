@@ -0,0 +1,41 @@
+/*
+ * #%L
+ * Text: A text model with range-based markup via standoff annotations.
+ * %%
+ * Copyright (C) 2010 - 2011 The Interedition Development Group
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package eu.interedition.text.event;
+
+import java.nio.CharBuffer;
+
+/**
+ * An {@link AnnotationEventListener} which receives the text between annotation events without copying it.
+ * <p/>
+ * {@link AnnotationEventSource} passes such listeners a window onto its read buffer instead of calling
+ * {@link #text(eu.interedition.text.Range, String)}. The window is reused for every segment, so it is only valid
+ * during the call and must not be kept; copy the characters that are needed later.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public interface CharBufferAnnotationEventListener extends AnnotationEventListener {
+
+  /**
+   * @param start the offset of the segment's first character
+   * @param end   the offset after the segment's last character
+   * @param text  the segment, between the buffer's position and limit
+   */
+  void text(long start, long end, CharBuffer text);
+}
@@ -24,12 +24,13 @@ import eu.interedition.text.Annotation;
 import eu.interedition.text.Name;
 import eu.interedition.text.Range;
 
+import java.nio.CharBuffer;
 import java.util.Map;
 
 /**
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
  */
-public class ExceptionPropagatingAnnotationEventAdapter implements AnnotationEventListener {
+public class ExceptionPropagatingAnnotationEventAdapter implements CharBufferAnnotationEventListener {
   public void start() {
     try {
       doStart();
@@ -70,6 +71,14 @@ public class ExceptionPropagatingAnnotationEventAdapter implements AnnotationEve
     }
   }
 
+  public void text(long start, long end, CharBuffer text) {
+    try {
+      doText(start, end, text);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
   public void end() {
     try {
       doEnd();
@@ -93,6 +102,10 @@ public class ExceptionPropagatingAnnotationEventAdapter implements AnnotationEve
   protected void doText(Range r, String text) throws Exception {
   }
 
+  protected void doText(long start, long end, CharBuffer text) throws Exception {
+    doText(new Range(start, end), text.toString());
+  }
+
   protected void doEnd() throws Exception {
   }
 }
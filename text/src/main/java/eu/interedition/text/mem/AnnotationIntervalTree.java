@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * Text: A text model with range-based markup via standoff annotations.
+ * %%
+ * Copyright (C) 2010 - 2011 The Interedition Development Group
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package eu.interedition.text.mem;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The annotations of one name on one text, indexed by their ranges.
+ * <p/>
+ * Annotations are kept in an array sorted by range, which doubles as an implicit, balanced binary search tree: the
+ * middle of every slice is the root of the subtree spanning it. Each node is augmented with the maximum end offset
+ * in its subtree, so that overlap queries skip subtrees ending before the queried range and stop at nodes starting
+ * after it. Additions are buffered and removals leave gaps; the array is rebuilt on the next query once additions
+ * are pending or half of it has been removed, which suits the bulk loads of a parser followed by many queries.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+class AnnotationIntervalTree {
+  private static final Comparator<MemoryAnnotation> ORDERING = new Comparator<MemoryAnnotation>() {
+    @Override
+    public int compare(MemoryAnnotation o1, MemoryAnnotation o2) {
+      final int result = o1.getRange().compareTo(o2.getRange());
+      return (result == 0 ? Ordering.natural().compare(o1.getId(), o2.getId()) : result);
+    }
+  };
+
+  private final List<MemoryAnnotation> added = Lists.newArrayList();
+  private MemoryAnnotation[] annotations = new MemoryAnnotation[0];
+  private long[] starts = new long[0];
+  private long[] ends = new long[0];
+  private long[] maxEnds = new long[0];
+  private int removed = 0;
+
+  synchronized void add(MemoryAnnotation annotation) {
+    added.add(annotation);
+  }
+
+  synchronized boolean remove(MemoryAnnotation annotation) {
+    index();
+    final long start = annotation.getRange().getStart();
+    for (int i = first(start); i < annotations.length && starts[i] == start; i++) {
+      if (annotation.equals(annotations[i])) {
+        annotations[i] = null;
+        removed++;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  synchronized boolean isEmpty() {
+    return (annotations.length - removed + added.size()) == 0;
+  }
+
+  /**
+   * Collects all annotations in range order.
+   */
+  synchronized void all(Collection<MemoryAnnotation> result) {
+    index();
+    for (MemoryAnnotation annotation : annotations) {
+      if (annotation != null) {
+        result.add(annotation);
+      }
+    }
+  }
+
+  /**
+   * Collects the annotations starting before <code>end</code> and ending after <code>start</code>, in range order.
+   */
+  synchronized void overlapping(long start, long end, Collection<MemoryAnnotation> result) {
+    index();
+    overlapping(0, annotations.length, start, end, result);
+  }
+
+  /**
+   * Collects the annotations starting at or after <code>start</code> and ending at or before <code>end</code>, in
+   * range order.
+   */
+  synchronized void fittingWithin(long start, long end, Collection<MemoryAnnotation> result) {
+    index();
+    for (int i = first(start); i < annotations.length && starts[i] <= end; i++) {
+      if (ends[i] <= end && annotations[i] != null) {
+        result.add(annotations[i]);
+      }
+    }
+  }
+
+  private void overlapping(int lo, int hi, long start, long end, Collection<MemoryAnnotation> result) {
+    if (lo >= hi) {
+      return;
+    }
+    final int mid = (lo + hi) >>> 1;
+    if (maxEnds[mid] <= start) {
+      return;
+    }
+    overlapping(lo, mid, start, end, result);
+    if (starts[mid] >= end) {
+      return;
+    }
+    if (ends[mid] > start && annotations[mid] != null) {
+      result.add(annotations[mid]);
+    }
+    overlapping(mid + 1, hi, start, end, result);
+  }
+
+  /**
+   * @return the index of the first annotation starting at or after the given offset
+   */
+  private int first(long start) {
+    int lo = 0;
+    int hi = starts.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (starts[mid] < start) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private void index() {
+    if (added.isEmpty() && removed * 2 <= annotations.length) {
+      return;
+    }
+
+    final List<MemoryAnnotation> sorted = Lists.newArrayListWithExpectedSize(annotations.length - removed + added.size());
+    for (MemoryAnnotation annotation : annotations) {
+      if (annotation != null) {
+        sorted.add(annotation);
+      }
+    }
+    Collections.sort(added, ORDERING);
+    sorted.addAll(added);
+    Collections.sort(sorted, ORDERING);
+    added.clear();
+    removed = 0;
+
+    final int size = sorted.size();
+    annotations = sorted.toArray(new MemoryAnnotation[size]);
+    starts = new long[size];
+    ends = new long[size];
+    maxEnds = new long[size];
+    for (int i = 0; i < size; i++) {
+      starts[i] = annotations[i].getRange().getStart();
+      ends[i] = annotations[i].getRange().getEnd();
+    }
+    augment(0, size);
+  }
+
+  private long augment(int lo, int hi) {
+    if (lo >= hi) {
+      return Long.MIN_VALUE;
+    }
+    final int mid = (lo + hi) >>> 1;
+    return maxEnds[mid] = Math.max(ends[mid], Math.max(augment(lo, mid), augment(mid + 1, hi)));
+  }
+}
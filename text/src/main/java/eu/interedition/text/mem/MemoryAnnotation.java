@@ -0,0 +1,69 @@
+/*
+ * #%L
+ * Text: A text model with range-based markup via standoff annotations.
+ * %%
+ * Copyright (C) 2010 - 2011 The Interedition Development Group
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package eu.interedition.text.mem;
+
+import com.google.common.base.Objects;
+import eu.interedition.text.Annotation;
+import eu.interedition.text.Name;
+import eu.interedition.text.Range;
+import eu.interedition.text.Text;
+import eu.interedition.text.util.Annotations;
+
+import java.util.Map;
+
+/**
+ * An annotation held by a {@link MemoryAnnotationRepository}; identified by its id like its relational counterpart.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class MemoryAnnotation extends SimpleAnnotation {
+  protected final long id;
+
+  public MemoryAnnotation(Text text, Name name, Range range, Map<Name, String> data, long id) {
+    super(text, name, range, data);
+    this.id = id;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj != null && obj instanceof MemoryAnnotation) {
+      return id == ((MemoryAnnotation) obj).id;
+    }
+    return super.equals(obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(id);
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper().addValue(getId()).toString();
+  }
+
+  public int compareTo(Annotation o) {
+    return Annotations.compare(this, o).compare(id, ((MemoryAnnotation) o).id).result();
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * #%L
+ * Text: A text model with range-based markup via standoff annotations.
+ * %%
+ * Copyright (C) 2010 - 2011 The Interedition Development Group
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package eu.interedition.text.mem;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import eu.interedition.text.*;
+import eu.interedition.text.query.*;
+import eu.interedition.text.util.AbstractAnnotationRepository;
+import eu.interedition.text.util.Names;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Predicates.in;
+
+/**
+ * Keeps annotations on the heap, indexed per text and name in an {@link AnnotationIntervalTree}.
+ * <p/>
+ * Queries are answered in two steps: the text, name and range constraints the criterion imposes on every match
+ * select the indexes to visit and the range query to run on them; the candidates found are then filtered by the
+ * criterion as a whole, with the same semantics as {@link eu.interedition.text.rdbms.RelationalQueryCriteriaTranslator}.
+ * Requires a {@link MemoryTextRepository}, which holds the indexes along with the texts.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class MemoryAnnotationRepository extends AbstractAnnotationRepository {
+  private final AtomicLong annotationIds = new AtomicLong();
+  private MemoryTextRepository memoryTextRepository;
+
+  public Iterable<Annotation> create(Iterable<Annotation> annotations) {
+    final List<Annotation> created = Lists.newArrayList();
+    for (Annotation a : annotations) {
+      final MemoryTextRepository.Record record = memoryTextRepository.record(a.getText());
+      Preconditions.checkArgument(record != null, "%s does not exist", a.getText());
+
+      final MemoryAnnotation annotation = new MemoryAnnotation(record.text, a.getName(), a.getRange(), Maps.newHashMap(a.getData()), annotationIds.incrementAndGet());
+      final Name key = key(a.getName());
+      AnnotationIntervalTree tree = record.annotations.get(key);
+      if (tree == null) {
+        final AnnotationIntervalTree existing = record.annotations.putIfAbsent(key, tree = new AnnotationIntervalTree());
+        tree = (existing == null ? tree : existing);
+      }
+      tree.add(annotation);
+      created.add(annotation);
+    }
+    return created;
+  }
+
+  public void delete(Iterable<Annotation> annotations) {
+    for (Annotation a : annotations) {
+      final MemoryTextRepository.Record record = memoryTextRepository.record(a.getText());
+      final AnnotationIntervalTree tree = (record == null ? null : record.annotations.get(key(a.getName())));
+      if (tree != null) {
+        tree.remove((MemoryAnnotation) a);
+      }
+    }
+  }
+
+  public void delete(Criterion criterion) {
+    delete(Collections.<Annotation>unmodifiableList(select(criterion)));
+  }
+
+  public void scroll(Criterion criterion, AnnotationConsumer consumer) {
+    for (Annotation annotation : select(criterion)) {
+      consumer.consume(annotation);
+    }
+  }
+
+  public void scroll(Criterion criterion, Set<Name> names, AnnotationConsumer consumer) {
+    if (names != null && names.isEmpty()) {
+      scroll(criterion, consumer);
+      return;
+    }
+    for (MemoryAnnotation a : select(criterion)) {
+      consumer.consume(names == null ? a : new MemoryAnnotation(a.getText(), a.getName(), a.getRange(),//
+              Maps.newHashMap(Maps.filterKeys(a.getData(), in(names))), a.getId()));
+    }
+  }
+
+  @Override
+  protected SortedSet<Name> getNames(Text text) {
+    final SortedSet<Name> names = Sets.newTreeSet();
+    final MemoryTextRepository.Record record = memoryTextRepository.record(text);
+    if (record != null) {
+      for (Map.Entry<Name, AnnotationIntervalTree> index : record.annotations.entrySet()) {
+        if (!index.getValue().isEmpty()) {
+          names.add(index.getKey());
+        }
+      }
+    }
+    return names;
+  }
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    super.afterPropertiesSet();
+    Preconditions.checkState(textRepository instanceof MemoryTextRepository, "Requires a " + MemoryTextRepository.class.getSimpleName());
+    this.memoryTextRepository = (MemoryTextRepository) textRepository;
+  }
+
+  protected List<MemoryAnnotation> select(Criterion criterion) {
+    final List<MemoryAnnotation> selected = Lists.newArrayList();
+    final Restriction restriction = restrict(criterion);
+    if (restriction.none) {
+      return selected;
+    }
+
+    final List<MemoryTextRepository.Record> records = Lists.newArrayList();
+    if (restriction.texts == null) {
+      records.addAll(memoryTextRepository.records());
+    } else {
+      for (Text text : restriction.texts) {
+        final MemoryTextRepository.Record record = memoryTextRepository.record(text);
+        if (record != null) {
+          records.add(record);
+        }
+      }
+    }
+
+    final List<MemoryAnnotation> candidates = Lists.newArrayList();
+    for (MemoryTextRepository.Record record : records) {
+      if (restriction.name == null) {
+        for (AnnotationIntervalTree tree : record.annotations.values()) {
+          restriction.query(tree, candidates);
+        }
+      } else {
+        final AnnotationIntervalTree tree = record.annotations.get(restriction.name);
+        if (tree != null) {
+          restriction.query(tree, candidates);
+        }
+      }
+
+      final MemoryText text = record.text;
+      for (MemoryAnnotation candidate : candidates) {
+        if (matches(criterion, candidate)) {
+          selected.add(candidate.getText() == text ? candidate : new MemoryAnnotation(text, candidate.getName(),//
+                  candidate.getRange(), candidate.getData(), candidate.getId()));
+        }
+      }
+      candidates.clear();
+    }
+    return selected;
+  }
+
+  private Restriction restrict(Criterion criterion) {
+    final Restriction restriction = new Restriction();
+    if (criterion instanceof AndOperator) {
+      final List<Criterion> operands = ((Operator) criterion).getOperands();
+      Preconditions.checkArgument(!operands.isEmpty());
+      for (Criterion operand : operands) {
+        final Restriction r = restrict(operand);
+        restriction.none |= r.none;
+        if (r.texts != null) {
+          restriction.texts = (restriction.texts == null ? r.texts : Sets.newHashSet(Sets.intersection(restriction.texts, r.texts)));
+        }
+        if (r.name != null) {
+          restriction.none |= (restriction.name != null && !restriction.name.equals(r.name));
+          restriction.name = r.name;
+        }
+        restriction.overlap = (restriction.overlap == null ? r.overlap : restriction.overlap);
+        restriction.fitsWithin = (restriction.fitsWithin == null ? r.fitsWithin : restriction.fitsWithin);
+      }
+    } else if (criterion instanceof OrOperator) {
+      final List<Criterion> operands = ((Operator) criterion).getOperands();
+      Preconditions.checkArgument(!operands.isEmpty());
+      restriction.none = true;
+      restriction.texts = Sets.newHashSet();
+      for (Criterion operand : operands) {
+        final Restriction r = restrict(operand);
+        if (r.none) {
+          continue;
+        }
+        restriction.none = false;
+        if (restriction.texts != null) {
+          if (r.texts == null) {
+            restriction.texts = null;
+          } else {
+            restriction.texts.addAll(r.texts);
+          }
+        }
+      }
+    } else if (criterion instanceof TextCriterion) {
+      restriction.texts = Collections.singleton(((TextCriterion) criterion).getText());
+    } else if (criterion instanceof AnnotationNameCriterion) {
+      restriction.name = key(((AnnotationNameCriterion) criterion).getName());
+    } else if (criterion instanceof RangeOverlapCriterion) {
+      restriction.overlap = ((RangeOverlapCriterion) criterion).getRange();
+    } else if (criterion instanceof RangeFitsWithinCriterion) {
+      restriction.fitsWithin = ((RangeFitsWithinCriterion) criterion).getRange();
+    } else if (criterion instanceof AnnotationIdentityCriterion) {
+      final Annotation annotation = ((AnnotationIdentityCriterion) criterion).getAnnotation();
+      restriction.texts = Collections.singleton(annotation.getText());
+      restriction.name = key(annotation.getName());
+      restriction.fitsWithin = annotation.getRange();
+    } else if (criterion instanceof NoneCriterion) {
+      restriction.none = true;
+    } else if (!(criterion instanceof AnyCriterion || criterion instanceof RangeLengthCriterion)) {
+      throw new IllegalArgumentException(Objects.toStringHelper(criterion).toString());
+    }
+    return restriction;
+  }
+
+  protected boolean matches(Criterion criterion, Annotation annotation) {
+    if (criterion instanceof AndOperator) {
+      for (Criterion operand : ((Operator) criterion).getOperands()) {
+        if (!matches(operand, annotation)) {
+          return false;
+        }
+      }
+      return true;
+    } else if (criterion instanceof OrOperator) {
+      for (Criterion operand : ((Operator) criterion).getOperands()) {
+        if (matches(operand, annotation)) {
+          return true;
+        }
+      }
+      return false;
+    } else if (criterion instanceof AnnotationNameCriterion) {
+      return Names.equal(annotation.getName(), ((AnnotationNameCriterion) criterion).getName());
+    } else if (criterion instanceof TextCriterion) {
+      return annotation.getText().equals(((TextCriterion) criterion).getText());
+    } else if (criterion instanceof RangeOverlapCriterion) {
+      final Range range = ((RangeOverlapCriterion) criterion).getRange();
+      return (annotation.getRange().getStart() < range.getEnd() && annotation.getRange().getEnd() > range.getStart());
+    } else if (criterion instanceof RangeFitsWithinCriterion) {
+      final Range range = ((RangeFitsWithinCriterion) criterion).getRange();
+      return (annotation.getRange().getStart() >= range.getStart() && annotation.getRange().getEnd() <= range.getEnd());
+    } else if (criterion instanceof RangeLengthCriterion) {
+      return (annotation.getRange().length() == ((RangeLengthCriterion) criterion).getLength());
+    } else if (criterion instanceof AnnotationIdentityCriterion) {
+      return annotation.equals(((AnnotationIdentityCriterion) criterion).getAnnotation());
+    } else if (criterion instanceof AnyCriterion) {
+      return true;
+    } else if (criterion instanceof NoneCriterion) {
+      return false;
+    } else {
+      throw new IllegalArgumentException(Objects.toStringHelper(criterion).toString());
+    }
+  }
+
+  private static Name key(Name name) {
+    return new SimpleName(name.getNamespace(), name.getLocalName());
+  }
+
+  /**
+   * The constraints a criterion imposes on every annotation it matches; <code>null</code> where it imposes none.
+   */
+  private static class Restriction {
+    private boolean none;
+    private Set<Text> texts;
+    private Name name;
+    private Range overlap;
+    private Range fitsWithin;
+
+    private void query(AnnotationIntervalTree tree, List<MemoryAnnotation> candidates) {
+      if (fitsWithin != null) {
+        tree.fittingWithin(fitsWithin.getStart(), fitsWithin.getEnd(), candidates);
+      } else if (overlap != null) {
+        tree.overlapping(overlap.getStart(), overlap.getEnd(), candidates);
+      } else {
+        tree.all(candidates);
+      }
+    }
+  }
+}
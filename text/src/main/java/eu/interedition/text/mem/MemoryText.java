@@ -0,0 +1,63 @@
+/*
+ * #%L
+ * Text: A text model with range-based markup via standoff annotations.
+ * %%
+ * Copyright (C) 2010 - 2011 The Interedition Development Group
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package eu.interedition.text.mem;
+
+import com.google.common.base.Objects;
+
+/**
+ * A text held by a {@link MemoryTextRepository}; instances returned for the same text compare equal by its id.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class MemoryText extends SimpleText {
+  protected final long id;
+
+  public MemoryText(Type type, long length, byte[] digest, String content, long id) {
+    super(type, length, digest, content);
+    this.id = id;
+  }
+
+  public MemoryText(Type type, String content, long id) {
+    super(type, content);
+    this.id = id;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper().add("id", Long.toString(id)).toString();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj != null && obj instanceof MemoryText) {
+      return id == ((MemoryText) obj).id;
+    }
+    return super.equals(obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(id);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * Text: A text model with range-based markup via standoff annotations.
+ * %%
+ * Copyright (C) 2010 - 2011 The Interedition Development Group
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package eu.interedition.text.mem;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Closeables;
+import eu.interedition.text.Name;
+import eu.interedition.text.Range;
+import eu.interedition.text.Text;
+import eu.interedition.text.TextConsumer;
+import eu.interedition.text.util.AbstractTextRepository;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static eu.interedition.text.util.TextDigestingFilterReader.NULL_DIGEST;
+
+/**
+ * Keeps texts on the heap, for transient texts which do not need to outlive a parse-transform-serialise pipeline.
+ * <p/>
+ * A text's record also holds the annotation indexes of a {@link MemoryAnnotationRepository}, so that deleting the
+ * text deletes its annotations as well, like the cascade in the relational schema.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class MemoryTextRepository extends AbstractTextRepository {
+  private final AtomicLong textIds = new AtomicLong();
+  private final ConcurrentMap<Long, Record> records = new ConcurrentHashMap<Long, Record>();
+
+  public Text create(Text.Type type) {
+    final MemoryText text = new MemoryText(type, 0, NULL_DIGEST, "", textIds.incrementAndGet());
+    records.put(text.getId(), new Record(text));
+    return text;
+  }
+
+  public void delete(Text text) {
+    records.remove(((MemoryText) text).getId());
+  }
+
+  public Text write(Text text, Reader content) throws IOException {
+    final Record record = existing(text);
+    return record.text = new MemoryText(text.getType(), CharStreams.toString(content), record.text.getId());
+  }
+
+  public Text write(Text text, Reader contents, long contentLength) throws IOException {
+    return write(text, contents);
+  }
+
+  public void read(Text text, TextConsumer consumer) throws IOException {
+    final String content = existing(text).text.getContent();
+    Reader contentReader = null;
+    try {
+      consumer.read(contentReader = new StringReader(content), content.length());
+    } finally {
+      Closeables.close(contentReader, false);
+    }
+  }
+
+  public void read(Text text, Range range, TextConsumer consumer) throws IOException {
+    final String content = existing(text).text.getContent();
+    Reader contentReader = null;
+    try {
+      consumer.read(contentReader = new StringReader(content.substring((int) range.getStart(), (int) range.getEnd())), range.length());
+    } finally {
+      Closeables.close(contentReader, false);
+    }
+  }
+
+  public SortedMap<Range, String> bulkRead(Text text, SortedSet<Range> ranges) throws IOException {
+    final String content = existing(text).text.getContent();
+    final SortedMap<Range, String> results = Maps.newTreeMap();
+    for (Range range : ranges) {
+      results.put(range, content.substring((int) range.getStart(), (int) range.getEnd()));
+    }
+    return results;
+  }
+
+  public Text concat(Iterable<Text> texts) throws IOException {
+    final StringBuilder content = new StringBuilder();
+    for (Text text : texts) {
+      content.append(existing(text).text.getContent());
+    }
+    return create(new StringReader(content.toString()));
+  }
+
+  Record record(Text text) {
+    return records.get(((MemoryText) text).getId());
+  }
+
+  Collection<Record> records() {
+    return records.values();
+  }
+
+  private Record existing(Text text) {
+    final Record record = record(text);
+    Preconditions.checkArgument(record != null, "%s does not exist", text);
+    return record;
+  }
+
+  /**
+   * The current version of a text along with the annotations on it.
+   */
+  static class Record {
+    volatile MemoryText text;
+    final ConcurrentMap<Name, AnnotationIntervalTree> annotations = new ConcurrentHashMap<Name, AnnotationIntervalTree>();
+
+    Record(MemoryText text) {
+      this.text = text;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * Text: A text model with range-based markup via standoff annotations.
+ * %%
+ * Copyright (C) 2010 - 2011 The Interedition Development Group
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package eu.interedition.text.rdbms;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Moves the content of texts stored before it was kept in chunks into <code>text_content_chunk</code>, one chunk per
+ * text, and drops the former <code>text_content.content</code> column.
+ * <p/>
+ * Called from the H2 schema script, as H2 cannot drop a column only if it exists; the MySQL script does the same in
+ * SQL.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class RelationalTextContentMigration {
+
+  public static void migrate(Connection connection) throws SQLException {
+    final ResultSet columns = connection.getMetaData().getColumns(null, null, "TEXT_CONTENT", "CONTENT");
+    try {
+      if (!columns.next()) {
+        return;
+      }
+    } finally {
+      columns.close();
+    }
+
+    final Statement stmt = connection.createStatement();
+    try {
+      stmt.executeUpdate("insert into text_content_chunk (text, ordinal, char_offset, content) " +
+              "select id, 0, 0, content from text_content " +
+              "where content_length > 0 and id not in (select text from text_content_chunk)");
+      stmt.executeUpdate("alter table text_content drop column content");
+    } finally {
+      stmt.close();
+    }
+  }
+}
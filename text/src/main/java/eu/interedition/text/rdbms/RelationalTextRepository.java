@@ -19,13 +19,13 @@
  */
 package eu.interedition.text.rdbms;
 
-import com.google.common.base.Throwables;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.CharStreams;
 import com.google.common.io.Closeables;
-import com.google.common.io.FileBackedOutputStream;
+import com.google.common.io.InputSupplier;
 import eu.interedition.text.Range;
 import eu.interedition.text.Text;
 import eu.interedition.text.TextConsumer;
@@ -34,10 +34,9 @@ import eu.interedition.text.util.SQL;
 import eu.interedition.text.util.TextDigestingFilterReader;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Required;
-import org.springframework.dao.DataAccessException;
 import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
@@ -45,11 +44,7 @@ import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer
 import javax.sql.DataSource;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.sql.Clob;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
@@ -61,10 +56,18 @@ import java.util.SortedSet;
 
 import static eu.interedition.text.util.TextDigestingFilterReader.NULL_DIGEST;
 
+/**
+ * Stores text content in consecutive chunks of a fixed number of characters, each one keyed by its ordinal and
+ * the offset of its first character. Range reads thereby only fetch the chunks overlapping the requested range
+ * instead of streaming the content from its beginning. A chunk ends one character early rather than split a
+ * surrogate pair.
+ */
 public class RelationalTextRepository extends AbstractTextRepository implements InitializingBean {
+  private static final int CHUNK_BATCH_SIZE = 16;
 
   private DataSource dataSource;
   private RelationalDatabaseKeyFactory keyFactory;
+  private int chunkSize = 16384;
 
   private JdbcTemplate jt;
   private SimpleJdbcInsert textInsert;
@@ -80,6 +83,16 @@ public class RelationalTextRepository extends AbstractTextRepository implements
     this.keyFactory = keyFactory;
   }
 
+  /**
+   * Sets the number of characters stored per chunk of text content; it only affects texts written afterwards.
+   *
+   * @param chunkSize the chunk size in characters, 16384 by default
+   */
+  public void setChunkSize(int chunkSize) {
+    Preconditions.checkArgument(chunkSize > 0);
+    this.chunkSize = chunkSize;
+  }
+
   public void afterPropertiesSet() throws Exception {
     this.jt = (dataSource == null ? null : new JdbcTemplate(dataSource));
     this.textInsert = (jt == null ? null : new SimpleJdbcInsert(dataSource).withTableName("text_content"));
@@ -92,7 +105,6 @@ public class RelationalTextRepository extends AbstractTextRepository implements
     final Map<String, Object> textData = Maps.newHashMap();
     textData.put("id", id);
     textData.put("type", type.ordinal());
-    textData.put("content", "");
     textData.put("content_length", 0);
     textData.put("content_digest", NULL_DIGEST);
 
@@ -102,138 +114,138 @@ public class RelationalTextRepository extends AbstractTextRepository implements
   }
 
   public Text write(Text text, Reader content) throws IOException {
-    final FileBackedOutputStream buf = createBuffer();
-    CountingWriter tempWriter = null;
-    try {
-      CharStreams.copy(content, tempWriter = new CountingWriter(new OutputStreamWriter(buf, Text.CHARSET)));
-    } finally {
-      Closeables.close(tempWriter, false);
+    final long id = ((RelationalText) text).getId();
+    final TextDigestingFilterReader digestingFilterReader = new TextDigestingFilterReader(new BufferedReader(content));
+
+    jt.update("delete from text_content_chunk where text = ?", id);
+
+    final List<Object[]> batch = Lists.newArrayListWithExpectedSize(CHUNK_BATCH_SIZE);
+    final char[] buf = new char[chunkSize];
+    long length = 0;
+    int ordinal = 0;
+    int carried = 0;
+    int read;
+    while ((read = fill(digestingFilterReader, buf, carried)) > 0) {
+      // end the chunk early instead of splitting a surrogate pair
+      final boolean splitsPair = (read == buf.length && read > 1 && Character.isHighSurrogate(buf[read - 1]));
+      final int chunkLength = (splitsPair ? read - 1 : read);
+      batch.add(new Object[] { id, ordinal++, length, new String(buf, 0, chunkLength) });
+      length += chunkLength;
+      carried = read - chunkLength;
+      if (carried > 0) {
+        buf[0] = buf[chunkLength];
+      }
+      if (batch.size() == CHUNK_BATCH_SIZE) {
+        insertChunks(batch);
+      }
     }
+    insertChunks(batch);
 
-    Reader bufReader = null;
-    try {
-      return write(text, bufReader = new InputStreamReader(buf.getSupplier().getInput(), Text.CHARSET), tempWriter.length);
-    } finally {
-      Closeables.close(bufReader, false);
-    }
+    final byte[] digest = digestingFilterReader.digest();
+    jt.update("update text_content set content_length = ?, content_digest = ? where id = ?", length, digest, id);
+    return new RelationalText(text.getType(), length, digest, id);
   }
 
   public void delete(Text text) {
     jt.update("delete from text_content where id = ?", ((RelationalText) text).getId());
   }
 
-  public void read(Text text, final TextConsumer consumer) throws IOException {
-    read(new ReaderCallback<Void>(text) {
-
-      @Override
-      protected Void read(Clob content) throws SQLException, IOException {
-        Reader contentReader = null;
-        try {
-          consumer.read(contentReader = content.getCharacterStream(), content.length());
-        } catch (IOException e) {
-          Throwables.propagate(e);
-        } finally {
-          Closeables.close(contentReader, false);
-        }
-        return null;
-      }
-    });
+  public void read(Text text, TextConsumer consumer) throws IOException {
+    final long id = ((RelationalText) text).getId();
+    final long length = jt.queryForLong("select content_length from text_content where id = ?", id);
+    Reader contentReader = null;
+    try {
+      consumer.read(contentReader = new ChunkReader(id, new Range(0, length)), length);
+    } finally {
+      Closeables.close(contentReader, false);
+    }
   }
 
-  public void read(Text text, final Range range, final TextConsumer consumer) throws IOException {
-    read(new ReaderCallback<Void>(text) {
-
-      @Override
-      protected Void read(Clob content) throws SQLException, IOException {
-        Reader contentReader = null;
-        try {
-          consumer.read(contentReader = new RangeFilteringReader(content.getCharacterStream(), range), range.length());
-        } catch (IOException e) {
-          Throwables.propagate(e);
-        } finally {
-          Closeables.close(contentReader, false);
-        }
-        return null;
-      }
-    });
+  public void read(Text text, Range range, TextConsumer consumer) throws IOException {
+    Reader contentReader = null;
+    try {
+      consumer.read(contentReader = new ChunkReader(((RelationalText) text).getId(), range), range.length());
+    } finally {
+      Closeables.close(contentReader, false);
+    }
   }
 
-  public SortedMap<Range, String> bulkRead(Text text, final SortedSet<Range> ranges) throws IOException {
+  /**
+   * Reads ranges lying within one chunk of each other with a single query and slices them from the fetched
+   * content afterwards.
+   */
+  public SortedMap<Range, String> bulkRead(Text text, SortedSet<Range> ranges) throws IOException {
+    final long id = ((RelationalText) text).getId();
     final SortedMap<Range, String> results = Maps.newTreeMap();
-    read(new ReaderCallback<Void>(text) {
-
-      @Override
-      protected Void read(Clob content) throws SQLException, IOException {
-        for (Range range : ranges) {
-          results.put(range, content.getSubString(range.getStart() + 1, (int) range.length()));
-        }
-        return null;
+    final List<Range> cluster = Lists.newArrayList();
+    long clusterEnd = 0;
+    for (Range range : ranges) {
+      if (!cluster.isEmpty() && range.getStart() >= clusterEnd + chunkSize) {
+        bulkRead(id, cluster, clusterEnd, results);
+        cluster.clear();
       }
-    });
+      clusterEnd = (cluster.isEmpty() ? range.getEnd() : Math.max(clusterEnd, range.getEnd()));
+      cluster.add(range);
+    }
+    if (!cluster.isEmpty()) {
+      bulkRead(id, cluster, clusterEnd, results);
+    }
     return results;
   }
 
-  public Text write(final Text text, final Reader contents, final long contentLength) throws IOException {
-    final long id = ((RelationalText) text).getId();
-    final TextDigestingFilterReader digestingFilterReader = new TextDigestingFilterReader(new BufferedReader(contents));
-    jt.execute("update text_content set content = ?, content_length = ? where id = ?", new PreparedStatementCallback<Void>() {
-      public Void doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
-        ps.setCharacterStream(1, digestingFilterReader, contentLength);
-        ps.setLong(2, contentLength);
-        ps.setLong(3, id);
-        ps.executeUpdate();
-        return null;
-      }
-    });
-    final byte[] digest = digestingFilterReader.digest();
-    jt.update("update text_content set content_digest = ? where id = ?", digest, id);
-    return new RelationalText(text.getType(), contentLength, digest, id);
+  public Text write(Text text, Reader contents, long contentLength) throws IOException {
+    return write(text, contents);
   }
 
   @Override
   public Text concat(Iterable<Text> texts) throws IOException {
-    final FileBackedOutputStream buf = createBuffer();
-    final OutputStreamWriter bufWriter = new OutputStreamWriter(buf, Text.CHARSET);
-    try {
-      for (Text text : texts) {
-        read(new ReaderCallback<Void>(text) {
-          @Override
-          protected Void read(Clob content) throws SQLException, IOException {
-            Reader reader = null;
-            try {
-              CharStreams.copy(reader = content.getCharacterStream(), bufWriter);
-            } finally {
-              Closeables.close(reader, false);
-            }
-            return null;
-          }
-        });
-      }
-    } finally {
-       Closeables.close(bufWriter, false);
+    final List<InputSupplier<Reader>> contents = Lists.newArrayList();
+    for (Text text : texts) {
+      final long id = ((RelationalText) text).getId();
+      contents.add(new InputSupplier<Reader>() {
+        public Reader getInput() throws IOException {
+          return new ChunkReader(id, new Range(0, Long.MAX_VALUE));
+        }
+      });
     }
 
     Reader reader = null;
     try {
-      return create(reader = new InputStreamReader(buf.getSupplier().getInput(), Text.CHARSET));
+      return create(reader = CharStreams.join(contents).getInput());
     } finally {
       Closeables.closeQuietly(reader);
-      buf.reset();
     }
   }
 
-  private <T> T read(final ReaderCallback<T> callback) {
-    return DataAccessUtils.requiredUniqueResult(jt.query("select content from text_content where id = ?",
-            new RowMapper<T>() {
+  private void bulkRead(long id, List<Range> cluster, long end, SortedMap<Range, String> results) throws IOException {
+    final long start = cluster.get(0).getStart();
+    String content;
+    Reader contentReader = null;
+    try {
+      content = CharStreams.toString(contentReader = new ChunkReader(id, new Range(start, end)));
+    } finally {
+      Closeables.close(contentReader, false);
+    }
+    for (Range range : cluster) {
+      final int rangeStart = (int) Math.min(range.getStart() - start, content.length());
+      final int rangeEnd = (int) Math.min(range.getEnd() - start, content.length());
+      results.put(range, content.substring(rangeStart, rangeEnd));
+    }
+  }
 
-              public T mapRow(ResultSet rs, int rowNum) throws SQLException {
-                try {
-                  return callback.read(rs.getClob(1));
-                } catch (IOException e) {
-                  throw new SQLException(e);
-                }
-              }
-            }, callback.text.getId()));
+  private void insertChunks(List<Object[]> batch) {
+    if (!batch.isEmpty()) {
+      jt.batchUpdate("insert into text_content_chunk (text, ordinal, char_offset, content) values (?, ?, ?, ?)", batch);
+      batch.clear();
+    }
+  }
+
+  private static int fill(Reader reader, char[] buf, int filled) throws IOException {
+    int read;
+    while (filled < buf.length && (read = reader.read(buf, filled, buf.length - filled)) >= 0) {
+      filled += read;
+    }
+    return filled;
   }
 
   public List<Text> load(Iterable<Long> ids) {
@@ -274,13 +286,73 @@ public class RelationalTextRepository extends AbstractTextRepository implements
             rs.getLong(prefix + "_id"));
   }
 
-  private abstract class ReaderCallback<T> {
-    private final RelationalText text;
+  /**
+   * Streams a range of a text's content, locating the chunk it starts in via the chunk offsets and fetching the
+   * following chunks in batches, until the end of the range or of the content is reached.
+   */
+  private class ChunkReader extends Reader {
+    private final long text;
+    private final long end;
+    private final List<String> chunks = Lists.newArrayListWithExpectedSize(CHUNK_BATCH_SIZE);
+    private int nextOrdinal;
+    private int current;
+    private int position;
+    private long offset;
+
+    private ChunkReader(long text, Range range) {
+      this.text = text;
+      this.offset = range.getStart();
+      this.end = range.getEnd();
+      this.nextOrdinal = jt.queryForInt("select coalesce(max(ordinal), 0) from text_content_chunk " +
+              "where text = ? and char_offset <= ?", text, offset);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int read = 0;
+      while (read < len && offset < end) {
+        if (current >= chunks.size() && !fetch()) {
+          break;
+        }
+        final String chunk = chunks.get(current);
+        if (position >= chunk.length()) {
+          position -= chunk.length();
+          current++;
+          continue;
+        }
+        final int length = (int) Math.min(Math.min(len - read, chunk.length() - position), end - offset);
+        chunk.getChars(position, position + length, cbuf, off + read);
+        position += length;
+        offset += length;
+        read += length;
+      }
+      return (read == 0 ? -1 : read);
+    }
 
-    private ReaderCallback(Text text) {
-      this.text = (RelationalText) text;
+    private boolean fetch() {
+      chunks.clear();
+      current = 0;
+      jt.query("select char_offset, content from text_content_chunk " +
+              "where text = ? and ordinal >= ? and ordinal < ? and char_offset < ? order by ordinal",
+              new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                  if (chunks.isEmpty()) {
+                    position = (int) (offset - rs.getLong(1));
+                  }
+                  chunks.add(rs.getString(2));
+                }
+              }, text, nextOrdinal, nextOrdinal + CHUNK_BATCH_SIZE, end);
+      nextOrdinal += chunks.size();
+      return !chunks.isEmpty();
     }
 
-    protected abstract T read(Clob content) throws SQLException, IOException;
+    @Override
+    public void close() throws IOException {
+      chunks.clear();
+      offset = end;
+    }
   }
 }
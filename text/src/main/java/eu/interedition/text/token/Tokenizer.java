@@ -21,14 +21,15 @@ package eu.interedition.text.token;
 
 import com.google.common.collect.Lists;
 import eu.interedition.text.*;
-import eu.interedition.text.event.AnnotationEventListener;
 import eu.interedition.text.event.AnnotationEventSource;
+import eu.interedition.text.event.CharBufferAnnotationEventListener;
 import eu.interedition.text.mem.SimpleAnnotation;
 import eu.interedition.text.mem.SimpleName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -74,7 +75,7 @@ public class Tokenizer {
     eventSource.listen(new TokenGeneratingListener(text, settings), pageSize, text, none(), Collections.<Name>emptySet());
   }
 
-  private class TokenGeneratingListener implements AnnotationEventListener {
+  private class TokenGeneratingListener implements CharBufferAnnotationEventListener {
     private final TokenizerSettings settings;
     private final Text text;
 
@@ -117,7 +118,13 @@ public class Tokenizer {
 
     @Override
     public void text(Range r, String content) {
-      for (char c : content.toCharArray()) {
+      text(r.getStart(), r.getEnd(), CharBuffer.wrap(content));
+    }
+
+    @Override
+    public void text(long start, long end, CharBuffer content) {
+      while (content.hasRemaining()) {
+        final char c = content.get();
         if (settings.isBoundary(text, offset, c)) {
           lastIsTokenBoundary = true;
         } else {
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetEncoder;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -25,6 +26,11 @@ public class TextDigestingFilterReader extends FilterReader {
   public byte[] result;
   public CharsetEncoder encoder;
 
+  /**
+   * A high surrogate read last, held back until the low surrogate following it is read.
+   */
+  private int highSurrogate = -1;
+
   public TextDigestingFilterReader(Reader in) {
     super(in);
     try {
@@ -39,7 +45,9 @@ public class TextDigestingFilterReader extends FilterReader {
   public int read() throws IOException {
     final int read = super.read();
     if (read >= 0) {
-      digest.update(encoder.encode(CharBuffer.wrap(new char[]{(char) read})));
+      update(new char[]{(char) read}, 0, 1);
+    } else {
+      flush();
     }
     return read;
   }
@@ -47,21 +55,57 @@ public class TextDigestingFilterReader extends FilterReader {
   @Override
   public int read(char[] cbuf, int off, int len) throws IOException {
     final int read = super.read(cbuf, off, len);
-    if (read >= 0) {
-      digest.update(encoder.encode(CharBuffer.wrap(cbuf, off, len)));
+    if (read > 0) {
+      update(cbuf, off, read);
+    } else if (read < 0) {
+      flush();
     }
     return read;
   }
 
+  private void update(char[] cbuf, int off, int len) throws IOException {
+    final CharBuffer chars;
+    if (highSurrogate < 0) {
+      chars = CharBuffer.wrap(cbuf, off, len);
+    } else {
+      chars = CharBuffer.allocate(len + 1);
+      chars.put((char) highSurrogate).put(cbuf, off, len).flip();
+      highSurrogate = -1;
+    }
+    final char last = chars.get(chars.limit() - 1);
+    if (Character.isHighSurrogate(last)) {
+      highSurrogate = last;
+      chars.limit(chars.limit() - 1);
+    }
+    digest.update(encoder.encode(chars));
+  }
+
+  /**
+   * Digests a high surrogate held back, which the encoder reports as malformed input as no low surrogate follows it.
+   */
+  private void flush() throws CharacterCodingException {
+    if (highSurrogate >= 0) {
+      final char pending = (char) highSurrogate;
+      highSurrogate = -1;
+      digest.update(encoder.encode(CharBuffer.wrap(new char[]{pending})));
+    }
+  }
+
   @Override
   public void reset() throws IOException {
     digest.reset();
     result = null;
+    highSurrogate = -1;
     super.reset();
   }
 
   public byte[] digest() {
     if (result == null) {
+      try {
+        flush();
+      } catch (CharacterCodingException e) {
+        throw Throwables.propagate(e);
+      }
       result = digest.digest();
     }
     return result;
@@ -37,6 +37,7 @@ import javax.xml.XMLConstants;
 import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.CharBuffer;
 import java.util.*;
 
 /**
@@ -141,9 +142,14 @@ public class XMLSerializer {
     }
 
     @Override
-    protected void doText(Range r, String text) throws Exception {
-      final char[] chars = text.toCharArray();
-      xml.characters(chars, 0, chars.length);
+    protected void doText(long start, long end, CharBuffer text) throws Exception {
+      if (text.hasArray()) {
+        xml.characters(text.array(), text.arrayOffset() + text.position(), text.remaining());
+      } else {
+        final char[] chars = new char[text.remaining()];
+        text.get(chars);
+        xml.characters(chars, 0, chars.length);
+      }
     }
 
     @Override
@@ -10,13 +10,26 @@ CREATE SEQUENCE IF NOT EXISTS text_qname_sequence;
 CREATE TABLE IF NOT EXISTS text_content (
   id BIGINT PRIMARY KEY,
   type SMALLINT NOT NULL,
-  content CLOB NOT NULL,
   content_length BIGINT NOT NULL,
   content_digest BYTEA(64) NOT NULL
 );
 
 CREATE SEQUENCE IF NOT EXISTS text_content_sequence;
 
+CREATE TABLE IF NOT EXISTS text_content_chunk (
+  text BIGINT NOT NULL REFERENCES text_content (id) ON DELETE CASCADE,
+  ordinal INT NOT NULL,
+  char_offset BIGINT NOT NULL,
+  content VARCHAR NOT NULL,
+  PRIMARY KEY (text, ordinal)
+);
+
+CREATE INDEX IF NOT EXISTS text_content_chunk_offsets ON text_content_chunk (text, char_offset);
+
+CREATE ALIAS IF NOT EXISTS text_content_migration FOR "eu.interedition.text.rdbms.RelationalTextContentMigration.migrate";
+CALL text_content_migration();
+DROP ALIAS IF EXISTS text_content_migration;
+
 CREATE TABLE IF NOT EXISTS text_annotation (
   id BIGINT PRIMARY KEY,
   text BIGINT NOT NULL REFERENCES text_content (id) ON DELETE CASCADE,
@@ -15,11 +15,35 @@ CREATE TABLE IF NOT EXISTS text_qname (
 CREATE TABLE IF NOT EXISTS text_content (
   id BIGINT PRIMARY KEY,
   type SMALLINT NOT NULL,
-  content LONGTEXT NOT NULL,
   content_length BIGINT NOT NULL,
   content_digest BINARY(64) NOT NULL
 ) ENGINE = INNODB;
 
+CREATE TABLE IF NOT EXISTS text_content_chunk (
+  text BIGINT NOT NULL,
+  ordinal INT NOT NULL,
+  char_offset BIGINT NOT NULL,
+  content LONGTEXT NOT NULL,
+  PRIMARY KEY (text, ordinal),
+  FOREIGN KEY (text) REFERENCES text_content (id) ON DELETE CASCADE,
+  INDEX (text, char_offset)
+) ENGINE = INNODB;
+
+SET @text_content_migration = (SELECT COUNT(*) FROM information_schema.columns
+  WHERE table_schema = DATABASE() AND table_name = 'text_content' AND column_name = 'content');
+
+SET @text_content_migration_sql = IF(@text_content_migration = 0, 'DO 0',
+  'INSERT INTO text_content_chunk (text, ordinal, char_offset, content) SELECT id, 0, 0, content FROM text_content WHERE content_length > 0 AND id NOT IN (SELECT text FROM text_content_chunk)');
+PREPARE text_content_migration FROM @text_content_migration_sql;
+EXECUTE text_content_migration;
+DEALLOCATE PREPARE text_content_migration;
+
+SET @text_content_migration_sql = IF(@text_content_migration = 0, 'DO 0',
+  'ALTER TABLE text_content DROP COLUMN content');
+PREPARE text_content_migration FROM @text_content_migration_sql;
+EXECUTE text_content_migration;
+DEALLOCATE PREPARE text_content_migration;
+
 CREATE TABLE IF NOT EXISTS text_annotation (
   id BIGINT PRIMARY KEY,
   text BIGINT NOT NULL,
@@ -19,22 +19,33 @@
  */
 package eu.interedition.text.event;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import eu.interedition.text.AbstractTestResourceTest;
 import eu.interedition.text.Annotation;
 import eu.interedition.text.Name;
 import eu.interedition.text.Range;
+import eu.interedition.text.Text;
 import eu.interedition.text.mem.SimpleName;
+import eu.interedition.text.query.Criteria;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static eu.interedition.text.TextConstants.TEI_NS;
 import static eu.interedition.text.query.Criteria.annotationName;
+import static eu.interedition.text.query.Criteria.any;
 import static eu.interedition.text.query.Criteria.or;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AnnotationEventSourceTest extends AbstractTestResourceTest {
 
@@ -52,6 +63,109 @@ public class AnnotationEventSourceTest extends AbstractTestResourceTest {
             ), Collections.<Name>emptySet());
   }
 
+  @Test
+  public void everyAnnotationStartsAndEnds() throws IOException {
+    final Text text = text("archimedes-palimpsest-tei.xml");
+    final Set<Annotation> annotations = Sets.newHashSet(annotationRepository.find(Criteria.text(text)));
+    assertTrue(Iterables.any(annotations, new Predicate<Annotation>() {
+      public boolean apply(Annotation input) {
+        return input.getRange().equals(new Range(0, 0));
+      }
+    }));
+
+    final Set<Annotation> started = Sets.newHashSet();
+    final Set<Annotation> ended = Sets.newHashSet();
+    final StringBuilder content = new StringBuilder();
+    source.listen(new AnnotationEventAdapter() {
+      @Override
+      public void start(long offset, Iterable<Annotation> annotations) {
+        for (Annotation a : annotations) {
+          assertEquals(offset, a.getRange().getStart());
+          assertTrue(started.add(a));
+        }
+      }
+
+      @Override
+      public void empty(long offset, Iterable<Annotation> annotations) {
+        for (Annotation a : annotations) {
+          assertEquals(offset, a.getRange().getStart());
+          assertTrue(started.add(a) && ended.add(a));
+        }
+      }
+
+      @Override
+      public void end(long offset, Iterable<Annotation> annotations) {
+        for (Annotation a : annotations) {
+          assertEquals(offset, a.getRange().getEnd());
+          assertTrue(started.contains(a) && ended.add(a));
+        }
+      }
+
+      @Override
+      public void text(Range r, String text) {
+        assertEquals(content.length(), r.getStart());
+        content.append(text);
+      }
+    }, 100, text, any(), Collections.<Name>emptySet());
+
+    assertEquals(annotations, started);
+    assertEquals(annotations, ended);
+    assertEquals(text.getLength(), content.length());
+  }
+
+  @Test
+  public void windowedEventsEqualCopied() throws IOException {
+    final Text text = text("archimedes-palimpsest-tei.xml");
+
+    final EventRecorder copied = new EventRecorder();
+    source.listen(copied, 100, text, any(), Collections.<Name>emptySet());
+    final WindowedEventRecorder windowed = new WindowedEventRecorder();
+    source.listen(windowed, 100, text, any(), Collections.<Name>emptySet());
+
+    assertTrue(windowed.windows > 0);
+    assertEquals(copied.events, windowed.events);
+  }
+
+  /**
+   * Records events as strings, copying the text and annotations passed.
+   */
+  private static class EventRecorder implements AnnotationEventListener {
+    protected final List<String> events = Lists.newArrayList();
+
+    public void start() {
+      events.add("START");
+    }
+
+    public void start(long offset, Iterable<Annotation> annotations) {
+      events.add("START: [" + offset + "] " + Iterables.toString(annotations));
+    }
+
+    public void empty(long offset, Iterable<Annotation> annotations) {
+      events.add("EMPTY: [" + offset + "] " + Iterables.toString(annotations));
+    }
+
+    public void end(long offset, Iterable<Annotation> annotations) {
+      events.add("END: [" + offset + "] " + Iterables.toString(annotations));
+    }
+
+    public void text(Range r, String text) {
+      events.add("TEXT: " + r + " == \"" + text + "\"");
+    }
+
+    public void end() {
+      events.add("END");
+    }
+  }
+
+  private static class WindowedEventRecorder extends EventRecorder implements CharBufferAnnotationEventListener {
+    private int windows;
+
+    public void text(long start, long end, CharBuffer text) {
+      windows++;
+      text(new Range(start, end), text.toString());
+    }
+  }
+
   private final AnnotationEventListener DEBUG_LISTENER = new AnnotationEventListener() {
 
     public void start() {
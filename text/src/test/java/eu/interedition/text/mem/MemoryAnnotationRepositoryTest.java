@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * Text: A text model with range-based markup via standoff annotations.
+ * %%
+ * Copyright (C) 2010 - 2011 The Interedition Development Group
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package eu.interedition.text.mem;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import eu.interedition.text.AbstractTestResourceTest;
+import eu.interedition.text.Annotation;
+import eu.interedition.text.Name;
+import eu.interedition.text.Range;
+import eu.interedition.text.Text;
+import eu.interedition.text.query.Criteria;
+import eu.interedition.text.query.Criterion;
+import eu.interedition.text.util.Names;
+import eu.interedition.text.util.SimpleXMLParserConfiguration;
+import eu.interedition.text.xml.XMLParser;
+import eu.interedition.text.xml.XMLParserModule;
+import eu.interedition.text.xml.module.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+
+import static eu.interedition.text.query.Criteria.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses test resources into both the relational and the in-memory repositories and compares query results.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class MemoryAnnotationRepositoryTest extends AbstractTestResourceTest {
+
+  private MemoryTextRepository memoryTextRepository;
+  private MemoryAnnotationRepository memoryAnnotationRepository;
+
+  @Before
+  public void createRepositories() throws Exception {
+    memoryTextRepository = new MemoryTextRepository();
+    memoryAnnotationRepository = new MemoryAnnotationRepository();
+    memoryAnnotationRepository.setTextRepository(memoryTextRepository);
+    memoryAnnotationRepository.afterPropertiesSet();
+  }
+
+  @Test
+  public void sameResults() throws Exception {
+    for (String resource : Lists.newArrayList("george-algabal-tei.xml", "wp-orpheus1-clix.xml")) {
+      final Text expected = text(resource);
+      final Text actual = parse(resource);
+      assertEquals(expected.getLength(), actual.getLength());
+      assertEquals(Iterables.toString(annotationRepository.names(expected)), Iterables.toString(memoryAnnotationRepository.names(actual)));
+
+      assertSameResults(expected, actual, any());
+      assertSameResults(expected, actual, rangeLength(0));
+      assertSameResults(expected, actual, none());
+
+      final List<Name> names = Lists.newArrayList(annotationRepository.names(expected));
+      final Random random = new Random(47);
+      for (int q = 0; q < 25; q++) {
+        final long start = random.nextInt((int) expected.getLength());
+        final Range range = new Range(start, Math.min(expected.getLength(), start + random.nextInt(200)));
+        final Name name = names.get(random.nextInt(names.size()));
+
+        assertSameResults(expected, actual, rangeOverlap(range));
+        assertSameResults(expected, actual, rangeFitsWithin(range));
+        assertSameResults(expected, actual, and(annotationName(name), rangeOverlap(range)));
+        assertSameResults(expected, actual, or(annotationName(name), rangeFitsWithin(range)));
+      }
+
+      final Criterion deleted = rangeOverlap(new Range(expected.getLength() / 4, expected.getLength() / 2));
+      annotationRepository.delete(and(Criteria.text(expected), deleted));
+      memoryAnnotationRepository.delete(and(Criteria.text(actual), deleted));
+      assertSameResults(expected, actual, any());
+      assertSameResults(expected, actual, rangeOverlap(new Range(0, expected.getLength())));
+
+      memoryTextRepository.delete(actual);
+      assertTrue(Iterables.isEmpty(memoryAnnotationRepository.find(Criteria.text(actual))));
+    }
+  }
+
+  protected void assertSameResults(Text expected, Text actual, Criterion criterion) {
+    assertEquals(describe(annotationRepository.find(and(Criteria.text(expected), criterion), null)),//
+            describe(memoryAnnotationRepository.find(and(Criteria.text(actual), criterion), null)));
+  }
+
+  protected List<String> describe(Iterable<Annotation> annotations) {
+    final List<String> descriptions = Lists.newArrayList();
+    for (Annotation annotation : annotations) {
+      final SortedMap<String, String> data = Maps.newTreeMap();
+      for (Map.Entry<Name, String> dataEntry : annotation.getData().entrySet()) {
+        data.put(Names.toString(dataEntry.getKey()), dataEntry.getValue());
+      }
+      descriptions.add(Names.toString(annotation.getName()) + annotation.getRange() + data);
+    }
+    Collections.sort(descriptions);
+    return descriptions;
+  }
+
+  protected Text parse(String resource) throws Exception {
+    final Text source = source(resource);
+    final Text xml = memoryTextRepository.write(memoryTextRepository.create(Text.Type.XML),//
+            new StringReader(textRepository.read(source, new Range(0, source.getLength()))));
+
+    final SimpleXMLParserConfiguration pc = new SimpleXMLParserConfiguration();
+    final List<XMLParserModule> parserModules = pc.getModules();
+    parserModules.add(new LineElementXMLParserModule());
+    parserModules.add(new NotableCharacterXMLParserModule());
+    parserModules.add(new TextXMLParserModule());
+    parserModules.add(new DefaultAnnotationXMLParserModule(memoryAnnotationRepository, 1000));
+    parserModules.add(new CLIXAnnotationXMLParserModule(memoryAnnotationRepository, 1000));
+    parserModules.add(new TEIAwareAnnotationXMLParserModule(memoryAnnotationRepository, 1000));
+
+    final XMLParser xmlParser = new XMLParser();
+    xmlParser.setTextRepository(memoryTextRepository);
+    return xmlParser.parse(xml, configure(pc));
+  }
+}
@@ -19,13 +19,29 @@
  */
 package eu.interedition.text.rdbms;
 
+import com.google.common.collect.Sets;
+import com.google.common.io.CharStreams;
 import eu.interedition.text.AbstractTextTest;
+import eu.interedition.text.Range;
 import eu.interedition.text.Text;
 import eu.interedition.text.util.TextDigestingFilterReader;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Assert;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.io.StringReader;
+import java.nio.charset.MalformedInputException;
+import java.util.SortedMap;
 
 import static eu.interedition.text.util.TextDigestingFilterReader.digest;
 import static org.apache.commons.codec.binary.Hex.encodeHexString;
@@ -34,6 +50,13 @@ import static org.apache.commons.codec.binary.Hex.encodeHexString;
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
  */
 public class TextTest extends AbstractTextTest {
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private RelationalDatabaseKeyFactory keyFactory;
+
   @Test
   public void digesting() throws Exception {
     Assert.assertEquals(encodeHexString(digest(TEST_TEXT)), encodeHexString(text.getDigest()));
@@ -41,4 +64,107 @@ public class TextTest extends AbstractTextTest {
     final Text concat = textRepository.concat(text, text, text);
     Assert.assertEquals(3 * text.getLength(), concat.getLength());
   }
+
+  @Test(expected = MalformedInputException.class)
+  public void digestingTrailingHighSurrogate() throws Exception {
+    CharStreams.toString(new TextDigestingFilterReader(new StringReader("abc\uD835")));
+  }
+
+  @Test
+  public void chunkedRangeReads() throws Exception {
+    final RelationalTextRepository repository = new RelationalTextRepository();
+    repository.setDataSource(dataSource);
+    repository.setKeyFactory(keyFactory);
+    repository.setChunkSize(4);
+    repository.afterPropertiesSet();
+
+    final String content = "The quick brown fox jumps over the lazy dog";
+    final Text chunked = repository.create(new StringReader(content));
+    try {
+      Assert.assertEquals(content.length(), chunked.getLength());
+      Assert.assertEquals(encodeHexString(digest(content)), encodeHexString(chunked.getDigest()));
+      Assert.assertEquals(content, repository.read(chunked, new Range(0, chunked.getLength())));
+
+      for (int start = 0; start <= content.length(); start += 3) {
+        for (int end = start; end <= content.length(); end += 5) {
+          Assert.assertEquals(content.substring(start, end), repository.read(chunked, new Range(start, end)));
+        }
+      }
+
+      final SortedMap<Range, String> bulk = repository.bulkRead(chunked,
+              Sets.newTreeSet(Sets.newHashSet(new Range(0, 3), new Range(2, 9), new Range(16, 19), new Range(40, 43))));
+      Assert.assertEquals("The", bulk.get(new Range(0, 3)));
+      Assert.assertEquals("e quick", bulk.get(new Range(2, 9)));
+      Assert.assertEquals("fox", bulk.get(new Range(16, 19)));
+      Assert.assertEquals("dog", bulk.get(new Range(40, 43)));
+
+      final Text concat = repository.concat(chunked, text);
+      try {
+        Assert.assertEquals(content + TEST_TEXT, repository.read(concat, new Range(0, concat.getLength())));
+      } finally {
+        repository.delete(concat);
+      }
+    } finally {
+      repository.delete(chunked);
+    }
+  }
+
+  @Test
+  public void astralCharacterAtChunkBoundary() throws Exception {
+    final RelationalTextRepository repository = new RelationalTextRepository();
+    repository.setDataSource(dataSource);
+    repository.setKeyFactory(keyFactory);
+    repository.setChunkSize(4);
+    repository.afterPropertiesSet();
+
+    final String content = "abc\uD835\uDD04defg\uD83D\uDE00";
+    final Text chunked = repository.create(new StringReader(content));
+    try {
+      Assert.assertEquals(content.length(), chunked.getLength());
+      Assert.assertEquals(encodeHexString(digest(content)), encodeHexString(chunked.getDigest()));
+      Assert.assertEquals(content, repository.read(chunked, new Range(0, chunked.getLength())));
+      Assert.assertEquals("\uD835\uDD04de", repository.read(chunked, new Range(3, 7)));
+
+      final JdbcTemplate jt = new JdbcTemplate(dataSource);
+      for (String chunk : jt.queryForList("select content from text_content_chunk where text = ? order by ordinal",
+              String.class, ((RelationalText) chunked).getId())) {
+        Assert.assertFalse(chunk, Character.isHighSurrogate(chunk.charAt(chunk.length() - 1)));
+        Assert.assertFalse(chunk, Character.isLowSurrogate(chunk.charAt(0)));
+      }
+    } finally {
+      repository.delete(chunked);
+    }
+  }
+
+  @Test
+  public void migratingUnchunkedContent() throws Exception {
+    final EmbeddedDatabase db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName("unchunked").build();
+    try {
+      final JdbcTemplate jt = new JdbcTemplate(db);
+      jt.execute("create table text_content (id bigint primary key, type smallint not null, content clob not null, " +
+              "content_length bigint not null, content_digest bytea(64) not null)");
+      jt.execute("create sequence text_content_sequence start with 2");
+      jt.update("insert into text_content (id, type, content, content_length, content_digest) values (?, ?, ?, ?, ?)",
+              1, Text.Type.TXT.ordinal(), TEST_TEXT, TEST_TEXT.length(), digest(TEST_TEXT));
+
+      final ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+      populator.addScript(new ClassPathResource("h2-schema.sql", RelationalTextRepository.class));
+      DatabasePopulatorUtils.execute(populator, db);
+      DatabasePopulatorUtils.execute(populator, db);
+
+      final RelationalDatabaseKeyFactory keyFactory = new RelationalDatabaseKeyFactory();
+      keyFactory.setDataSource(db);
+      keyFactory.afterPropertiesSet();
+      final RelationalTextRepository repository = new RelationalTextRepository();
+      repository.setDataSource(db);
+      repository.setKeyFactory(keyFactory);
+      repository.afterPropertiesSet();
+
+      Assert.assertEquals(TEST_TEXT, repository.read(repository.load(1), new Range(0, TEST_TEXT.length())));
+      final Text created = repository.create(new StringReader(TEST_TEXT));
+      Assert.assertEquals(TEST_TEXT, repository.read(created, new Range(0, created.getLength())));
+    } finally {
+      db.shutdown();
+    }
+  }
 }
@@ -31,8 +31,12 @@ import org.springframework.web.util.UriUtils;
 import javax.sql.DataSource;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
@@ -45,6 +49,7 @@ import java.util.concurrent.ScheduledExecutorService;
 @ImportResource("classpath:/eu/interedition/text/rdbms/repository-context.xml")
 public class ApplicationConfiguration implements DisposableBean {
   private static final String DATA_DIRECTORY = System.getProperty("interedition.data");
+  private static final int COLLATION_QUEUE_CAPACITY = Integer.getInteger("interedition.collation.queue", 64);
   private static final Logger LOG = LoggerFactory.getLogger(ApplicationConfiguration.class);
 
   private File dataDirectory;
@@ -132,6 +137,12 @@ public class ApplicationConfiguration implements DisposableBean {
     return Executors.newScheduledThreadPool(42);
   }
 
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService collationExecutor() {
+    final int threads = Runtime.getRuntime().availableProcessors();
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(COLLATION_QUEUE_CAPACITY));
+  }
+
   @Override
   public void destroy() throws Exception {
     if (DATA_DIRECTORY == null && dataDirectory != null) {
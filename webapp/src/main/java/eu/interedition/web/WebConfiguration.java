@@ -1,11 +1,15 @@
 package eu.interedition.web;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import eu.interedition.collatex.graph.VariantGraph;
 import eu.interedition.text.AnnotationRepository;
 import eu.interedition.text.TextRepository;
 import eu.interedition.text.json.JSONSerializer;
 import eu.interedition.text.xml.XMLSerializer;
+import eu.interedition.web.collatex.CollationCache;
 import eu.interedition.web.collatex.GraphVizService;
+import eu.interedition.web.io.CachingCollationResultHttpMessageConverter;
 import eu.interedition.web.io.CollationHttpMessageConverter;
 import eu.interedition.web.io.JSONSerializationHttpMessageConverter;
 import eu.interedition.web.io.VariantGraphJSONSerializer;
@@ -53,6 +57,9 @@ public class WebConfiguration extends WebMvcConfigurerAdapter {
   @Autowired
   private GraphVizService graphVizService;
 
+  @Autowired
+  private CollationCache collationCache;
+
   @Autowired
   private AnnotationRepository annotationRepository;
   
@@ -72,11 +79,15 @@ public class WebConfiguration extends WebMvcConfigurerAdapter {
 
   @Override
   public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
+    final List<HttpMessageConverter<VariantGraph>> variantGraphConverters = Lists.newArrayList();
+    variantGraphConverters.add(new VariantGraphTEIHttpMessageConverter());
+    variantGraphConverters.add(new VariantGraphMLHttpMessageConverter());
+    variantGraphConverters.add(new VariantGraphVizHttpMessageConverter(graphVizService));
+    variantGraphConverters.add(new VariantGraphJSONSerializer());
+
     converters.add(new CollationHttpMessageConverter());
-    converters.add(new VariantGraphTEIHttpMessageConverter());
-    converters.add(new VariantGraphMLHttpMessageConverter());
-    converters.add(new VariantGraphVizHttpMessageConverter(graphVizService));
-    converters.add(new VariantGraphJSONSerializer());
+    converters.add(new CachingCollationResultHttpMessageConverter(collationCache, variantGraphConverters));
+    converters.addAll(variantGraphConverters);
     converters.add(new JSONSerializationHttpMessageConverter(jsonSerializer(), objectMapper));
     converters.add(new XMLSerializationHttpMessageConverter(xmlSerializer));
 
@@ -0,0 +1,221 @@
+package eu.interedition.web.collatex;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ComputationException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapEvictionListener;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.input.SimpleToken;
+import org.apache.commons.codec.binary.Hex;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches serialized collation results by the content they have been computed from.
+ *
+ * <p>Entries are keyed by a digest of the collated witnesses' tokens, the collation algorithm and the token comparator
+ * plus the media type of the serialization. The cache holds a bounded number of entries, each for at most an hour, so
+ * that no entry outlives the variant graph it has been rendered from.</p>
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+@Service
+public class CollationCache {
+  private static final int MAX_ENTRIES = 1000;
+  private static final long MAX_AGE = 3600000;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private final ConcurrentMap<CacheKey, Representation> cache = new MapMaker()
+          .maximumSize(MAX_ENTRIES)
+          .expireAfterWrite(MAX_AGE, TimeUnit.MILLISECONDS)
+          .evictionListener(new MapEvictionListener<CacheKey, Representation>() {
+            @Override
+            public void onEviction(CacheKey key, Representation value) {
+              evictions.incrementAndGet();
+            }
+          }).makeComputingMap(new Function<CacheKey, Representation>() {
+            @Override
+            public Representation apply(CacheKey key) {
+              final BufferedOutputMessage buffer = new BufferedOutputMessage();
+              try {
+                key.renderer.render(buffer);
+              } catch (IOException e) {
+                throw new ComputationException(e);
+              } finally {
+                // do not keep the collation result reachable from the cache
+                key.renderer = null;
+              }
+              key.rendered = true;
+              return new Representation(buffer.headers, buffer.body.toByteArray());
+            }
+          });
+
+  /**
+   * Looks up the serialization of a collation result, rendering and caching it on a miss.
+   *
+   * <p>Concurrent lookups of the same missing entry wait for a single rendering.</p>
+   *
+   * @param key         the collation's content-based {@link #key(Iterable, String, String) key}
+   * @param contentType the media type of the serialization
+   * @param renderer    writes the serialization in case it is not cached
+   */
+  public Representation get(String key, MediaType contentType, Renderer renderer) throws IOException {
+    final CacheKey cacheKey = new CacheKey(key, contentType, renderer);
+    try {
+      final Representation representation = cache.get(cacheKey);
+      (cacheKey.rendered ? misses : hits).incrementAndGet();
+      return representation;
+    } catch (ComputationException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  public Map<String, Long> getStatistics() {
+    final Map<String, Long> statistics = Maps.newLinkedHashMap();
+    statistics.put("size", (long) cache.size());
+    statistics.put("hits", hits.get());
+    statistics.put("misses", misses.get());
+    statistics.put("evictions", evictions.get());
+    return statistics;
+  }
+
+  /**
+   * Computes the content-based key of a collation.
+   *
+   * @param witnesses  the witnesses to be collated
+   * @param algorithm  the collation algorithm's identifier
+   * @param comparator the token comparator's identifier
+   * @return a hex-encoded digest
+   */
+  public static String key(Iterable<Iterable<Token>> witnesses, String algorithm, String comparator) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      update(digest, algorithm);
+      update(digest, comparator);
+      for (Iterable<Token> witness : witnesses) {
+        boolean first = true;
+        for (Token token : witness) {
+          if (first) {
+            update(digest, token.getWitness().getSigil());
+            first = false;
+          }
+          if (token instanceof WebToken) {
+            update(digest, ((WebToken) token).getJsonNode().toString());
+          }
+          if (token instanceof SimpleToken) {
+            update(digest, ((SimpleToken) token).getContent());
+            update(digest, ((SimpleToken) token).getNormalized());
+          } else {
+            update(digest, token.toString());
+          }
+        }
+        digest.update((byte) 1);
+      }
+      return new String(Hex.encodeHex(digest.digest()));
+    } catch (NoSuchAlgorithmException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private static void update(MessageDigest digest, String str) {
+    digest.update(str.getBytes(Charsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  /**
+   * Writes the serialization of a collation result.
+   */
+  public interface Renderer {
+    void render(HttpOutputMessage message) throws IOException;
+  }
+
+  /**
+   * A cached serialization along with the headers set while writing it.
+   */
+  public static class Representation {
+    private final Map<String, List<String>> headers;
+    private final byte[] content;
+
+    private Representation(HttpHeaders headers, byte[] content) {
+      final ImmutableMap.Builder<String, List<String>> headerCopy = ImmutableMap.builder();
+      for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+        headerCopy.put(header.getKey(), ImmutableList.copyOf(header.getValue()));
+      }
+      this.headers = headerCopy.build();
+      this.content = content;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+      return headers;
+    }
+
+    public byte[] getContent() {
+      return content;
+    }
+  }
+
+  private static class CacheKey {
+    private final String key;
+    private final String contentType;
+    private volatile Renderer renderer;
+    private volatile boolean rendered;
+
+    private CacheKey(String key, MediaType contentType, Renderer renderer) {
+      this.key = key;
+      this.contentType = contentType.getType() + "/" + contentType.getSubtype();
+      this.renderer = renderer;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj != null && obj instanceof CacheKey) {
+        final CacheKey other = (CacheKey) obj;
+        return key.equals(other.key) && contentType.equals(other.contentType);
+      }
+      return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(key, contentType);
+    }
+  }
+
+  private static class BufferedOutputMessage implements HttpOutputMessage {
+    private final HttpHeaders headers = new HttpHeaders();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    @Override
+    public OutputStream getBody() throws IOException {
+      return body;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+  }
+}
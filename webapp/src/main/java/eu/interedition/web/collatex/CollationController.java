@@ -20,8 +20,15 @@
 
 package eu.interedition.web.collatex;
 
+import com.google.common.base.Supplier;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import eu.interedition.collatex.CollationAlgorithm;
 import eu.interedition.collatex.CollationAlgorithmFactory;
 import eu.interedition.collatex.Token;
+import eu.interedition.collatex.Witness;
 import eu.interedition.collatex.graph.GraphFactory;
 import eu.interedition.collatex.graph.VariantGraph;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
@@ -30,13 +37,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -45,6 +65,7 @@ import java.util.concurrent.TimeUnit;
 public class CollationController implements InitializingBean {
   private static final Logger LOG = LoggerFactory.getLogger(CollationController.class);
   private static final int TWO_HOURS = 7200000;
+  private static final long MAX_RESULT_WAIT = 30000;
 
   @Autowired
   private ScheduledExecutorService taskScheduler;
@@ -52,29 +73,228 @@ public class CollationController implements InitializingBean {
   @Autowired
   private GraphFactory graphFactory;
 
+  @Autowired
+  private CollationCache collationCache;
+
+  @Autowired
+  private CollationJobService collationJobService;
+
+  @Autowired
+  private GraphVizService graphVizService;
+
   @RequestMapping(method = RequestMethod.POST)
   @ResponseBody
-  public VariantGraph graph(@RequestBody Collation collation) throws Exception {
+  public CollationResult graph(@RequestBody Collation collation) throws Exception {
     final List<Iterable<Token>> witnesses = collation.getWitnesses();
+    final Comparator<Token> comparator = new EqualityTokenComparator();
+    final CollationAlgorithm algorithm = CollationAlgorithmFactory.dekker(comparator);
+
+    final String key = CollationCache.key(witnesses, algorithm.getClass().getName(), comparator.getClass().getName());
+    return new CollationResult(key, new Supplier<VariantGraph>() {
+      @Override
+      public VariantGraph get() {
+        final Transaction tx = graphFactory.getDatabase().beginTx();
+        try {
+          // create
+          final VariantGraph graph = graphFactory.newVariantGraph();
+
+          // merge
+          algorithm.collate(graph, witnesses);
+
+          // post-process
+          graph.join().rank();
+
+          tx.success();
+          return graph;
+        } finally {
+          tx.finish();
+        }
+      }
+    });
+  }
+
+  /**
+   * Queues a collation for background processing.
+   *
+   * @return the job's status, or <code>503 Service Unavailable</code> if too many collations are pending
+   */
+  @RequestMapping(value = "/job", method = RequestMethod.POST)
+  public ResponseEntity<Map<String, Object>> submit(@RequestBody Collation collation) {
+    try {
+      final CollationJob job = collationJobService.submit(collation);
+      final HttpHeaders headers = new HttpHeaders();
+      headers.setLocation(URI.create("job/" + job.getId()));
+      return new ResponseEntity<Map<String, Object>>(job.toMap(), headers, HttpStatus.ACCEPTED);
+    } catch (RejectedExecutionException e) {
+      final Map<String, Object> rejection = Maps.newLinkedHashMap();
+      rejection.put("status", "rejected");
+      return new ResponseEntity<Map<String, Object>>(rejection, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+  }
+
+  @RequestMapping(value = "/job/{id}", method = RequestMethod.GET)
+  @ResponseBody
+  public Map<String, Object> status(@PathVariable("id") String id) {
+    return job(id).toMap();
+  }
+
+  /**
+   * Provides a job's resulting variant graph.
+   *
+   * @param wait the number of milliseconds to wait for a pending job to finish
+   * @return the variant graph, or the job's status with <code>202 Accepted</code> if it is still pending, or with
+   *         <code>500 Internal Server Error</code> if it failed
+   */
+  @RequestMapping(value = "/job/{id}/result", method = RequestMethod.GET)
+  public ResponseEntity<?> result(@PathVariable("id") String id, @RequestParam(value = "wait", required = false, defaultValue = "0") long wait) throws InterruptedException {
+    final CollationJob job = job(id);
+    final Long graphId = job.await(Math.max(0, Math.min(wait, MAX_RESULT_WAIT)));
+    if (graphId == null) {
+      final Map<String, Object> status = job.toMap();
+      final boolean failed = CollationJob.Status.FAILED.name().toLowerCase().equals(status.get("status"));
+      return new ResponseEntity<Map<String, Object>>(status, failed ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.ACCEPTED);
+    }
+    return new ResponseEntity<VariantGraph>(load(graphId), HttpStatus.OK);
+  }
 
+  @ExceptionHandler(value = CollationJobNotFoundException.class)
+  public void handleJobNotFound(HttpServletResponse response) throws IOException {
+    response.sendError(HttpServletResponse.SC_NOT_FOUND);
+  }
+
+  protected CollationJob job(String id) {
+    final CollationJob job = collationJobService.get(id);
+    if (job == null) {
+      throw new CollationJobNotFoundException(id);
+    }
+    return job;
+  }
+
+  @RequestMapping(value = "/cache", method = RequestMethod.GET)
+  @ResponseBody
+  public Map<String, Long> cacheStatistics() {
+    return collationCache.getStatistics();
+  }
+
+  /**
+   * Collates the given witnesses into a new, stored variant graph.
+   *
+   * <p>In contrast to {@link #graph(Collation)}, the resulting graph is ranked but not joined, so further witnesses
+   * can be aligned with it via {@link #append(long, Collation)}.</p>
+   *
+   * @return a handle referring to the stored graph
+   */
+  @RequestMapping(value = "/graph", method = RequestMethod.POST)
+  public ResponseEntity<Map<String, Object>> store(@RequestBody Collation collation) throws Exception {
+    validate(collation);
     final Transaction tx = graphFactory.getDatabase().beginTx();
     try {
-      // create
       final VariantGraph graph = graphFactory.newVariantGraph();
+      CollationAlgorithmFactory.dekker(new EqualityTokenComparator()).collate(graph, collation.getWitnesses());
+      graph.rank();
 
-      // merge
-      CollationAlgorithmFactory.dekker(new EqualityTokenComparator()).collate(graph, witnesses);
+      tx.success();
+
+      final HttpHeaders headers = new HttpHeaders();
+      headers.setLocation(URI.create("graph/" + id(graph)));
+      return new ResponseEntity<Map<String, Object>>(handle(graph), headers, HttpStatus.CREATED);
+    } finally {
+      tx.finish();
+    }
+  }
+
+  /**
+   * Aligns additional witnesses with a stored variant graph, leaving the already collated witnesses untouched.
+   *
+   * <p>Appending touches the graph first, which keeps it from being purged for another two hours and serialises
+   * concurrent appends to it, so that a witness cannot be appended twice.</p>
+   */
+  @RequestMapping(value = "/graph/{id}", method = RequestMethod.POST)
+  @ResponseBody
+  public Map<String, Object> append(@PathVariable("id") long id, @RequestBody Collation collation) throws Exception {
+    final Set<String> appended = validate(collation);
+    final Transaction tx = graphFactory.getDatabase().beginTx();
+    try {
+      final VariantGraph graph = load(id);
+      graphFactory.touch(graph);
+
+      for (Witness witness : graph.witnesses()) {
+        if (appended.contains(witness.getSigil())) {
+          throw new BadRequestException("Witness '" + witness.getSigil() + "' already collated");
+        }
+      }
 
-      // post-process
-      graph.join().rank();
+      CollationAlgorithmFactory.dekker(new EqualityTokenComparator()).collate(graph, collation.getWitnesses());
+      graph.rank();
 
       tx.success();
-      return graph;
+      return handle(graph);
     } finally {
       tx.finish();
+      graphVizService.evict(id);
     }
   }
 
+  @RequestMapping(value = "/graph/{id}", method = RequestMethod.GET)
+  @ResponseBody
+  public VariantGraph read(@PathVariable("id") long id) {
+    return load(id);
+  }
+
+  @ExceptionHandler(value = VariantGraphNotFoundException.class)
+  public void handleNotFound(HttpServletResponse response) throws IOException {
+    response.sendError(HttpServletResponse.SC_NOT_FOUND);
+  }
+
+  @ExceptionHandler(value = BadRequestException.class)
+  public void handleBadRequest(BadRequestException e, HttpServletResponse response) throws IOException {
+    response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+  }
+
+  /**
+   * Checks that each witness to be stored or appended has tokens and a sigil of its own.
+   *
+   * @return the witnesses' sigils
+   * @throws BadRequestException in case a witness is empty or its sigil is not unique
+   */
+  protected static Set<String> validate(Collation collation) {
+    final Set<String> sigils = Sets.newHashSet();
+    for (Iterable<Token> witness : collation.getWitnesses()) {
+      final Token first = Iterables.getFirst(witness, null);
+      if (first == null) {
+        throw new BadRequestException("Empty witness");
+      }
+      final String sigil = first.getWitness().getSigil();
+      if (!sigils.add(sigil)) {
+        throw new BadRequestException("Duplicate witness '" + sigil + "'");
+      }
+    }
+    return sigils;
+  }
+
+  protected VariantGraph load(long id) {
+    final VariantGraph graph = graphFactory.variantGraph(id);
+    if (graph == null) {
+      throw new VariantGraphNotFoundException(id);
+    }
+    return graph;
+  }
+
+  protected static long id(VariantGraph graph) {
+    return graph.getStart().getNode().getId();
+  }
+
+  protected static Map<String, Object> handle(VariantGraph graph) {
+    final List<String> sigils = Lists.newArrayList();
+    for (Witness witness : graph.witnesses()) {
+      sigils.add(witness.getSigil());
+    }
+    final Map<String, Object> handle = Maps.newLinkedHashMap();
+    handle.put("id", id(graph));
+    handle.put("witnesses", sigils);
+    return handle;
+  }
+
   @RequestMapping("/console")
   public String console() {
     return "collate/console";
@@ -90,20 +310,60 @@ public class CollationController implements InitializingBean {
     return "collate/tutorial";
   }
 
+  /**
+   * Deletes the graphs neither created nor appended to since the given point in time, along with their renderings.
+   */
+  protected void purge(long timestamp) {
+    final List<Long> deleted;
+    final Transaction tx = graphFactory.getDatabase().beginTx();
+    try {
+      deleted = graphFactory.deleteGraphsOlderThan(timestamp);
+      evict(deleted);
+      tx.success();
+    } finally {
+      tx.finish();
+    }
+    // renderings started while the deletion was pending belong to the evicted generation
+    for (Long id : deleted) {
+      graphVizService.remove(id);
+    }
+  }
+
+  private void evict(List<Long> graphIds) {
+    for (Long id : graphIds) {
+      graphVizService.evict(id);
+    }
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
     taskScheduler.scheduleWithFixedDelay(new Runnable() {
       @Override
       public void run() {
-        final Transaction tx = graphFactory.getDatabase().beginTx();
-        try {
-          LOG.debug("Purging graphs older than 2 hours");
-          graphFactory.deleteGraphsOlderThan(System.currentTimeMillis() - TWO_HOURS);
-          tx.success();
-        } finally {
-          tx.finish();
-        }
+        LOG.debug("Purging graphs older than 2 hours");
+        purge(System.currentTimeMillis() - TWO_HOURS);
       }
     }, 0, TWO_HOURS, TimeUnit.MILLISECONDS);
   }
+
+  public static class VariantGraphNotFoundException extends RuntimeException {
+
+    public VariantGraphNotFoundException(long id) {
+      super(Long.toString(id));
+    }
+  }
+
+  public static class BadRequestException extends RuntimeException {
+
+    public BadRequestException(String message) {
+      super(message);
+    }
+  }
+
+  public static class CollationJobNotFoundException extends RuntimeException {
+
+    public CollationJobNotFoundException(String id) {
+      super(id);
+    }
+  }
 }
@@ -0,0 +1,92 @@
+package eu.interedition.web.collatex;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A collation running in the background, yielding the identifier of the resulting variant graph.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class CollationJob extends FutureTask<Long> {
+
+  public enum Status {
+    QUEUED, RUNNING, DONE, FAILED
+  }
+
+  private final String id;
+  private volatile boolean started;
+
+  public CollationJob(String id, Callable<Long> collation) {
+    super(collation);
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Status getStatus() {
+    if (!isDone()) {
+      return (started ? Status.RUNNING : Status.QUEUED);
+    }
+    return (getFailure() == null ? Status.DONE : Status.FAILED);
+  }
+
+  /**
+   * @return the reason for the job's failure or <code>null</code> if it has not failed (yet)
+   */
+  public Throwable getFailure() {
+    if (!isDone()) {
+      return null;
+    }
+    try {
+      get();
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    } catch (Exception e) {
+      return e;
+    }
+  }
+
+  /**
+   * Waits for the job to finish.
+   *
+   * @param timeout the maximum time to wait in milliseconds
+   * @return the variant graph's identifier or <code>null</code> if the job did not finish in time or failed
+   */
+  public Long await(long timeout) throws InterruptedException {
+    try {
+      return get(timeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      return null;
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+  public Map<String, Object> toMap() {
+    final Map<String, Object> map = Maps.newLinkedHashMap();
+    map.put("id", id);
+    map.put("status", getStatus().name().toLowerCase());
+    final Throwable failure = getFailure();
+    if (failure != null) {
+      map.put("message", Objects.firstNonNull(failure.getMessage(), failure.getClass().getName()));
+    }
+    return map;
+  }
+
+  @Override
+  public void run() {
+    started = true;
+    super.run();
+  }
+}
@@ -0,0 +1,99 @@
+package eu.interedition.web.collatex;
+
+import com.google.common.collect.MapMaker;
+import eu.interedition.collatex.CollationAlgorithmFactory;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.graph.GraphFactory;
+import eu.interedition.collatex.graph.VariantGraph;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import org.neo4j.graphdb.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs collations on a dedicated, bounded executor instead of request threads.
+ *
+ * <p>Submissions exceeding the executor's queue capacity are rejected right away. Jobs are remembered for an hour
+ * after their submission, which is less than the minimal lifetime of the variant graphs they produce.</p>
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+@Service
+public class CollationJobService {
+  private static final long MAX_AGE = 3600000;
+
+  @Autowired
+  private GraphFactory graphFactory;
+
+  @Autowired
+  @Qualifier("collationExecutor")
+  private ExecutorService collationExecutor;
+
+  private final ConcurrentMap<String, CollationJob> jobs = new MapMaker()
+          .expireAfterWrite(MAX_AGE, TimeUnit.MILLISECONDS)
+          .makeMap();
+
+  /**
+   * @throws RejectedExecutionException in case the collation queue is full
+   */
+  public CollationJob submit(Collation collation) throws RejectedExecutionException {
+    final List<Iterable<Token>> witnesses = collation.getWitnesses();
+    final CollationJob job = new CollationJob(UUID.randomUUID().toString(), new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        // register the graph in a transaction of its own, so concurrent jobs do not block on the graph registry
+        VariantGraph graph;
+        Transaction tx = graphFactory.getDatabase().beginTx();
+        try {
+          graph = graphFactory.newVariantGraph();
+          tx.success();
+        } finally {
+          tx.finish();
+        }
+
+        try {
+          tx = graphFactory.getDatabase().beginTx();
+          try {
+            CollationAlgorithmFactory.dekker(new EqualityTokenComparator()).collate(graph, witnesses);
+            graph.join().rank();
+
+            tx.success();
+            return graph.getStart().getNode().getId();
+          } finally {
+            tx.finish();
+          }
+        } catch (Exception e) {
+          // do not leave the registered, empty graph behind until it is purged
+          tx = graphFactory.getDatabase().beginTx();
+          try {
+            graphFactory.delete(graph);
+            tx.success();
+          } finally {
+            tx.finish();
+          }
+          throw e;
+        }
+      }
+    });
+
+    collationExecutor.execute(job);
+    jobs.put(job.getId(), job);
+    return job;
+  }
+
+  /**
+   * @return the job or <code>null</code> if no job with the given identifier is known
+   */
+  public CollationJob get(String id) {
+    return jobs.get(id);
+  }
+}
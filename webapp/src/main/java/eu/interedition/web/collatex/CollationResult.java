@@ -0,0 +1,29 @@
+package eu.interedition.web.collatex;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import eu.interedition.collatex.graph.VariantGraph;
+
+/**
+ * The result of a collation, whose variant graph is only computed when no cached serialization is available.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class CollationResult {
+
+  private final String key;
+  private final Supplier<VariantGraph> graph;
+
+  public CollationResult(String key, Supplier<VariantGraph> graph) {
+    this.key = key;
+    this.graph = Suppliers.memoize(graph);
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public VariantGraph getGraph() {
+    return graph.get();
+  }
+}
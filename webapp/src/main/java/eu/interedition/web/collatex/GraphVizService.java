@@ -1,40 +1,43 @@
 package eu.interedition.web.collatex;
 
-import com.google.common.base.Preconditions;
-import com.google.common.io.ByteStreams;
-import com.google.common.io.Closeables;
-import com.google.common.io.FileBackedOutputStream;
+import com.google.common.collect.MapMaker;
 import eu.interedition.collatex.graph.VariantGraph;
 import eu.interedition.collatex.graph.VariantGraphEdge;
 import eu.interedition.collatex.graph.VariantGraphTransposition;
 import eu.interedition.collatex.graph.VariantGraphVertex;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.neo4j.graphdb.Transaction;
-import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.File;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
-import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
  */
 @Service
-public class GraphVizService implements InitializingBean {
+public class GraphVizService {
+  private static final String SVG_NS = "http://www.w3.org/2000/svg";
+  private static final int MAX_CACHED_SVG = 100;
+  private static final long MAX_AGE = 3600000;
 
-  private final String configuredDotPath = System.getProperty("collatex.graphviz.dot", "/usr/bin/dot");
-  private String dotPath;
+  private final ConcurrentMap<String, byte[]> svgCache = new MapMaker()
+          .maximumSize(MAX_CACHED_SVG)
+          .expireAfterWrite(MAX_AGE, TimeUnit.MILLISECONDS)
+          .makeMap();
 
-  public String getConfiguredDotPath() {
-    return configuredDotPath;
-  }
+  private final ConcurrentMap<Long, Long> generations = new MapMaker().makeMap();
+  private final AtomicLong generationCounter = new AtomicLong();
 
   public void toDot(VariantGraph graph, Writer writer) {
     final Transaction tx = graph.newTransaction();
@@ -80,57 +83,158 @@ public class GraphVizService implements InitializingBean {
     return VariantGraphVertex.TO_CONTENTS.apply(v).replaceAll("\"", "\\\"");
   }
 
-  public boolean isSvgAvailable() {
-    return (dotPath != null);
+  /**
+   * Renders a variant graph as SVG, using a layered layout computed in-process.
+   *
+   * <p>Rendered documents are cached per graph and generation of that graph; callers modifying a graph have to
+   * {@link #evict(long) evict} its rendering afterwards, which starts a new generation, and callers deleting a graph
+   * have to {@link #remove(long) remove} it. Generations are drawn from one counter and never reused, so a rendering
+   * racing with an eviction is cached for the generation it started with and never served afterwards.</p>
+   */
+  public void toSvg(VariantGraph graph, OutputStream out) throws IOException {
+    final long id = graph.getStart().getNode().getId();
+    final String key = id + "/" + generation(id);
+    final byte[] cached = svgCache.get(key);
+    if (cached != null) {
+      out.write(cached);
+      out.flush();
+      return;
+    }
+
+    final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    final Transaction tx = graph.newTransaction();
+    try {
+      final XMLStreamWriter xml = XMLOutputFactory.newFactory().createXMLStreamWriter(new TeeOutputStream(out, buf), "UTF-8");
+      try {
+        writeSvg(new VariantGraphLayout(graph), xml);
+      } finally {
+        xml.close();
+      }
+      out.flush();
+      tx.success();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    } finally {
+      tx.finish();
+    }
+    svgCache.put(key, buf.toByteArray());
   }
 
-  public void toSvg(VariantGraph vg, OutputStream out) throws IOException {
-    Preconditions.checkState(isSvgAvailable());
+  /**
+   * Invalidates the renderings of a graph which has been modified.
+   */
+  public void evict(long graphId) {
+    generations.put(graphId, generationCounter.incrementAndGet());
+  }
 
-    final FileBackedOutputStream dotBuf = new FileBackedOutputStream(102400);
+  /**
+   * Forgets the renderings of a graph which has been deleted.
+   *
+   * <p>A graph reusing the identifier starts with a new generation, for which nothing has been cached.</p>
+   */
+  public void remove(long graphId) {
+    generations.remove(graphId);
+  }
 
-    Writer dotWriter = null;
-    try {
-      toDot(vg, dotWriter = new OutputStreamWriter(dotBuf, Charset.forName("UTF-8")));
-    } finally {
-      Closeables.close(dotWriter, false);
+  private long generation(long graphId) {
+    final Long generation = generations.get(graphId);
+    if (generation != null) {
+      return generation;
     }
+    final Long created = generationCounter.incrementAndGet();
+    final Long existing = generations.putIfAbsent(graphId, created);
+    return (existing == null ? created : existing);
+  }
 
-    final Process dotProc = Runtime.getRuntime().exec(dotPath + " -Grankdir=LR -Gid=VariantGraph -Tsvg");
-    final OutputStream dotStdin = new BufferedOutputStream(dotProc.getOutputStream());
-    try {
-      ByteStreams.copy(dotBuf.getSupplier(), dotStdin);
-    } finally {
-      Closeables.close(dotStdin, false);
-      dotBuf.reset();
+  private void writeSvg(VariantGraphLayout layout, XMLStreamWriter xml) throws XMLStreamException {
+    final int halfHeight = VariantGraphLayout.NODE_HEIGHT / 2;
+
+    xml.writeStartDocument("UTF-8", "1.0");
+    xml.writeStartElement("svg");
+    xml.writeDefaultNamespace(SVG_NS);
+    xml.writeAttribute("id", "VariantGraph");
+    xml.writeAttribute("width", Integer.toString(layout.getTotalWidth()));
+    xml.writeAttribute("height", Integer.toString(layout.getTotalHeight()));
+    xml.writeAttribute("viewBox", "0 0 " + layout.getTotalWidth() + " " + layout.getTotalHeight());
+    xml.writeAttribute("font-family", "sans-serif");
+    xml.writeAttribute("font-size", "12");
+
+    xml.writeStartElement("defs");
+    xml.writeStartElement("marker");
+    xml.writeAttribute("id", "arrow");
+    xml.writeAttribute("viewBox", "0 0 10 10");
+    xml.writeAttribute("refX", "10");
+    xml.writeAttribute("refY", "5");
+    xml.writeAttribute("markerWidth", "8");
+    xml.writeAttribute("markerHeight", "8");
+    xml.writeAttribute("orient", "auto");
+    xml.writeEmptyElement("path");
+    xml.writeAttribute("d", "M 0 0 L 10 5 L 0 10 z");
+    xml.writeEndElement();
+    xml.writeEndElement();
+
+    final List<int[]> edges = layout.getEdges();
+    for (int ec = 0; ec < edges.size(); ec++) {
+      final int[] edge = edges.get(ec);
+      final int x1 = layout.getX(edge[0]) + layout.getWidth(edge[0]);
+      final int y1 = layout.getY(edge[0]) + halfHeight;
+      final int x2 = layout.getX(edge[1]);
+      final int y2 = layout.getY(edge[1]) + halfHeight;
+      final int cx = (x1 + x2) / 2;
+
+      xml.writeStartElement("g");
+      xml.writeAttribute("class", "edge");
+      xml.writeEmptyElement("path");
+      xml.writeAttribute("d", "M " + x1 + " " + y1 + " C " + cx + " " + y1 + " " + cx + " " + y2 + " " + x2 + " " + y2);
+      xml.writeAttribute("fill", "none");
+      xml.writeAttribute("stroke", "black");
+      xml.writeAttribute("marker-end", "url(#arrow)");
+      xml.writeStartElement("text");
+      xml.writeAttribute("x", Integer.toString(cx));
+      xml.writeAttribute("y", Integer.toString((y1 + y2) / 2 - 4));
+      xml.writeAttribute("text-anchor", "middle");
+      xml.writeAttribute("font-size", "10");
+      xml.writeCharacters(layout.getEdgeLabel(ec));
+      xml.writeEndElement();
+      xml.writeEndElement();
     }
 
-    InputStream svgResult = null;
-    final FileBackedOutputStream svgBuf = new FileBackedOutputStream(102400);
-    try {
-      ByteStreams.copy(svgResult = new BufferedInputStream(dotProc.getInputStream()), svgBuf);
-    } finally {
-      Closeables.close(svgBuf, false);
-      Closeables.close(svgResult, false);
+    for (int[] transposition : layout.getTranspositions()) {
+      xml.writeEmptyElement("line");
+      xml.writeAttribute("class", "transposition");
+      xml.writeAttribute("x1", Integer.toString(layout.getX(transposition[0]) + layout.getWidth(transposition[0]) / 2));
+      xml.writeAttribute("y1", Integer.toString(layout.getY(transposition[0]) + halfHeight));
+      xml.writeAttribute("x2", Integer.toString(layout.getX(transposition[1]) + layout.getWidth(transposition[1]) / 2));
+      xml.writeAttribute("y2", Integer.toString(layout.getY(transposition[1]) + halfHeight));
+      xml.writeAttribute("stroke", "lightgray");
+      xml.writeAttribute("stroke-dasharray", "4,4");
     }
 
-    InputStream svgSource = null;
-    try {
-      if (dotProc.waitFor() == 0) {
-        ByteStreams.copy(svgSource = svgBuf.getSupplier().getInput(), out);
-        out.flush();
-        return;
-      }
-    } catch (InterruptedException e) {
-    } finally {
-      Closeables.closeQuietly(svgSource);
-      svgBuf.reset();
+    for (int vc = 0; vc < layout.size(); vc++) {
+      final int x = layout.getX(vc);
+      final int y = layout.getY(vc);
+      final int width = layout.getWidth(vc);
+
+      xml.writeStartElement("g");
+      xml.writeAttribute("class", "node");
+      xml.writeEmptyElement("rect");
+      xml.writeAttribute("x", Integer.toString(x));
+      xml.writeAttribute("y", Integer.toString(y));
+      xml.writeAttribute("width", Integer.toString(width));
+      xml.writeAttribute("height", Integer.toString(VariantGraphLayout.NODE_HEIGHT));
+      xml.writeAttribute("rx", Integer.toString(halfHeight));
+      xml.writeAttribute("fill", "white");
+      xml.writeAttribute("stroke", "black");
+      xml.writeStartElement("text");
+      xml.writeAttribute("x", Integer.toString(x + width / 2));
+      xml.writeAttribute("y", Integer.toString(y + halfHeight + 4));
+      xml.writeAttribute("text-anchor", "middle");
+      xml.writeCharacters(layout.getLabel(vc));
+      xml.writeEndElement();
+      xml.writeEndElement();
     }
-  }
 
-  @Override
-  public void afterPropertiesSet() throws Exception {
-    final File dotExecutable = new File(configuredDotPath);
-    this.dotPath = (dotExecutable.canExecute() ? dotExecutable.getCanonicalPath() : null);
+    xml.writeEndElement();
+    xml.writeEndDocument();
   }
 }
@@ -0,0 +1,211 @@
+package eu.interedition.web.collatex;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import eu.interedition.collatex.graph.VariantGraph;
+import eu.interedition.collatex.graph.VariantGraphEdge;
+import eu.interedition.collatex.graph.VariantGraphTransposition;
+import eu.interedition.collatex.graph.VariantGraphVertex;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Layered left-to-right layout of a variant graph.
+ *
+ * <p>Follows the approach of the Sugiyama layout used in the CollateX laboratory: vertices are assigned to levels
+ * according to their longest path from the start vertex, the order within each level is improved by alternating
+ * barycenter sweeps to reduce edge crossings, and levels are finally placed next to each other. The graph is read
+ * once; the layout is computed on plain arrays.</p>
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class VariantGraphLayout {
+  public static final int CHAR_WIDTH = 8;
+  public static final int NODE_HEIGHT = 24;
+  public static final int NODE_PADDING = 16;
+  public static final int LEVEL_SPACING = 80;
+  public static final int ROW_SPACING = 24;
+  public static final int MARGIN = 10;
+
+  private static final int SWEEPS = 4;
+
+  private final List<String> labels = Lists.newArrayList();
+  private final List<int[]> edges = Lists.newArrayList();
+  private final List<String> edgeLabels = Lists.newArrayList();
+  private final List<int[]> transpositions = Lists.newArrayList();
+
+  private int[] level;
+  private int[] x;
+  private int[] y;
+  private int[] width;
+  private int totalWidth;
+  private int totalHeight;
+
+  public VariantGraphLayout(VariantGraph graph) {
+    final Map<VariantGraphVertex, Integer> index = Maps.newHashMap();
+    for (VariantGraphVertex vertex : graph.vertices()) {
+      index.put(vertex, labels.size());
+      labels.add(VariantGraphVertex.TO_CONTENTS.apply(vertex));
+    }
+    for (VariantGraphEdge edge : graph.edges()) {
+      edges.add(new int[] { index.get(edge.from()), index.get(edge.to()) });
+      edgeLabels.add(VariantGraphEdge.TO_CONTENTS.apply(edge));
+    }
+    for (VariantGraphTransposition transposition : graph.transpositions()) {
+      transpositions.add(new int[] { index.get(transposition.from()), index.get(transposition.to()) });
+    }
+    layout();
+  }
+
+  private void layout() {
+    final int vertices = labels.size();
+
+    // vertices are read in topological order, so a single pass yields longest-path levels
+    final List<List<Integer>> incoming = adjacency(vertices, 1, 0);
+    final List<List<Integer>> outgoing = adjacency(vertices, 0, 1);
+    level = new int[vertices];
+    int levels = 0;
+    for (int v = 0; v < vertices; v++) {
+      for (int predecessor : incoming.get(v)) {
+        level[v] = Math.max(level[v], level[predecessor] + 1);
+      }
+      levels = Math.max(levels, level[v] + 1);
+    }
+
+    final List<List<Integer>> layers = Lists.newArrayListWithExpectedSize(levels);
+    for (int l = 0; l < levels; l++) {
+      layers.add(Lists.<Integer>newArrayList());
+    }
+    for (int v = 0; v < vertices; v++) {
+      layers.get(level[v]).add(v);
+    }
+
+    final int[] position = new int[vertices];
+    updatePositions(layers, position);
+    for (int sweep = 0; sweep < SWEEPS; sweep++) {
+      for (int l = 1; l < levels; l++) {
+        orderByBarycenter(layers.get(l), incoming, position);
+      }
+      for (int l = levels - 2; l >= 0; l--) {
+        orderByBarycenter(layers.get(l), outgoing, position);
+      }
+    }
+
+    width = new int[vertices];
+    for (int v = 0; v < vertices; v++) {
+      width[v] = Math.max(NODE_HEIGHT, labels.get(v).length() * CHAR_WIDTH + NODE_PADDING);
+    }
+
+    int maxLayerSize = 0;
+    for (List<Integer> layer : layers) {
+      maxLayerSize = Math.max(maxLayerSize, layer.size());
+    }
+
+    x = new int[vertices];
+    y = new int[vertices];
+    int levelX = MARGIN;
+    for (List<Integer> layer : layers) {
+      int levelWidth = 0;
+      final int offset = (maxLayerSize - layer.size()) * (NODE_HEIGHT + ROW_SPACING) / 2;
+      for (int v : layer) {
+        x[v] = levelX;
+        y[v] = MARGIN + offset + position[v] * (NODE_HEIGHT + ROW_SPACING);
+        levelWidth = Math.max(levelWidth, width[v]);
+      }
+      levelX += levelWidth + LEVEL_SPACING;
+    }
+    totalWidth = levelX - LEVEL_SPACING + MARGIN;
+    totalHeight = 2 * MARGIN + maxLayerSize * (NODE_HEIGHT + ROW_SPACING) - ROW_SPACING;
+  }
+
+  private List<List<Integer>> adjacency(int vertices, int from, int to) {
+    final List<List<Integer>> adjacency = Lists.newArrayListWithExpectedSize(vertices);
+    for (int v = 0; v < vertices; v++) {
+      adjacency.add(Lists.<Integer>newArrayList());
+    }
+    for (int[] edge : edges) {
+      adjacency.get(edge[from]).add(edge[to]);
+    }
+    return adjacency;
+  }
+
+  private static void orderByBarycenter(List<Integer> layer, List<List<Integer>> neighbors, int[] position) {
+    final Map<Integer, Double> barycenter = Maps.newHashMap();
+    for (int v : layer) {
+      final List<Integer> vertexNeighbors = neighbors.get(v);
+      if (vertexNeighbors.isEmpty()) {
+        barycenter.put(v, (double) position[v]);
+      } else {
+        double sum = 0;
+        for (int neighbor : vertexNeighbors) {
+          sum += position[neighbor];
+        }
+        barycenter.put(v, sum / vertexNeighbors.size());
+      }
+    }
+    Collections.sort(layer, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Double.compare(barycenter.get(o1), barycenter.get(o2));
+      }
+    });
+    for (int p = 0; p < layer.size(); p++) {
+      position[layer.get(p)] = p;
+    }
+  }
+
+  private static void updatePositions(List<List<Integer>> layers, int[] position) {
+    for (List<Integer> layer : layers) {
+      for (int p = 0; p < layer.size(); p++) {
+        position[layer.get(p)] = p;
+      }
+    }
+  }
+
+  public int size() {
+    return labels.size();
+  }
+
+  public String getLabel(int vertex) {
+    return labels.get(vertex);
+  }
+
+  public int getX(int vertex) {
+    return x[vertex];
+  }
+
+  public int getY(int vertex) {
+    return y[vertex];
+  }
+
+  public int getWidth(int vertex) {
+    return width[vertex];
+  }
+
+  public int getLevel(int vertex) {
+    return level[vertex];
+  }
+
+  public List<int[]> getEdges() {
+    return edges;
+  }
+
+  public String getEdgeLabel(int edge) {
+    return edgeLabels.get(edge);
+  }
+
+  public List<int[]> getTranspositions() {
+    return transpositions;
+  }
+
+  public int getTotalWidth() {
+    return totalWidth;
+  }
+
+  public int getTotalHeight() {
+    return totalHeight;
+  }
+}
@@ -0,0 +1,92 @@
+package eu.interedition.web.io;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import eu.interedition.collatex.graph.VariantGraph;
+import eu.interedition.web.collatex.CollationCache;
+import eu.interedition.web.collatex.CollationResult;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes collation results via the configured variant graph converters, serving repeated requests from a
+ * {@link CollationCache}.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class CachingCollationResultHttpMessageConverter extends AbstractHttpMessageConverter<CollationResult> {
+
+  private final CollationCache cache;
+  private final List<HttpMessageConverter<VariantGraph>> delegates;
+
+  public CachingCollationResultHttpMessageConverter(CollationCache cache, List<HttpMessageConverter<VariantGraph>> delegates) {
+    this.cache = cache;
+    this.delegates = delegates;
+
+    final List<MediaType> supportedMediaTypes = Lists.newArrayList();
+    for (HttpMessageConverter<VariantGraph> delegate : delegates) {
+      supportedMediaTypes.addAll(delegate.getSupportedMediaTypes());
+    }
+    setSupportedMediaTypes(supportedMediaTypes);
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return CollationResult.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  protected boolean canRead(MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected CollationResult readInternal(Class<? extends CollationResult> clazz, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+    throw new HttpMessageNotReadableException(clazz.toString());
+  }
+
+  @Override
+  protected void writeInternal(final CollationResult result, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+    final MediaType contentType = outputMessage.getHeaders().getContentType();
+    final HttpMessageConverter<VariantGraph> delegate = delegateFor(contentType);
+
+    final CollationCache.Representation representation = cache.get(result.getKey(), contentType, new CollationCache.Renderer() {
+      @Override
+      public void render(HttpOutputMessage message) throws IOException {
+        delegate.write(result.getGraph(), contentType, message);
+      }
+    });
+
+    final HttpHeaders headers = outputMessage.getHeaders();
+    for (Map.Entry<String, List<String>> header : representation.getHeaders().entrySet()) {
+      headers.put(header.getKey(), Lists.newArrayList(header.getValue()));
+    }
+
+    final OutputStream body = outputMessage.getBody();
+    try {
+      body.write(representation.getContent());
+    } finally {
+      Closeables.closeQuietly(body);
+    }
+  }
+
+  protected HttpMessageConverter<VariantGraph> delegateFor(MediaType contentType) {
+    for (HttpMessageConverter<VariantGraph> delegate : delegates) {
+      if (delegate.canWrite(VariantGraph.class, contentType)) {
+        return delegate;
+      }
+    }
+    throw new HttpMessageNotWritableException("No variant graph serialization for " + contentType);
+  }
+}
@@ -49,10 +49,6 @@ public class VariantGraphVizHttpMessageConverter extends AbstractHttpMessageConv
   @Override
   protected void writeInternal(VariantGraph graph, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
     final MediaType contentType = outputMessage.getHeaders().getContentType();
-    if (contentType != null && contentType.isCompatibleWith(IMAGE_SVG_XML) && !graphVizService.isSvgAvailable()) {
-      throw new HttpMessageNotWritableException("SVG generation via GraphViz' \"dot\" not available on this server");
-    }
-
     final OutputStream body = outputMessage.getBody();
     try {
       if (contentType != null && contentType.isCompatibleWith(IMAGE_SVG_XML)) {
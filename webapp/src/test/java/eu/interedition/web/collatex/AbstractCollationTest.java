@@ -0,0 +1,77 @@
+/**
+ * CollateX - a Java library for collating textual sources,
+ * for example, to produce an apparatus.
+ *
+ * Copyright (C) 2010 ESF COST Action "Interedition".
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.web.collatex;
+
+import com.google.common.collect.Lists;
+import eu.interedition.collatex.CollationAlgorithmFactory;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.graph.GraphFactory;
+import eu.interedition.collatex.graph.VariantGraph;
+import eu.interedition.collatex.input.SimpleWitness;
+import eu.interedition.collatex.input.WhitespaceTokenizer;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import org.junit.BeforeClass;
+import org.neo4j.graphdb.Transaction;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Base class for tests running collations against a variant graph database of their own.
+ *
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public abstract class AbstractCollationTest {
+
+  protected static GraphFactory graphFactory;
+
+  @BeforeClass
+  public static void createGraphFactory() throws IOException {
+    graphFactory = GraphFactory.create();
+  }
+
+  /**
+   * @param witnesses pairs of sigil and content, the latter being tokenized at whitespace
+   */
+  protected static Collation collation(String... witnesses) {
+    final List<Iterable<Token>> tokens = Lists.newArrayList();
+    for (int wc = 0; wc + 1 < witnesses.length; wc += 2) {
+      tokens.add(new SimpleWitness(witnesses[wc], witnesses[wc + 1], new WhitespaceTokenizer()));
+    }
+    return new Collation(tokens);
+  }
+
+  /**
+   * Collates the given witnesses into a new, ranked variant graph.
+   */
+  protected static VariantGraph collate(Collation collation) {
+    final Transaction tx = graphFactory.getDatabase().beginTx();
+    try {
+      final VariantGraph graph = graphFactory.newVariantGraph();
+      CollationAlgorithmFactory.dekker(new EqualityTokenComparator()).collate(graph, collation.getWitnesses());
+      graph.rank();
+      tx.success();
+      return graph;
+    } finally {
+      tx.finish();
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package eu.interedition.web.collatex;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class CollationCacheTest extends AbstractCollationTest {
+
+  @Test
+  public void keyDigest() {
+    final String key = key("A", "the black cat", "B", "the white cat");
+    Assert.assertEquals(key, key("A", "the black cat", "B", "the white cat"));
+    Assert.assertFalse(key.equals(key("A", "the black cat", "C", "the white cat")));
+    Assert.assertFalse(key.equals(key("A", "the black cat", "B", "the white dog")));
+    Assert.assertFalse(key.equals(key("B", "the white cat", "A", "the black cat")));
+    Assert.assertFalse(key.equals(key("A", "the black", "B", "cat the white cat")));
+    Assert.assertFalse(key.equals(CollationCache.key(collation("A", "the black cat", "B", "the white cat").getWitnesses(), "other", "comparator")));
+  }
+
+  @Test
+  public void hitsAndMisses() throws IOException {
+    final CollationCache cache = new CollationCache();
+    final CountingRenderer renderer = new CountingRenderer();
+
+    Assert.assertEquals("1", content(cache.get("key", MediaType.TEXT_PLAIN, renderer)));
+    Assert.assertEquals("1", content(cache.get("key", MediaType.TEXT_PLAIN, renderer)));
+    Assert.assertEquals("2", content(cache.get("key", MediaType.APPLICATION_XML, renderer)));
+    Assert.assertEquals(Collections.singletonList("1"), cache.get("key", MediaType.TEXT_PLAIN, renderer).getHeaders().get("X-Rendering"));
+
+    Assert.assertEquals(2, (long) cache.getStatistics().get("size"));
+    Assert.assertEquals(2, (long) cache.getStatistics().get("hits"));
+    Assert.assertEquals(2, (long) cache.getStatistics().get("misses"));
+    Assert.assertEquals(0, (long) cache.getStatistics().get("evictions"));
+  }
+
+  @Test
+  public void evictions() throws IOException {
+    final CollationCache cache = new CollationCache();
+    final CountingRenderer renderer = new CountingRenderer();
+    for (int entry = 0; entry < 2000; entry++) {
+      cache.get(Integer.toString(entry), MediaType.TEXT_PLAIN, renderer);
+    }
+    final long size = cache.getStatistics().get("size");
+    Assert.assertTrue(size <= 1000);
+    Assert.assertEquals(2000 - size, (long) cache.getStatistics().get("evictions"));
+  }
+
+  @Test(expected = IOException.class)
+  public void failingRendering() throws IOException {
+    new CollationCache().get("key", MediaType.TEXT_PLAIN, new CollationCache.Renderer() {
+      @Override
+      public void render(HttpOutputMessage message) throws IOException {
+        throw new IOException();
+      }
+    });
+  }
+
+  @Test
+  public void concurrentMissesRenderOnce() throws Exception {
+    final CollationCache cache = new CollationCache();
+    final CountDownLatch rendering = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountingRenderer renderer = new CountingRenderer() {
+      @Override
+      public void render(HttpOutputMessage message) throws IOException {
+        rendering.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        super.render(message);
+      }
+    };
+
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Future<CollationCache.Representation> first = executor.submit(new Lookup(cache, renderer));
+      rendering.await(10, TimeUnit.SECONDS);
+      final Future<CollationCache.Representation> second = executor.submit(new Lookup(cache, renderer));
+      Thread.sleep(100);
+      release.countDown();
+
+      Assert.assertEquals("1", content(first.get()));
+      Assert.assertEquals("1", content(second.get()));
+      Assert.assertEquals(1, renderer.renderings.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String key(String... witnesses) {
+    return CollationCache.key(collation(witnesses).getWitnesses(), "algorithm", "comparator");
+  }
+
+  private static String content(CollationCache.Representation representation) {
+    return new String(representation.getContent());
+  }
+
+  private static class CountingRenderer implements CollationCache.Renderer {
+    private final AtomicInteger renderings = new AtomicInteger();
+
+    @Override
+    public void render(HttpOutputMessage message) throws IOException {
+      final String rendering = Integer.toString(renderings.incrementAndGet());
+      message.getHeaders().set("X-Rendering", rendering);
+      message.getBody().write(rendering.getBytes());
+    }
+  }
+
+  private static class Lookup implements Callable<CollationCache.Representation> {
+    private final CollationCache cache;
+    private final CollationCache.Renderer renderer;
+
+    private Lookup(CollationCache cache, CollationCache.Renderer renderer) {
+      this.cache = cache;
+      this.renderer = renderer;
+    }
+
+    @Override
+    public CollationCache.Representation call() throws Exception {
+      return cache.get("key", MediaType.TEXT_PLAIN, renderer);
+    }
+  }
+}
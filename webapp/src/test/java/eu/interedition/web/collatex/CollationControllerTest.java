@@ -0,0 +1,193 @@
+/**
+ * CollateX - a Java library for collating textual sources,
+ * for example, to produce an apparatus.
+ *
+ * Copyright (C) 2010 ESF COST Action "Interedition".
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.web.collatex;
+
+import com.google.common.collect.Lists;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.graph.VariantGraph;
+import eu.interedition.collatex.input.SimpleWitness;
+import eu.interedition.collatex.input.WhitespaceTokenizer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class CollationControllerTest extends AbstractCollationTest {
+
+  private CollationController controller;
+
+  @Before
+  public void createController() {
+    controller = new CollationController();
+    ReflectionTestUtils.setField(controller, "graphFactory", graphFactory);
+    ReflectionTestUtils.setField(controller, "graphVizService", new GraphVizService());
+  }
+
+  @Test
+  public void storeAppendAndRead() throws Exception {
+    final ResponseEntity<Map<String, Object>> stored = controller.store(collation("A", "the black cat", "B", "the white cat"));
+    Assert.assertEquals(HttpStatus.CREATED, stored.getStatusCode());
+    Assert.assertEquals(Arrays.asList("A", "B"), stored.getBody().get("witnesses"));
+
+    final long id = (Long) stored.getBody().get("id");
+    Assert.assertEquals("graph/" + id, stored.getHeaders().getLocation().toString());
+
+    final Map<String, Object> appended = controller.append(id, collation("C", "the black dog"));
+    Assert.assertEquals(id, appended.get("id"));
+    Assert.assertEquals(Arrays.asList("A", "B", "C"), appended.get("witnesses"));
+
+    final Transaction tx = graphFactory.getDatabase().beginTx();
+    try {
+      final VariantGraph graph = controller.read(id);
+      Assert.assertEquals(3, graph.witnesses().size());
+    } finally {
+      tx.finish();
+    }
+  }
+
+  @Test(expected = CollationController.BadRequestException.class)
+  public void appendingCollatedWitness() throws Exception {
+    final long id = (Long) controller.store(collation("A", "the black cat", "B", "the white cat")).getBody().get("id");
+    controller.append(id, collation("B", "the white dog"));
+  }
+
+  @Test
+  public void concurrentAppendsOfOneWitness() throws Exception {
+    final long id = (Long) controller.store(collation("A", "the black cat", "B", "the white cat")).getBody().get("id");
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final List<Future<Map<String, Object>>> appends = Lists.newArrayList();
+      for (String text : new String[] { "the black dog", "the white dog" }) {
+        final Collation collation = collation("C", text);
+        appends.add(executor.submit(new Callable<Map<String, Object>>() {
+          @Override
+          public Map<String, Object> call() throws Exception {
+            return controller.append(id, collation);
+          }
+        }));
+      }
+      int rejected = 0;
+      for (Future<Map<String, Object>> append : appends) {
+        try {
+          append.get();
+        } catch (ExecutionException e) {
+          Assert.assertTrue(e.getCause() instanceof CollationController.BadRequestException);
+          rejected++;
+        }
+      }
+      Assert.assertEquals(1, rejected);
+      Assert.assertEquals(Arrays.asList("A", "B", "C"), CollationController.handle(controller.read(id)).get("witnesses"));
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test(expected = CollationController.BadRequestException.class)
+  public void storingEmptyWitness() throws Exception {
+    final List<Iterable<Token>> witnesses = Lists.newArrayList();
+    witnesses.add(new SimpleWitness("A", "the black cat", new WhitespaceTokenizer()));
+    witnesses.add(new SimpleWitness("B"));
+    controller.store(new Collation(witnesses));
+  }
+
+  @Test(expected = CollationController.BadRequestException.class)
+  public void storingDuplicateSigils() throws Exception {
+    controller.store(collation("A", "the black cat", "A", "the white cat"));
+  }
+
+  @Test(expected = CollationController.VariantGraphNotFoundException.class)
+  public void readingUnknownGraph() {
+    controller.read(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void badRequestsAnswer400() throws Exception {
+    final MockHttpServletResponse response = new MockHttpServletResponse();
+    controller.handleBadRequest(new CollationController.BadRequestException("Empty witness"), response);
+    Assert.assertEquals(400, response.getStatus());
+    Assert.assertEquals("Empty witness", response.getErrorMessage());
+  }
+
+  @Test
+  public void purgeSparesAppendedGraphs() throws Exception {
+    final long idle = (Long) controller.store(collation("A", "the black cat")).getBody().get("id");
+    final long appended = (Long) controller.store(collation("A", "the black cat")).getBody().get("id");
+    final long stored = System.currentTimeMillis();
+    long timestamp;
+    while ((timestamp = System.currentTimeMillis()) == stored) {
+      Thread.sleep(1);
+    }
+    controller.append(appended, collation("B", "the white cat"));
+
+    controller.purge(timestamp);
+    controller.read(appended);
+    try {
+      controller.read(idle);
+      Assert.fail();
+    } catch (CollationController.VariantGraphNotFoundException e) {
+    }
+  }
+
+  @Test
+  public void purgeEvictsRenderings() throws Exception {
+    final List<Long> evicted = Lists.newArrayList();
+    final List<Long> removed = Lists.newArrayList();
+    ReflectionTestUtils.setField(controller, "graphVizService", new GraphVizService() {
+      @Override
+      public void evict(long graphId) {
+        evicted.add(graphId);
+      }
+
+      @Override
+      public void remove(long graphId) {
+        removed.add(graphId);
+      }
+    });
+
+    final long id = (Long) controller.store(collation("A", "the black cat", "B", "the white cat")).getBody().get("id");
+    controller.purge(Long.MAX_VALUE);
+    Assert.assertTrue(evicted.contains(id));
+    Assert.assertTrue(removed.contains(id));
+    try {
+      controller.read(id);
+      Assert.fail();
+    } catch (CollationController.VariantGraphNotFoundException e) {
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package eu.interedition.web.collatex;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.graph.VariantGraph;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class CollationJobTest extends AbstractCollationTest {
+
+  private ThreadPoolExecutor executor;
+  private CollationController controller;
+
+  @Before
+  public void createController() {
+    executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1));
+
+    final CollationJobService jobService = new CollationJobService();
+    ReflectionTestUtils.setField(jobService, "graphFactory", graphFactory);
+    ReflectionTestUtils.setField(jobService, "collationExecutor", executor);
+
+    controller = new CollationController();
+    ReflectionTestUtils.setField(controller, "graphFactory", graphFactory);
+    ReflectionTestUtils.setField(controller, "collationJobService", jobService);
+  }
+
+  /**
+   * Lets pending jobs finish, as interrupting a job while it commits would close the graph database's log.
+   */
+  @After
+  public void shutdownExecutor() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void submitAndPoll() throws Exception {
+    final ResponseEntity<Map<String, Object>> submitted = controller.submit(collation("A", "the black cat", "B", "the white cat"));
+    Assert.assertEquals(HttpStatus.ACCEPTED, submitted.getStatusCode());
+
+    final String id = (String) submitted.getBody().get("id");
+    Assert.assertEquals("job/" + id, submitted.getHeaders().getLocation().toString());
+
+    final ResponseEntity<?> result = controller.result(id, 10000);
+    Assert.assertEquals(HttpStatus.OK, result.getStatusCode());
+    Assert.assertEquals(2, ((VariantGraph) result.getBody()).witnesses().size());
+    Assert.assertEquals("done", controller.status(id).get("status"));
+  }
+
+  @Test
+  public void pendingJob() throws Exception {
+    final CountDownLatch release = block();
+    try {
+      final String id = (String) controller.submit(collation("A", "the black cat")).getBody().get("id");
+      Assert.assertEquals("queued", controller.status(id).get("status"));
+
+      final ResponseEntity<?> result = controller.result(id, 0);
+      Assert.assertEquals(HttpStatus.ACCEPTED, result.getStatusCode());
+      Assert.assertEquals("queued", ((Map<?, ?>) result.getBody()).get("status"));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void rejectedJob() throws Exception {
+    final CountDownLatch release = block();
+    try {
+      Assert.assertEquals(HttpStatus.ACCEPTED, controller.submit(collation("A", "the black cat")).getStatusCode());
+
+      final ResponseEntity<Map<String, Object>> rejected = controller.submit(collation("A", "the white cat"));
+      Assert.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+      Assert.assertEquals("rejected", rejected.getBody().get("status"));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void failedJob() throws Exception {
+    final List<Iterable<Token>> witnesses = Lists.newArrayList();
+    witnesses.add(new Iterable<Token>() {
+      @Override
+      public Iterator<Token> iterator() {
+        throw new IllegalStateException("Unreadable witness");
+      }
+    });
+    final int graphs = Iterables.size(graphFactory.variantGraphs());
+    final String id = (String) controller.submit(new Collation(witnesses)).getBody().get("id");
+
+    final ResponseEntity<?> result = controller.result(id, 10000);
+    Assert.assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, result.getStatusCode());
+    Assert.assertEquals("failed", ((Map<?, ?>) result.getBody()).get("status"));
+    Assert.assertEquals("Unreadable witness", ((Map<?, ?>) result.getBody()).get("message"));
+    Assert.assertEquals("failed", controller.status(id).get("status"));
+    Assert.assertEquals(graphs, Iterables.size(graphFactory.variantGraphs()));
+  }
+
+  @Test(expected = CollationController.CollationJobNotFoundException.class)
+  public void unknownJob() {
+    controller.status("unknown");
+  }
+
+  /**
+   * Occupies the executor's only thread until the returned latch is released.
+   */
+  private CountDownLatch block() throws InterruptedException {
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        running.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+        }
+      }
+    });
+    running.await(10, TimeUnit.SECONDS);
+    return release;
+  }
+}
@@ -0,0 +1,96 @@
+package eu.interedition.web.collatex;
+
+import com.google.common.collect.Iterables;
+import eu.interedition.collatex.CollationAlgorithmFactory;
+import eu.interedition.collatex.graph.VariantGraph;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class GraphVizServiceTest extends AbstractCollationTest {
+
+  @Test
+  public void svgRendering() throws Exception {
+    final VariantGraph graph = collate(collation("A", "the black cat", "B", "the white cat"));
+    final Document svg = parse(render(new GraphVizService(), graph));
+    final Element root = svg.getDocumentElement();
+    Assert.assertEquals("svg", root.getLocalName());
+
+    int nodes = 0;
+    int edges = 0;
+    final NodeList groups = root.getElementsByTagNameNS("http://www.w3.org/2000/svg", "g");
+    for (int gc = 0; gc < groups.getLength(); gc++) {
+      final String type = ((Element) groups.item(gc)).getAttribute("class");
+      nodes += ("node".equals(type) ? 1 : 0);
+      edges += ("edge".equals(type) ? 1 : 0);
+    }
+    Assert.assertEquals(Iterables.size(graph.vertices()), nodes);
+    Assert.assertEquals(Iterables.size(graph.edges()), edges);
+  }
+
+  @Test
+  public void renderingsCachedUntilEvicted() throws Exception {
+    final GraphVizService service = new GraphVizService();
+    final VariantGraph graph = collate(collation("A", "the black cat", "B", "the white cat"));
+    final byte[] rendering = render(service, graph);
+
+    final Transaction tx = graphFactory.getDatabase().beginTx();
+    try {
+      CollationAlgorithmFactory.dekker(new EqualityTokenComparator()).collate(graph, collation("C", "a black dog").getWitnesses());
+      graph.rank();
+      tx.success();
+    } finally {
+      tx.finish();
+    }
+    Assert.assertTrue(Arrays.equals(rendering, render(service, graph)));
+
+    service.evict(graph.getStart().getNode().getId());
+    final byte[] updated = render(service, graph);
+    Assert.assertFalse(Arrays.equals(rendering, updated));
+    Assert.assertTrue(Arrays.equals(updated, render(new GraphVizService(), graph)));
+  }
+
+  @Test
+  public void removedGraphsRenderedAfresh() throws Exception {
+    final GraphVizService service = new GraphVizService();
+    final VariantGraph graph = collate(collation("A", "the black cat", "B", "the white cat"));
+    final byte[] rendering = render(service, graph);
+
+    final Transaction tx = graphFactory.getDatabase().beginTx();
+    try {
+      CollationAlgorithmFactory.dekker(new EqualityTokenComparator()).collate(graph, collation("C", "a black dog").getWitnesses());
+      graph.rank();
+      tx.success();
+    } finally {
+      tx.finish();
+    }
+
+    service.remove(graph.getStart().getNode().getId());
+    Assert.assertFalse(Arrays.equals(rendering, render(service, graph)));
+  }
+
+  private static byte[] render(GraphVizService service, VariantGraph graph) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    service.toSvg(graph, out);
+    return out.toByteArray();
+  }
+
+  private static Document parse(byte[] svg) throws Exception {
+    final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+    documentBuilderFactory.setNamespaceAware(true);
+    return documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(svg));
+  }
+}
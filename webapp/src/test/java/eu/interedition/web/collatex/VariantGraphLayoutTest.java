@@ -0,0 +1,51 @@
+package eu.interedition.web.collatex;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import eu.interedition.collatex.graph.VariantGraph;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class VariantGraphLayoutTest extends AbstractCollationTest {
+
+  @Test
+  public void layout() {
+    final VariantGraph graph = collate(collation(
+            "A", "the black cat sat on the mat",
+            "B", "the white cat sat on a mat",
+            "C", "a black dog lay on the mat"));
+    final VariantGraphLayout layout = new VariantGraphLayout(graph);
+
+    Assert.assertEquals(Iterables.size(graph.vertices()), layout.size());
+    Assert.assertEquals(Iterables.size(graph.edges()), layout.getEdges().size());
+    Assert.assertEquals(graph.transpositions().size(), layout.getTranspositions().size());
+
+    final Set<String> labels = Sets.newHashSet();
+    for (int v = 0; v < layout.size(); v++) {
+      labels.add(layout.getLabel(v));
+      Assert.assertTrue(layout.getX(v) + layout.getWidth(v) <= layout.getTotalWidth());
+      Assert.assertTrue(layout.getY(v) + VariantGraphLayout.NODE_HEIGHT <= layout.getTotalHeight());
+      Assert.assertTrue(layout.getWidth(v) >= layout.getLabel(v).length() * VariantGraphLayout.CHAR_WIDTH);
+    }
+    Assert.assertTrue(labels.containsAll(Sets.newHashSet("black", "white", "dog", "mat")));
+
+    for (int[] edge : layout.getEdges()) {
+      Assert.assertTrue(layout.getLevel(edge[0]) < layout.getLevel(edge[1]));
+      Assert.assertTrue(layout.getX(edge[0]) + layout.getWidth(edge[0]) < layout.getX(edge[1]));
+    }
+
+    for (int v = 0; v < layout.size(); v++) {
+      for (int w = v + 1; w < layout.size(); w++) {
+        if (layout.getLevel(v) == layout.getLevel(w)) {
+          Assert.assertEquals(layout.getX(v), layout.getX(w));
+          Assert.assertTrue(Math.abs(layout.getY(v) - layout.getY(w)) >= VariantGraphLayout.NODE_HEIGHT);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package eu.interedition.web.io;
+
+import com.google.common.base.Suppliers;
+import eu.interedition.collatex.graph.VariantGraph;
+import eu.interedition.web.collatex.CollationCache;
+import eu.interedition.web.collatex.CollationResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
+ */
+public class CachingCollationResultHttpMessageConverterTest {
+
+  @Test
+  public void headersOfCachedRepresentations() throws IOException {
+    final RenderingConverter delegate = new RenderingConverter();
+    final CachingCollationResultHttpMessageConverter converter = new CachingCollationResultHttpMessageConverter(
+            new CollationCache(), Collections.<HttpMessageConverter<VariantGraph>>singletonList(delegate));
+    final CollationResult result = new CollationResult("key", Suppliers.<VariantGraph>ofInstance(null));
+
+    for (int request = 0; request < 2; request++) {
+      final MockHttpServletResponse response = new MockHttpServletResponse();
+      converter.write(result, MediaType.TEXT_PLAIN, new ServletServerHttpResponse(response));
+
+      Assert.assertEquals("graph", response.getContentAsString());
+      Assert.assertEquals("text/plain", response.getContentType());
+      Assert.assertEquals("1", response.getHeader("X-Rendering"));
+    }
+    Assert.assertEquals(1, delegate.renderings);
+  }
+
+  private static class RenderingConverter extends AbstractHttpMessageConverter<VariantGraph> {
+    private int renderings;
+
+    private RenderingConverter() {
+      super(MediaType.TEXT_PLAIN);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+      return VariantGraph.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected VariantGraph readInternal(Class<? extends VariantGraph> clazz, HttpInputMessage inputMessage) throws IOException {
+      throw new HttpMessageNotReadableException(clazz.toString());
+    }
+
+    @Override
+    protected void writeInternal(VariantGraph graph, HttpOutputMessage outputMessage) throws IOException {
+      outputMessage.getHeaders().set("X-Rendering", Integer.toString(++renderings));
+      outputMessage.getBody().write("graph".getBytes());
+    }
+  }
+}